@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.bench;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generator of realistic (JSON-like) documents used by the benchmarks. Uses a fixed seed so that runs are comparable.
+ */
+public abstract class Documents {
+
+    /** Document shapes */
+    public static final String FLAT = "flat";
+    public static final String NESTED = "nested";
+    public static final String ARRAY = "array";
+
+    private static final String[] WORDS = { "elasticsearch", "hadoop", "hive", "pig", "cascading", "crunch", "index",
+            "shard", "node", "cluster", "query", "scroll", "bulk", "mapping", "document", "field" };
+
+    public static Map<String, Object> generate(String shape, int seed) {
+        Random random = new Random(seed);
+        if (FLAT.equals(shape)) {
+            return flat(random);
+        }
+        if (NESTED.equals(shape)) {
+            return nested(random);
+        }
+        if (ARRAY.equals(shape)) {
+            return array(random);
+        }
+        throw new IllegalArgumentException("Unknown shape " + shape);
+    }
+
+    public static List<Map<String, Object>> generate(String shape, int seed, int count) {
+        List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>(count);
+        for (int i = 0; i < count; i++) {
+            docs.add(generate(shape, seed + i));
+        }
+        return docs;
+    }
+
+    // ~20 top-level fields of mixed types
+    static Map<String, Object> flat(Random random) {
+        Map<String, Object> doc = new LinkedHashMap<String, Object>();
+        doc.put("id", random.nextLong());
+        doc.put("name", sentence(random, 2));
+        doc.put("description", sentence(random, 20));
+        doc.put("url", "http://www." + word(random) + ".org/" + word(random));
+        doc.put("timestamp", "2013-06-" + (10 + random.nextInt(20)) + "T10:00:00.000Z");
+        for (int i = 0; i < 5; i++) {
+            doc.put("count" + i, random.nextInt(100000));
+            doc.put("score" + i, random.nextDouble());
+            doc.put("tag" + i, word(random));
+        }
+        doc.put("active", random.nextBoolean());
+        return doc;
+    }
+
+    // 3 levels of objects
+    static Map<String, Object> nested(Random random) {
+        Map<String, Object> doc = new LinkedHashMap<String, Object>();
+        doc.put("id", random.nextLong());
+        doc.put("title", sentence(random, 5));
+
+        Map<String, Object> user = new LinkedHashMap<String, Object>();
+        user.put("name", sentence(random, 2));
+        user.put("age", random.nextInt(100));
+
+        Map<String, Object> address = new LinkedHashMap<String, Object>();
+        address.put("street", sentence(random, 3));
+        address.put("number", random.nextInt(1000));
+        address.put("city", word(random));
+
+        Map<String, Object> geo = new LinkedHashMap<String, Object>();
+        geo.put("lat", random.nextDouble() * 90);
+        geo.put("lon", random.nextDouble() * 180);
+        address.put("geo", geo);
+
+        user.put("address", address);
+        doc.put("user", user);
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("views", random.nextLong());
+        stats.put("likes", random.nextInt(10000));
+        stats.put("ratio", random.nextDouble());
+        doc.put("stats", stats);
+        return doc;
+    }
+
+    // arrays of primitives
+    static Map<String, Object> array(Random random) {
+        Map<String, Object> doc = new LinkedHashMap<String, Object>();
+        doc.put("id", random.nextLong());
+
+        List<Object> tags = new ArrayList<Object>();
+        List<Object> counts = new ArrayList<Object>();
+        List<Object> scores = new ArrayList<Object>();
+        for (int i = 0; i < 50; i++) {
+            tags.add(word(random));
+            counts.add(random.nextLong());
+            scores.add(random.nextDouble());
+        }
+        doc.put("tags", tags);
+        doc.put("counts", counts);
+        doc.put("scores", scores);
+        return doc;
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(" ");
+            }
+            sb.append(word(random));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.hive;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.elasticsearch.hadoop.bench.Documents;
+import org.elasticsearch.hadoop.util.WritableUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the Hive row conversion. The table definition is derived from the generated document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ESSerDeBenchmark {
+
+    @Param({ Documents.FLAT, Documents.NESTED, Documents.ARRAY })
+    public String shape;
+
+    private ESSerDe serDe;
+    private ObjectInspector inspector;
+    private Object row;
+    private Writable writable;
+
+    @Setup
+    public void setup() throws SerDeException {
+        Map<String, Object> doc = Documents.generate(shape, 1);
+
+        StringBuilder names = new StringBuilder();
+        StringBuilder types = new StringBuilder();
+        for (Iterator<Map.Entry<String, Object>> it = doc.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Object> entry = it.next();
+            names.append(entry.getKey());
+            types.append(hiveType(entry.getValue()));
+            if (it.hasNext()) {
+                names.append(",");
+                types.append(":");
+            }
+        }
+
+        Properties tbl = new Properties();
+        tbl.setProperty("columns", names.toString());
+        tbl.setProperty("columns.types", types.toString());
+
+        serDe = new ESSerDe();
+        serDe.initialize(new Configuration(false), tbl);
+        inspector = serDe.getObjectInspector();
+
+        row = hiveValue(doc);
+        writable = WritableUtils.toWritable(doc);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String hiveType(Object value) {
+        if (value instanceof String) {
+            return "string";
+        }
+        if (value instanceof Long) {
+            return "bigint";
+        }
+        if (value instanceof Integer) {
+            return "int";
+        }
+        if (value instanceof Double) {
+            return "double";
+        }
+        if (value instanceof Boolean) {
+            return "boolean";
+        }
+        if (value instanceof List) {
+            return "array<" + hiveType(((List<Object>) value).get(0)) + ">";
+        }
+        if (value instanceof Map) {
+            StringBuilder sb = new StringBuilder("struct<");
+            for (Iterator<Map.Entry<String, Object>> it = ((Map<String, Object>) value).entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, Object> entry = it.next();
+                sb.append(entry.getKey()).append(":").append(hiveType(entry.getValue()));
+                if (it.hasNext()) {
+                    sb.append(",");
+                }
+            }
+            return sb.append(">").toString();
+        }
+        throw new IllegalArgumentException("Unsupported type " + value.getClass());
+    }
+
+    // structs are represented as lists and primitives as writables (as Hive does)
+    @SuppressWarnings("unchecked")
+    private static Object hiveValue(Object value) {
+        if (value instanceof Map) {
+            List<Object> struct = new ArrayList<Object>();
+            for (Object nested : ((Map<String, Object>) value).values()) {
+                struct.add(hiveValue(nested));
+            }
+            return struct;
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<Object>();
+            for (Object nested : (List<Object>) value) {
+                list.add(hiveValue(nested));
+            }
+            return list;
+        }
+        if (value instanceof String) {
+            return new Text((String) value);
+        }
+        if (value instanceof Long) {
+            return new LongWritable((Long) value);
+        }
+        if (value instanceof Integer) {
+            return new IntWritable((Integer) value);
+        }
+        if (value instanceof Double) {
+            return new DoubleWritable((Double) value);
+        }
+        if (value instanceof Boolean) {
+            return new BooleanWritable((Boolean) value);
+        }
+        throw new IllegalArgumentException("Unsupported type " + value.getClass());
+    }
+
+    @Benchmark
+    public Writable serialize() throws SerDeException {
+        return serDe.serialize(row, inspector);
+    }
+
+    @Benchmark
+    public Object deserialize() throws SerDeException {
+        return serDe.deserialize(writable);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.pig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.ResourceSchema.ResourceFieldSchema;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.elasticsearch.hadoop.bench.Documents;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the Pig conversion in both directions. The Pig schema is derived from the generated document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PigTypeUtilsBenchmark {
+
+    @Param({ Documents.FLAT, Documents.NESTED, Documents.ARRAY })
+    public String shape;
+
+    private Map<String, Object> doc;
+    private ResourceFieldSchema field;
+    private Tuple tuple;
+
+    @Setup
+    public void setup() throws IOException {
+        doc = Documents.generate(shape, 1);
+        field = pigField("doc", doc);
+        tuple = (Tuple) pigValue(doc);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ResourceFieldSchema pigField(String name, Object value) throws IOException {
+        ResourceFieldSchema field = new ResourceFieldSchema();
+        field.setName(name);
+
+        if (value instanceof Map) {
+            List<ResourceFieldSchema> nested = new ArrayList<ResourceFieldSchema>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                nested.add(pigField(entry.getKey(), entry.getValue()));
+            }
+            ResourceSchema schema = new ResourceSchema();
+            schema.setFields(nested.toArray(new ResourceFieldSchema[nested.size()]));
+            field.setType(DataType.TUPLE);
+            field.setSchema(schema);
+        }
+        else if (value instanceof List) {
+            // bag of single-field tuples
+            ResourceSchema elementSchema = new ResourceSchema();
+            elementSchema.setFields(new ResourceFieldSchema[] { pigField("value", ((List<Object>) value).get(0)) });
+
+            ResourceFieldSchema element = new ResourceFieldSchema();
+            element.setName("t");
+            element.setType(DataType.TUPLE);
+            element.setSchema(elementSchema);
+
+            ResourceSchema schema = new ResourceSchema();
+            schema.setFields(new ResourceFieldSchema[] { element });
+            field.setType(DataType.BAG);
+            field.setSchema(schema);
+        }
+        else {
+            field.setType(DataType.findType(value));
+        }
+        return field;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object pigValue(Object value) {
+        if (value instanceof Map) {
+            List<Object> values = new ArrayList<Object>();
+            for (Object nested : ((Map<String, Object>) value).values()) {
+                values.add(pigValue(nested));
+            }
+            return TupleFactory.getInstance().newTupleNoCopy(values);
+        }
+        if (value instanceof List) {
+            List<Tuple> tuples = new ArrayList<Tuple>();
+            for (Object nested : (List<Object>) value) {
+                tuples.add(TupleFactory.getInstance().newTuple(pigValue(nested)));
+            }
+            return BagFactory.getInstance().newDefaultBag(tuples);
+        }
+        return value;
+    }
+
+    @Benchmark
+    public Object pigToObject() {
+        return PigTypeUtils.pigToObject(tuple, field);
+    }
+
+    @Benchmark
+    public Object objectToPig() {
+        return PigTypeUtils.objectToPig(doc);
+    }
+
+    @Benchmark
+    public Object objectToPigWithSchema() {
+        return PigTypeUtils.objectToPig(doc, field);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.Writable;
+import org.elasticsearch.hadoop.bench.Documents;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.PropertiesSettings;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.util.WritableUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the write path (conversion, serialization and buffering) using a no-op transport.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferedRestClientBenchmark {
+
+    // discards the bulk requests
+    static class NoopRestClient extends RestClient {
+        NoopRestClient(Settings settings) {
+            super(settings);
+        }
+
+        @Override
+        public List<Map<String, Object>> bulk(String index, byte[] buffer, int bufferSize) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void refresh(String index) {
+        }
+    }
+
+    @Param({ Documents.FLAT, Documents.NESTED, Documents.ARRAY })
+    public String shape;
+
+    private BufferedRestClient client;
+    private Map<String, Object> doc;
+    private Writable writable;
+
+    @Setup
+    public void setup() {
+        Properties props = new Properties();
+        props.setProperty(ConfigurationOptions.ES_RESOURCE, "bench/doc");
+        Settings settings = new PropertiesSettings(props);
+        client = new BufferedRestClient(settings, new NoopRestClient(settings));
+
+        doc = Documents.generate(shape, 1);
+        writable = WritableUtils.toWritable(doc);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+    @Benchmark
+    public void addMap() throws IOException {
+        client.addToIndex(doc);
+    }
+
+    @Benchmark
+    public void addWritable() throws IOException {
+        client.addToIndex(writable);
+    }
+}
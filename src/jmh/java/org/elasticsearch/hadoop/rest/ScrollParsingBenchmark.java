@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.elasticsearch.hadoop.bench.Documents;
+import org.elasticsearch.hadoop.cfg.PropertiesSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the parsing of a scroll page (one operation = one page).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScrollParsingBenchmark {
+
+    @Param({ Documents.FLAT, Documents.NESTED, Documents.ARRAY })
+    public String shape;
+
+    @Param({ "50" })
+    public int pageSize;
+
+    private RestClient client;
+    private byte[] page;
+
+    @Setup
+    public void setup() throws IOException {
+        client = new RestClient(new PropertiesSettings(new Properties()));
+
+        List<Object> hits = new ArrayList<Object>();
+        int id = 0;
+        for (Map<String, Object> doc : Documents.generate(shape, 1, pageSize)) {
+            Map<String, Object> hit = new LinkedHashMap<String, Object>();
+            hit.put("_index", "bench");
+            hit.put("_type", "doc");
+            hit.put("_id", Integer.toString(id++));
+            hit.put("_score", 0.0);
+            hit.put("_source", doc);
+            hits.add(hit);
+        }
+
+        Map<String, Object> hitsEnvelope = new LinkedHashMap<String, Object>();
+        hitsEnvelope.put("total", 100000);
+        hitsEnvelope.put("max_score", 0.0);
+        hitsEnvelope.put("hits", hits);
+
+        Map<String, Object> response = new LinkedHashMap<String, Object>();
+        response.put("_scroll_id", "c2Nhbjs1OzE6Ym5jQmVhZm5RSnVPZ2JjVnNDVEJ1UTsxOw==");
+        response.put("took", 3);
+        response.put("timed_out", false);
+        response.put("hits", hitsEnvelope);
+
+        page = new ObjectMapper().writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> parsePage() throws IOException {
+        return client.parseScroll(page);
+    }
+}
@@ -29,6 +29,7 @@ import org.elasticsearch.hadoop.cfg.Settings;
 import org.elasticsearch.hadoop.cfg.SettingsManager;
 import org.elasticsearch.hadoop.mr.ESInputFormat;
 import org.elasticsearch.hadoop.mr.ESOutputFormat;
+import org.elasticsearch.hadoop.mr.JobCommitUtils;
 import org.elasticsearch.hadoop.util.WritableUtils;
 
 import cascading.flow.FlowProcess;
@@ -128,6 +129,7 @@ class ESHadoopScheme extends Scheme<JobConf, RecordReader, OutputCollector, Obje
         // NB: there's no es:// protocol - this is just a fake placeholder that will cause exceptions if any File-based output class is used
         conf.set("mapred.output.dir", "es://" + set.getTargetUri() + "/" + set.getTargetResource());
         conf.set("mapred.output.committer.class", ESOutputFormat.ESOldAPIOutputCommitter.class.getName());
+        JobCommitUtils.init(conf);
     }
 
     private void initTargetUri(JobConf conf) {
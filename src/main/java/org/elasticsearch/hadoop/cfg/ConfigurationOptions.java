@@ -32,6 +32,9 @@ public interface ConfigurationOptions {
     static final String ES_RESOURCE = "es.resource";
     static final String ES_QUERY = "es.query";
 
+    /** Index name pattern (such as <tt>logs-{day}</tt>) mapping (Hive) columns onto indices - used for pruning the indices read */
+    static final String ES_RESOURCE_PARTITION = "es.resource.partition";
+
     /** ElasticSearch batch size given in bytes */
     static final String ES_BATCH_SIZE_BYTES = "es.batch.size.bytes";
     static final String ES_BATCH_SIZE_BYTES_DEFAULT = "10mb";
@@ -40,10 +43,119 @@ public interface ConfigurationOptions {
     static final String ES_BATCH_SIZE_ENTRIES = "es.batch.size.entries";
     static final String ES_BATCH_SIZE_ENTRIES_DEFAULT = "0";
 
+    /** Maximum time a document can sit in the batch before it is flushed (0 means until the batch is full) */
+    static final String ES_BATCH_LINGER = "es.batch.linger";
+    static final String ES_BATCH_LINGER_DEFAULT = "0";
+
+    /** Interval for refreshing the index while writing (0 means no periodic refresh) - for long-running writers */
+    static final String ES_BATCH_REFRESH_INTERVAL = "es.batch.refresh.interval";
+    static final String ES_BATCH_REFRESH_INTERVAL_DEFAULT = "0";
+
     /** Whether to trigger an index refresh after doing batch writing */
     static final String ES_BATCH_WRITE_REFRESH = "es.batch.write.refresh";
     static final String ES_BATCH_WRITE_REFRESH_DEFAULT = "true";
 
+    /** Whether to tune the index for bulk loading while the job runs (no refresh, no replicas) - the original settings are restored on job commit */
+    static final String ES_BATCH_WRITE_BULK_LOAD = "es.batch.write.bulk.load";
+    static final String ES_BATCH_WRITE_BULK_LOAD_DEFAULT = "false";
+
+    /** Whether to optimize the index on job commit */
+    static final String ES_BATCH_WRITE_OPTIMIZE = "es.batch.write.optimize";
+    static final String ES_BATCH_WRITE_OPTIMIZE_DEFAULT = "false";
+
+    /** Whether to rebuild the index - write into a fresh (staging) index and point the alias (the target index) to it on job commit (not supported by Hive) */
+    static final String ES_BATCH_WRITE_REBUILD = "es.batch.write.rebuild";
+    static final String ES_BATCH_WRITE_REBUILD_DEFAULT = "false";
+
+    /** Whether to delete the indices previously pointed by the alias after a rebuild */
+    static final String ES_BATCH_WRITE_REBUILD_DELETE_OLD = "es.batch.write.rebuild.delete.old";
+    static final String ES_BATCH_WRITE_REBUILD_DELETE_OLD_DEFAULT = "true";
+
+    /** Whether to coalesce the writes to the same document (requires es.mapping.id) within a batch */
+    static final String ES_BATCH_WRITE_COALESCE = "es.batch.write.coalesce";
+    static final String ES_BATCH_WRITE_COALESCE_DEFAULT = "false";
+
+    /** Merger used when coalescing writes - 'additive' (sums the numeric fields) or a DocumentMerger class name */
+    static final String ES_BATCH_WRITE_COALESCE_MERGER = "es.batch.write.coalesce.merger";
+
+    /** Number of retries for documents rejected by ElasticSearch (typically due to a full bulk queue) */
+    static final String ES_BATCH_WRITE_RETRY_COUNT = "es.batch.write.retry.count";
+    static final String ES_BATCH_WRITE_RETRY_COUNT_DEFAULT = "3";
+
+    /** Time to wait before retrying rejected documents */
+    static final String ES_BATCH_WRITE_RETRY_WAIT = "es.batch.write.retry.wait";
+    static final String ES_BATCH_WRITE_RETRY_WAIT_DEFAULT = "10s";
+
+    /** Whether to spill the batches that cannot be sent (cluster unavailable) to a local journal and replay them later (not supported with shared writes) */
+    static final String ES_BATCH_WRITE_JOURNAL = "es.batch.write.journal";
+    static final String ES_BATCH_WRITE_JOURNAL_DEFAULT = "false";
+
+    /** Directory holding the journal (by default the task working directory) */
+    static final String ES_BATCH_WRITE_JOURNAL_DIR = "es.batch.write.journal.dir";
+
+    /** Maximum disk space used by the journal */
+    static final String ES_BATCH_WRITE_JOURNAL_SIZE = "es.batch.write.journal.size";
+    static final String ES_BATCH_WRITE_JOURNAL_SIZE_DEFAULT = "256mb";
+
+    /** How long to wait for the cluster to recover when the journal is full or being replayed on close */
+    static final String ES_BATCH_WRITE_JOURNAL_TIMEOUT = "es.batch.write.journal.timeout";
+    static final String ES_BATCH_WRITE_JOURNAL_TIMEOUT_DEFAULT = "5m";
+
+    /** Whether to stream the bulk requests (chunked) while the documents are produced instead of buffering each batch */
+    static final String ES_BATCH_WRITE_STREAMING = "es.batch.write.streaming";
+    static final String ES_BATCH_WRITE_STREAMING_DEFAULT = "false";
+
+    /** Size of the chunks handed off to the streaming connection */
+    static final String ES_BATCH_WRITE_STREAMING_CHUNK = "es.batch.write.streaming.chunk";
+    static final String ES_BATCH_WRITE_STREAMING_CHUNK_DEFAULT = "64kb";
+
+    /** Maximum amount of memory held by the chunks not yet written to the streaming connection */
+    static final String ES_BATCH_WRITE_STREAMING_WINDOW = "es.batch.write.streaming.window";
+    static final String ES_BATCH_WRITE_STREAMING_WINDOW_DEFAULT = "1mb";
+
+    /** Whether the writers inside a JVM targeting the same cluster and index share their bulk buffers (and requests) */
+    static final String ES_BATCH_WRITE_SHARED = "es.batch.write.shared";
+    static final String ES_BATCH_WRITE_SHARED_DEFAULT = "false";
+
+    /** Number of threads sending the shared bulk requests */
+    static final String ES_BATCH_WRITE_SHARED_THREADS = "es.batch.write.shared.threads";
+    static final String ES_BATCH_WRITE_SHARED_THREADS_DEFAULT = "2";
+
+    /** Number of (lock-striped) shared buffers the writers append to */
+    static final String ES_BATCH_WRITE_SHARED_STRIPES = "es.batch.write.shared.stripes";
+    static final String ES_BATCH_WRITE_SHARED_STRIPES_DEFAULT = "4";
+
+    /** Whether the same writer can be used by multiple threads (such as inside a MultithreadedMapper) */
+    static final String ES_BATCH_WRITE_CONCURRENT = "es.batch.write.concurrent";
+    static final String ES_BATCH_WRITE_CONCURRENT_DEFAULT = "false";
+
+    /** Job-wide write limit in documents per second (0 means no limit) - split between the tasks */
+    static final String ES_BATCH_WRITE_RATE_DOCS = "es.batch.write.rate.docs";
+    static final String ES_BATCH_WRITE_RATE_DOCS_DEFAULT = "0";
+
+    /** Job-wide write limit in bytes per second (0 means no limit) - split between the tasks */
+    static final String ES_BATCH_WRITE_RATE_BYTES = "es.batch.write.rate.bytes";
+    static final String ES_BATCH_WRITE_RATE_BYTES_DEFAULT = "0";
+
+    /** Number of concurrent tasks sharing the write limit (by default the number of map or reduce tasks writing) */
+    static final String ES_BATCH_WRITE_RATE_TASKS = "es.batch.write.rate.tasks";
+
+    /** Whether to slow down when ElasticSearch pushes back (rejected entries or bulk queues filling up) */
+    static final String ES_BATCH_WRITE_BACKPRESSURE = "es.batch.write.backpressure";
+    static final String ES_BATCH_WRITE_BACKPRESSURE_DEFAULT = "false";
+
+    /** How often to check the bulk queues of the cluster (0 to disable) */
+    static final String ES_BATCH_WRITE_BACKPRESSURE_INTERVAL = "es.batch.write.backpressure.interval";
+    static final String ES_BATCH_WRITE_BACKPRESSURE_INTERVAL_DEFAULT = "10s";
+
+    /** Bulk queue fill ratio (0-1) that triggers a slow down */
+    static final String ES_BATCH_WRITE_BACKPRESSURE_QUEUE = "es.batch.write.backpressure.queue";
+    static final String ES_BATCH_WRITE_BACKPRESSURE_QUEUE_DEFAULT = "0.75";
+
+    /** Fraction of the max heap the connector buffers can use (0 means no limit) */
+    static final String ES_MEMORY_BUDGET = "es.memory.budget";
+    static final String ES_MEMORY_BUDGET_DEFAULT = "0";
+
     /** HTTP connection timeout */
     static final String ES_HTTP_TIMEOUT = "es.http.timeout";
     static final String ES_HTTP_TIMEOUT_DEFAULT = "1m";
@@ -56,4 +168,66 @@ public interface ConfigurationOptions {
     static final String ES_SCROLL_SIZE = "es.scroll.size";
     static final String ES_SCROLL_SIZE_DEFAULT = "50";
 
+    /** Whether to combine multiple shards (of the same node) into one input split, read concurrently */
+    static final String ES_INPUT_COMBINE = "es.input.combine";
+    static final String ES_INPUT_COMBINE_DEFAULT = "false";
+
+    /** Target (estimated) size of a combined split */
+    static final String ES_INPUT_COMBINE_SIZE = "es.input.combine.size";
+    static final String ES_INPUT_COMBINE_SIZE_DEFAULT = "256mb";
+
+    /** Maximum number of shards in a combined split */
+    static final String ES_INPUT_COMBINE_SHARDS = "es.input.combine.shards";
+    static final String ES_INPUT_COMBINE_SHARDS_DEFAULT = "16";
+
+    /** Number of shards of a combined split scrolled at the same time */
+    static final String ES_INPUT_COMBINE_THREADS = "es.input.combine.threads";
+    static final String ES_INPUT_COMBINE_THREADS_DEFAULT = "4";
+
+    /** Maximum number of concurrent scrolls per node, across all the tasks of the job (0 means no limit). Requires write access to the permits index */
+    static final String ES_SCROLL_NODE_LIMIT = "es.scroll.node.limit";
+    static final String ES_SCROLL_NODE_LIMIT_DEFAULT = "0";
+
+    /** Index holding the per-node scroll permits (written by the reading tasks) */
+    static final String ES_SCROLL_NODE_PERMITS = "es.scroll.node.permits";
+    static final String ES_SCROLL_NODE_PERMITS_DEFAULT = ".eshadoop-permits";
+
+    /** How long to wait before trying again to get a permit (randomized to avoid all tasks retrying at once) */
+    static final String ES_SCROLL_NODE_WAIT = "es.scroll.node.wait";
+    static final String ES_SCROLL_NODE_WAIT_DEFAULT = "5s";
+
+    /** How long a permit lasts unless renewed - permits of failed tasks are reclaimed after this period */
+    static final String ES_SCROLL_NODE_LEASE = "es.scroll.node.lease";
+    static final String ES_SCROLL_NODE_LEASE_DEFAULT = "5m";
+
+    /** Bulk operation used for writing - index, create, update, upsert or delete (the last three require the document id) */
+    static final String ES_WRITE_OPERATION = "es.write.operation";
+    static final String ES_WRITE_OPERATION_DEFAULT = "index";
+
+    /** Script used by update/upsert operations (instead of the partial document) */
+    static final String ES_UPDATE_SCRIPT = "es.update.script";
+    static final String ES_UPDATE_SCRIPT_LANG = "es.update.script.lang";
+    /** Script parameters taken from the document, as a list of param:field (such as <tt>count:cnt,tag:info.tag</tt>) */
+    static final String ES_UPDATE_SCRIPT_PARAMS = "es.update.script.params";
+
+    /** How many times an update is retried on version conflicts */
+    static final String ES_UPDATE_RETRY_ON_CONFLICT = "es.update.retry.on.conflict";
+    static final String ES_UPDATE_RETRY_ON_CONFLICT_DEFAULT = "0";
+
+    /** Document field used as the document id (nested fields are specified through '.') */
+    static final String ES_MAPPING_ID = "es.mapping.id";
+
+    /** Document field used as the document routing */
+    static final String ES_MAPPING_ROUTING = "es.mapping.routing";
+
+    /** Document field used as the document (external) version */
+    static final String ES_MAPPING_VERSION = "es.mapping.version";
+
+    /** Document field used as the document parent */
+    static final String ES_MAPPING_PARENT = "es.mapping.parent";
+
+    /** Whether to remove the metadata fields above from the document source */
+    static final String ES_MAPPING_METADATA_REMOVE = "es.mapping.metadata.remove";
+    static final String ES_MAPPING_METADATA_REMOVE_DEFAULT = "false";
+
 }
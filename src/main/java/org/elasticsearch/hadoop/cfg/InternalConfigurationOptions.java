@@ -22,4 +22,15 @@ interface InternalConfigurationOptions extends ConfigurationOptions {
 
     static final String INTERNAL_ES_TARGET_RESOURCE = "es.internal.mr.target.resource";
     static final String INTERNAL_ES_TARGET_URI = "es.internal.mr.target.uri";
+
+    // whether the job committer handles the refresh (instead of each task)
+    static final String INTERNAL_ES_JOB_COMMIT = "es.internal.mr.job.commit";
+    // index settings captured before the job runs (and restored on commit)
+    static final String INTERNAL_ES_INDEX_REFRESH_INTERVAL = "es.internal.mr.index.refresh_interval";
+    static final String INTERNAL_ES_INDEX_REPLICAS = "es.internal.mr.index.number_of_replicas";
+    static final String INTERNAL_ES_INDEX_SHARDS = "es.internal.mr.index.number_of_shards";
+    // number of shards of the target index (set by ESShardPartitioner)
+    static final String INTERNAL_ES_PARTITIONER_SHARDS = "es.internal.mr.partitioner.shards";
+    // index written to during a rebuild
+    static final String INTERNAL_ES_STAGING_INDEX = "es.internal.mr.staging.index";
 }
@@ -53,10 +53,186 @@ public abstract class Settings implements InternalConfigurationOptions {
         return Integer.valueOf(getProperty(ES_BATCH_SIZE_ENTRIES, ES_BATCH_SIZE_ENTRIES_DEFAULT));
     }
 
+    public long getBatchLinger() {
+        return TimeValue.parseTimeValue(getProperty(ES_BATCH_LINGER, ES_BATCH_LINGER_DEFAULT)).getMillis();
+    }
+
+    public long getBatchRefreshInterval() {
+        return TimeValue.parseTimeValue(getProperty(ES_BATCH_REFRESH_INTERVAL, ES_BATCH_REFRESH_INTERVAL_DEFAULT)).getMillis();
+    }
+
     public boolean getBatchRefreshAfterWrite() {
         return Booleans.parseBoolean(getProperty(ES_BATCH_WRITE_REFRESH, ES_BATCH_WRITE_REFRESH_DEFAULT));
     }
 
+    public boolean getBatchWriteBulkLoad() {
+        return Booleans.parseBoolean(getProperty(ES_BATCH_WRITE_BULK_LOAD, ES_BATCH_WRITE_BULK_LOAD_DEFAULT));
+    }
+
+    public boolean getBatchWriteOptimize() {
+        return Booleans.parseBoolean(getProperty(ES_BATCH_WRITE_OPTIMIZE, ES_BATCH_WRITE_OPTIMIZE_DEFAULT));
+    }
+
+    public boolean getBatchWriteRebuild() {
+        return Booleans.parseBoolean(getProperty(ES_BATCH_WRITE_REBUILD, ES_BATCH_WRITE_REBUILD_DEFAULT));
+    }
+
+    public boolean getBatchWriteRebuildDeleteOld() {
+        return Booleans.parseBoolean(getProperty(ES_BATCH_WRITE_REBUILD_DELETE_OLD, ES_BATCH_WRITE_REBUILD_DELETE_OLD_DEFAULT));
+    }
+
+    public boolean getBatchWriteCoalesce() {
+        return Booleans.parseBoolean(getProperty(ES_BATCH_WRITE_COALESCE, ES_BATCH_WRITE_COALESCE_DEFAULT));
+    }
+
+    public String getBatchWriteCoalesceMerger() {
+        return getProperty(ES_BATCH_WRITE_COALESCE_MERGER);
+    }
+
+    /**
+     * Indicates whether the job is committed through the ES committer (which handles the index refresh) or not.
+     */
+    public boolean getJobCommit() {
+        return Booleans.parseBoolean(getProperty(INTERNAL_ES_JOB_COMMIT, "false"));
+    }
+
+    public Settings setJobCommit(boolean jobCommit) {
+        setProperty(INTERNAL_ES_JOB_COMMIT, String.valueOf(jobCommit));
+        return this;
+    }
+
+    public String getOriginalRefreshInterval() {
+        return getProperty(INTERNAL_ES_INDEX_REFRESH_INTERVAL);
+    }
+
+    public Settings setOriginalRefreshInterval(String refreshInterval) {
+        setProperty(INTERNAL_ES_INDEX_REFRESH_INTERVAL, refreshInterval);
+        return this;
+    }
+
+    public String getOriginalReplicas() {
+        return getProperty(INTERNAL_ES_INDEX_REPLICAS);
+    }
+
+    public Settings setOriginalReplicas(String replicas) {
+        setProperty(INTERNAL_ES_INDEX_REPLICAS, replicas);
+        return this;
+    }
+
+    public String getOriginalShards() {
+        return getProperty(INTERNAL_ES_INDEX_SHARDS);
+    }
+
+    public Settings setOriginalShards(String shards) {
+        setProperty(INTERNAL_ES_INDEX_SHARDS, shards);
+        return this;
+    }
+
+    public int getPartitionerShards() {
+        return Integer.valueOf(getProperty(INTERNAL_ES_PARTITIONER_SHARDS, "0"));
+    }
+
+    public Settings setPartitionerShards(int shards) {
+        setProperty(INTERNAL_ES_PARTITIONER_SHARDS, String.valueOf(shards));
+        return this;
+    }
+
+    public String getStagingIndex() {
+        return getProperty(INTERNAL_ES_STAGING_INDEX);
+    }
+
+    public Settings setStagingIndex(String index) {
+        setProperty(INTERNAL_ES_STAGING_INDEX, index);
+        return this;
+    }
+
+    public int getBatchWriteRetryCount() {
+        return Integer.valueOf(getProperty(ES_BATCH_WRITE_RETRY_COUNT, ES_BATCH_WRITE_RETRY_COUNT_DEFAULT));
+    }
+
+    public long getBatchWriteRetryWait() {
+        return TimeValue.parseTimeValue(getProperty(ES_BATCH_WRITE_RETRY_WAIT, ES_BATCH_WRITE_RETRY_WAIT_DEFAULT)).getMillis();
+    }
+
+    public boolean getBatchWriteJournal() {
+        return Booleans.parseBoolean(getProperty(ES_BATCH_WRITE_JOURNAL, ES_BATCH_WRITE_JOURNAL_DEFAULT));
+    }
+
+    public String getBatchWriteJournalDir() {
+        return getProperty(ES_BATCH_WRITE_JOURNAL_DIR);
+    }
+
+    public long getBatchWriteJournalSize() {
+        return ByteSizeValue.parseBytesSizeValue(getProperty(ES_BATCH_WRITE_JOURNAL_SIZE, ES_BATCH_WRITE_JOURNAL_SIZE_DEFAULT)).bytes();
+    }
+
+    public long getBatchWriteJournalTimeout() {
+        return TimeValue.parseTimeValue(getProperty(ES_BATCH_WRITE_JOURNAL_TIMEOUT, ES_BATCH_WRITE_JOURNAL_TIMEOUT_DEFAULT)).getMillis();
+    }
+
+    public boolean getBatchWriteStreaming() {
+        return Booleans.parseBoolean(getProperty(ES_BATCH_WRITE_STREAMING, ES_BATCH_WRITE_STREAMING_DEFAULT));
+    }
+
+    public int getBatchWriteStreamingChunk() {
+        return ByteSizeValue.parseBytesSizeValue(getProperty(ES_BATCH_WRITE_STREAMING_CHUNK, ES_BATCH_WRITE_STREAMING_CHUNK_DEFAULT)).bytesAsInt();
+    }
+
+    public int getBatchWriteStreamingWindow() {
+        return ByteSizeValue.parseBytesSizeValue(getProperty(ES_BATCH_WRITE_STREAMING_WINDOW, ES_BATCH_WRITE_STREAMING_WINDOW_DEFAULT)).bytesAsInt();
+    }
+
+    public boolean getBatchWriteShared() {
+        return Booleans.parseBoolean(getProperty(ES_BATCH_WRITE_SHARED, ES_BATCH_WRITE_SHARED_DEFAULT));
+    }
+
+    public int getBatchWriteSharedThreads() {
+        return Integer.valueOf(getProperty(ES_BATCH_WRITE_SHARED_THREADS, ES_BATCH_WRITE_SHARED_THREADS_DEFAULT));
+    }
+
+    public int getBatchWriteSharedStripes() {
+        return Integer.valueOf(getProperty(ES_BATCH_WRITE_SHARED_STRIPES, ES_BATCH_WRITE_SHARED_STRIPES_DEFAULT));
+    }
+
+    public long getBatchWriteRateDocs() {
+        return Long.parseLong(getProperty(ES_BATCH_WRITE_RATE_DOCS, ES_BATCH_WRITE_RATE_DOCS_DEFAULT));
+    }
+
+    public long getBatchWriteRateBytes() {
+        return ByteSizeValue.parseBytesSizeValue(getProperty(ES_BATCH_WRITE_RATE_BYTES, ES_BATCH_WRITE_RATE_BYTES_DEFAULT)).bytes();
+    }
+
+    /**
+     * Returns the number of tasks sharing the write limit - unless specified, the number of map (or reduce) tasks of the job.
+     */
+    public int getBatchWriteRateTasks() {
+        String tasks = getProperty(ES_BATCH_WRITE_RATE_TASKS);
+        if (tasks == null) {
+            tasks = getProperty(Booleans.parseBoolean(getProperty("mapred.task.is.map", "true")) ? "mapred.map.tasks" : "mapred.reduce.tasks");
+        }
+        return (tasks != null ? Math.max(1, Integer.parseInt(tasks)) : 1);
+    }
+
+    public boolean getBatchWriteBackpressure() {
+        return Booleans.parseBoolean(getProperty(ES_BATCH_WRITE_BACKPRESSURE, ES_BATCH_WRITE_BACKPRESSURE_DEFAULT));
+    }
+
+    public long getBatchWriteBackpressureInterval() {
+        return TimeValue.parseTimeValue(getProperty(ES_BATCH_WRITE_BACKPRESSURE_INTERVAL, ES_BATCH_WRITE_BACKPRESSURE_INTERVAL_DEFAULT)).getMillis();
+    }
+
+    public float getBatchWriteBackpressureQueue() {
+        return Float.parseFloat(getProperty(ES_BATCH_WRITE_BACKPRESSURE_QUEUE, ES_BATCH_WRITE_BACKPRESSURE_QUEUE_DEFAULT));
+    }
+
+    public boolean getBatchWriteConcurrent() {
+        return Booleans.parseBoolean(getProperty(ES_BATCH_WRITE_CONCURRENT, ES_BATCH_WRITE_CONCURRENT_DEFAULT));
+    }
+
+    public float getMemoryBudget() {
+        return Float.parseFloat(getProperty(ES_MEMORY_BUDGET, ES_MEMORY_BUDGET_DEFAULT));
+    }
+
     public long getScrollKeepAlive() {
         return TimeValue.parseTimeValue(getProperty(ES_SCROLL_KEEPALIVE, ES_SCROLL_KEEPALIVE_DEFAULT)).getMillis();
     }
@@ -65,6 +241,78 @@ public abstract class Settings implements InternalConfigurationOptions {
         return Long.valueOf(getProperty(ES_SCROLL_SIZE, ES_SCROLL_SIZE_DEFAULT));
     }
 
+    public boolean getInputCombine() {
+        return Booleans.parseBoolean(getProperty(ES_INPUT_COMBINE, ES_INPUT_COMBINE_DEFAULT));
+    }
+
+    public long getInputCombineSize() {
+        return ByteSizeValue.parseBytesSizeValue(getProperty(ES_INPUT_COMBINE_SIZE, ES_INPUT_COMBINE_SIZE_DEFAULT)).bytes();
+    }
+
+    public int getInputCombineShards() {
+        return Integer.valueOf(getProperty(ES_INPUT_COMBINE_SHARDS, ES_INPUT_COMBINE_SHARDS_DEFAULT));
+    }
+
+    public int getInputCombineThreads() {
+        return Integer.valueOf(getProperty(ES_INPUT_COMBINE_THREADS, ES_INPUT_COMBINE_THREADS_DEFAULT));
+    }
+
+    public int getScrollNodeLimit() {
+        return Integer.valueOf(getProperty(ES_SCROLL_NODE_LIMIT, ES_SCROLL_NODE_LIMIT_DEFAULT));
+    }
+
+    public String getScrollNodePermits() {
+        return getProperty(ES_SCROLL_NODE_PERMITS, ES_SCROLL_NODE_PERMITS_DEFAULT);
+    }
+
+    public long getScrollNodeWait() {
+        return TimeValue.parseTimeValue(getProperty(ES_SCROLL_NODE_WAIT, ES_SCROLL_NODE_WAIT_DEFAULT)).getMillis();
+    }
+
+    public long getScrollNodeLease() {
+        return TimeValue.parseTimeValue(getProperty(ES_SCROLL_NODE_LEASE, ES_SCROLL_NODE_LEASE_DEFAULT)).getMillis();
+    }
+
+    public String getWriteOperation() {
+        return getProperty(ES_WRITE_OPERATION, ES_WRITE_OPERATION_DEFAULT);
+    }
+
+    public String getUpdateScript() {
+        return getProperty(ES_UPDATE_SCRIPT);
+    }
+
+    public String getUpdateScriptLang() {
+        return getProperty(ES_UPDATE_SCRIPT_LANG);
+    }
+
+    public String getUpdateScriptParams() {
+        return getProperty(ES_UPDATE_SCRIPT_PARAMS);
+    }
+
+    public int getUpdateRetryOnConflict() {
+        return Integer.valueOf(getProperty(ES_UPDATE_RETRY_ON_CONFLICT, ES_UPDATE_RETRY_ON_CONFLICT_DEFAULT));
+    }
+
+    public String getMappingId() {
+        return getProperty(ES_MAPPING_ID);
+    }
+
+    public String getMappingRouting() {
+        return getProperty(ES_MAPPING_ROUTING);
+    }
+
+    public String getMappingVersion() {
+        return getProperty(ES_MAPPING_VERSION);
+    }
+
+    public String getMappingParent() {
+        return getProperty(ES_MAPPING_PARENT);
+    }
+
+    public boolean getMappingMetadataRemove() {
+        return Booleans.parseBoolean(getProperty(ES_MAPPING_METADATA_REMOVE, ES_MAPPING_METADATA_REMOVE_DEFAULT));
+    }
+
     public String getTargetUri() {
         String address = getProperty(INTERNAL_ES_TARGET_URI);
         return (StringUtils.hasText(address) ? address: new StringBuilder("http://").append(getHost()).append(":").append(getPort()).append("/").toString());
@@ -90,6 +338,10 @@ public abstract class Settings implements InternalConfigurationOptions {
         return (StringUtils.hasText(targetResource) ? targetResource : StringUtils.hasText(resource) ? resource : getProperty(ES_RESOURCE));
     }
 
+    public String getResourcePartition() {
+        return getProperty(ES_RESOURCE_PARTITION);
+    }
+
     public Settings cleanUri() {
         setProperty(INTERNAL_ES_TARGET_URI, "");
         return this;
@@ -103,8 +103,7 @@ public class ESMapWritableSource implements Source<MapWritable> {
 
   @Override
   public long getSize(Configuration configuration) {
-    // TODO Do something smarter here. Use the ES result metadata???
-    return 1000 * 1000;
+    return ESSource.estimateSize(configuration, host, port, esQuery);
   }
 
   @Override
@@ -27,12 +27,18 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.Job;
 import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.cfg.SettingsManager;
 import org.elasticsearch.hadoop.mr.ESInputFormat;
+import org.elasticsearch.hadoop.rest.SizeEstimator;
+import org.elasticsearch.hadoop.rest.SizeEstimator.Estimate;
 
 import com.google.common.base.Objects;
 
 public class ESSource<T> implements Source<T> {
 
+  static final long DEFAULT_SIZE = 1000 * 1000;
+
   private PType<T> ptype;
   private String esQuery;
 
@@ -99,8 +105,16 @@ public class ESSource<T> implements Source<T> {
 
   @Override
   public long getSize(Configuration configuration) {
-    // TODO Do something smarter here. Use the ES result metadata???
-    return 1000 * 1000;
+    return estimateSize(configuration, host, port, esQuery);
+  }
+
+  static long estimateSize(Configuration configuration, String host, int port, String esQuery) {
+    // work on a copy to not pollute the job configuration
+    Settings settings = SettingsManager.loadFrom(new Configuration(configuration)).clean().setHost(host).setPort(port)
+        .setResource(esQuery);
+    Estimate estimate = SizeEstimator.estimate(settings);
+    // fall back to a default size if ES cannot be reached
+    return (estimate != null ? estimate.getSizeInBytes() : DEFAULT_SIZE);
   }
 
   @Override
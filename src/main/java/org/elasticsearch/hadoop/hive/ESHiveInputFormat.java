@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.hive;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.io.CombineHiveInputFormat;
+import org.apache.hadoop.hive.ql.io.ContentSummaryInputFormat;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.cfg.SettingsManager;
+import org.elasticsearch.hadoop.mr.ESInputFormat;
+import org.elasticsearch.hadoop.rest.RestClient;
+import org.elasticsearch.hadoop.rest.SizeEstimator;
+import org.elasticsearch.hadoop.rest.SizeEstimator.Estimate;
+import org.elasticsearch.hadoop.util.StringUtils;
+
+/**
+ * Hive specific InputFormat. Reports the estimated size of the ElasticSearch resource to the Hive planner (used for
+ * map-join conversion and reducer estimation) instead of the size of the (empty) table location.
+ *
+ * <p/>When Hive is set up to combine splits (through {@link CombineHiveInputFormat}), the shards are combined
+ * (see {@link ConfigurationOptions#ES_INPUT_COMBINE}) unless configured otherwise since Hive does not combine the splits of
+ * storage handler tables itself.
+ *
+ * <p/>The indices are pruned based on the predicate pushed by {@link ESStorageHandler} (see {@link ConfigurationOptions#ES_RESOURCE_PARTITION}).
+ */
+public class ESHiveInputFormat extends ESInputFormat implements ContentSummaryInputFormat {
+
+    private static Log log = LogFactory.getLog(ESHiveInputFormat.class);
+
+    @Override
+    public InputSplit[] getSplits(JobConf job, int numSplits) throws IOException {
+        Settings settings = SettingsManager.loadFrom(job);
+        String partition = settings.getResourcePartition();
+        String filter = job.get(TableScanDesc.FILTER_EXPR_CONF_STR);
+
+        if (StringUtils.hasText(partition) && StringUtils.hasText(filter)) {
+            List<String> indices = prune(settings, new IndexPruner(partition), filter, job);
+            if (indices.isEmpty()) {
+                log.info(String.format("No indices matching [%s] left after pruning", partition));
+                return new InputSplit[0];
+            }
+            // read only the pruned indices
+            String resource = settings.getTargetResource();
+            int slash = resource.indexOf("/");
+            job = new JobConf(job);
+            SettingsManager.loadFrom(job)
+                    .setResource(StringUtils.concatenate(indices.toArray(), ",") + (slash >= 0 ? resource.substring(slash) : ""))
+                    .save();
+        }
+
+        // CombineHiveInputFormat falls back to HiveInputFormat (which calls this method) for non-native tables
+        if (job.get(ES_INPUT_COMBINE) == null
+                && CombineHiveInputFormat.class.getName().equals(job.get(HiveConf.ConfVars.HIVEINPUTFORMAT.varname))) {
+            job = new JobConf(job);
+            job.setBoolean(ES_INPUT_COMBINE, true);
+        }
+        return super.getSplits(job, numSplits);
+    }
+
+    private List<String> prune(Settings settings, IndexPruner pruner, String filter, JobConf job) throws IOException {
+        RestClient client = new RestClient(settings);
+        try {
+            List<String> indices = pruner.prune(client.getAliases(pruner.wildcard()).keySet(), Utilities.deserializeExpression(filter, job));
+            log.info(String.format("Pruned indices [%s] to %s based on [%s]", pruner, indices, job.get(TableScanDesc.FILTER_TEXT_CONF_STR)));
+            return indices;
+        } catch (HiveException ex) {
+            throw new IllegalStateException(String.format("Cannot prune indices [%s]", pruner), ex);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Override
+    public ContentSummary getContentSummary(Path p, JobConf job) throws IOException {
+        Estimate estimate = SizeEstimator.estimate(SettingsManager.loadFrom(job));
+        long size;
+        if (estimate != null) {
+            size = estimate.getSizeInBytes();
+        }
+        else {
+            // unknown size - report the table as too large for a map-join (an empty location would make it the small table)
+            size = Math.max(HiveConf.getLongVar(job, HiveConf.ConfVars.HIVESMALLTABLESFILESIZE),
+                    HiveConf.getLongVar(job, HiveConf.ConfVars.HIVECONVERTJOINNOCONDITIONALTASKTHRESHOLD)) + 1;
+            log.warn(String.format("Size estimate not available for [%s]; reporting [%d] bytes to the Hive planner", p, size));
+        }
+        return new ContentSummary(size, 1, 0);
+    }
+}
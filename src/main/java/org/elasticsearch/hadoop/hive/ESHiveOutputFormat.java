@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.util.Properties;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.ql.exec.FileSinkOperator.RecordWriter;
 import org.apache.hadoop.hive.ql.io.HiveOutputFormat;
@@ -35,8 +36,8 @@ public class ESHiveOutputFormat extends ESOutputFormat implements HiveOutputForm
 
     static class ESHiveRecordWriter extends ESOutputFormat.ESRecordWriter implements RecordWriter {
 
-        public ESHiveRecordWriter(Configuration cfg) {
-            super(cfg);
+        public ESHiveRecordWriter(Configuration cfg, Progressable progress) {
+            super(cfg, progress);
         }
 
         @Override
@@ -46,13 +47,19 @@ public class ESHiveOutputFormat extends ESOutputFormat implements HiveOutputForm
 
         @Override
         public void close(boolean abort) throws IOException {
-            // TODO: check whether a proper Reporter can be passed in
+            // the Progressable passed in at creation time is used for reporting
             super.close((Reporter) null);
         }
     }
 
+    @Override
+    public void checkOutputSpecs(FileSystem ignored, JobConf cfg) {
+        // Hive commits the job through its own (no-op) committer - the tasks refresh the index
+        checkOutputSpecs(cfg, false);
+    }
+
     @Override
     public RecordWriter getHiveRecordWriter(JobConf jc, Path finalOutPath, Class<? extends Writable> valueClass, boolean isCompressed, Properties tableProperties, Progressable progress) {
-        return new ESHiveRecordWriter(jc);
+        return new ESHiveRecordWriter(jc, progress);
     }
 }
@@ -44,17 +44,24 @@ import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.cfg.SettingsManager;
+import org.elasticsearch.hadoop.rest.SizeEstimator;
+import org.elasticsearch.hadoop.rest.SizeEstimator.Estimate;
 import org.elasticsearch.hadoop.util.StringUtils;
 
 public class ESSerDe implements SerDe {
 
     private Configuration conf;
+    private Properties tableProperties;
     private StructObjectInspector inspector;
     private ArrayList<String> columnNames;
+    private SerDeStats stats;
 
     @Override
     public void initialize(Configuration conf, Properties tbl) throws SerDeException {
         this.conf = conf;
+        this.tableProperties = tbl;
 
         // extract column info - don't use Hive constants as they were renamed in 0.9 breaking compatibility
 
@@ -73,6 +80,11 @@ public class ESSerDe implements SerDe {
         inspector = ObjectInspectorFactory.getStandardStructObjectInspector(columnNames, inspectors);
     }
 
+    // table properties (used by the storage handler at planning time)
+    String getTableProperty(String name) {
+        return (tableProperties != null ? tableProperties.getProperty(name) : null);
+    }
+
     @Override
     public Object deserialize(Writable blob) throws SerDeException {
         if (blob == null || blob instanceof NullWritable) {
@@ -90,8 +102,20 @@ public class ESSerDe implements SerDe {
 
     @Override
     public SerDeStats getSerDeStats() {
-        // TODO: stats not yet supported (seems quite the trend for SerDe)
-        return null;
+        // stats are per row - use the average document size of the target index
+        if (stats == null) {
+            stats = new SerDeStats();
+            if (conf != null) {
+                Settings settings = SettingsManager.loadFrom(conf);
+                if (StringUtils.hasText(settings.getTargetResource())) {
+                    Estimate estimate = SizeEstimator.estimate(settings);
+                    if (estimate != null) {
+                        stats.setRawDataSize(estimate.getAverageDocSize());
+                    }
+                }
+            }
+        }
+        return stats;
     }
 
     @Override
@@ -20,28 +20,38 @@ import java.util.Map;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.metastore.HiveMetaHook;
 import org.apache.hadoop.hive.ql.metadata.DefaultStorageHandler;
+import org.apache.hadoop.hive.ql.metadata.HiveStoragePredicateHandler;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.serde2.Deserializer;
 import org.apache.hadoop.hive.serde2.SerDe;
 import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.OutputFormat;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.Settings;
 import org.elasticsearch.hadoop.cfg.SettingsManager;
-import org.elasticsearch.hadoop.mr.ESInputFormat;
 import org.elasticsearch.hadoop.mr.ESOutputFormat;
+import org.elasticsearch.hadoop.util.StringUtils;
 
 /**
  * Hive storage for writing data into an ElasticSearch index.
  *
  * The ElasticSearch host/port can be specified through Hadoop properties (see package description)
  * or passed to {@link #ESStorageHandler} through Hive <tt>TBLPROPERTIES</tt>
+ *
+ * <p/>Tables backed by one index per partition (such as <tt>logs-2013.06.01</tt>) can map their partition columns onto the index names
+ * through {@link ConfigurationOptions#ES_RESOURCE_PARTITION} (such as <tt>logs-{day}</tt>); the predicates on these columns are then
+ * used to prune the indices read.
  */
-public class ESStorageHandler extends DefaultStorageHandler {
+public class ESStorageHandler extends DefaultStorageHandler implements HiveStoragePredicateHandler {
 
     private String host;
     private int port = 0;
 
     @Override
     public Class<? extends InputFormat> getInputFormatClass() {
-        return ESInputFormat.class;
+        return ESHiveInputFormat.class;
     }
 
     @Override
@@ -68,6 +78,34 @@ public class ESStorageHandler extends DefaultStorageHandler {
     @Override
     public void configureOutputJobProperties(TableDesc tableDesc, Map<String, String> jobProperties) {
         init(tableDesc);
+
+        // Hive does not run the job committer (the job setup/cleanup are disabled) so there is no job-level index handling
+        Settings settings = SettingsManager.loadFrom(getConf());
+        if (settings.getBatchWriteBulkLoad()) {
+            throw new IllegalArgumentException(String.format("Bulk loading ['%s'] is not supported by Hive", ConfigurationOptions.ES_BATCH_WRITE_BULK_LOAD));
+        }
+        // the staging index would never be swapped behind the alias (nor dropped)
+        if (settings.getBatchWriteRebuild()) {
+            throw new IllegalArgumentException(String.format("Rebuilding ['%s'] is not supported by Hive", ConfigurationOptions.ES_BATCH_WRITE_REBUILD));
+        }
+    }
+
+    @Override
+    public DecomposedPredicate decomposePredicate(JobConf jobConf, Deserializer deserializer, ExprNodeDesc predicate) {
+        String partition = (deserializer instanceof ESSerDe ?
+                ((ESSerDe) deserializer).getTableProperty(ConfigurationOptions.ES_RESOURCE_PARTITION) : null);
+        if (!StringUtils.hasText(partition)) {
+            return null;
+        }
+        ExprNodeDesc pushed = new IndexPruner(partition).partitionPredicate(predicate);
+        if (pushed == null) {
+            return null;
+        }
+        DecomposedPredicate decomposed = new DecomposedPredicate();
+        decomposed.pushedPredicate = pushed;
+        // indices are pruned as a whole - the documents are still filtered by Hive
+        decomposed.residualPredicate = predicate;
+        return decomposed;
     }
 
     private void init(TableDesc tableDesc) {
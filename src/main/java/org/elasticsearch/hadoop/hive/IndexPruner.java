@@ -0,0 +1,229 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.hive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluator;
+import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluatorFactory;
+import org.apache.hadoop.hive.ql.exec.FunctionRegistry;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+
+/**
+ * Maps Hive (partition) columns onto index names through a pattern such as <tt>logs-{day}</tt> and prunes the indices
+ * that cannot match a predicate on these columns - the Hive equivalent of partition pruning for tables backed by one index per
+ * partition.
+ *
+ * <p/>The column values are taken from the index names (as strings, converted to the column type) so the pattern should
+ * mirror the index names exactly. Unlike the write patterns, formats (<tt>{column:format}</tt>) are not supported as
+ * an index then covers a range of values, not the single value the predicate could be evaluated against.
+ */
+class IndexPruner {
+
+    private final String pattern;
+    private final Pattern regex;
+    private final String wildcard;
+    // lower case (like Hive columns)
+    private final List<String> columns = new ArrayList<String>();
+
+    IndexPruner(String pattern) {
+        this.pattern = pattern;
+
+        StringBuilder regex = new StringBuilder();
+        StringBuilder wildcard = new StringBuilder();
+        int position = 0;
+        while (position < pattern.length()) {
+            int start = pattern.indexOf("{", position);
+            int end = (start >= 0 ? pattern.indexOf("}", start) : -1);
+            if (start < 0 || end < 0) {
+                regex.append(Pattern.quote(pattern.substring(position)));
+                wildcard.append(pattern.substring(position));
+                break;
+            }
+            if (start > position) {
+                regex.append(Pattern.quote(pattern.substring(position, start)));
+                wildcard.append(pattern.substring(position, start));
+            }
+            String placeholder = pattern.substring(start + 1, end).trim();
+            if (placeholder.indexOf(":") >= 0) {
+                throw new IllegalArgumentException(String.format("Invalid partition pattern [%s]; formats ({column:format}) are not supported", pattern));
+            }
+            columns.add(placeholder.toLowerCase(Locale.ENGLISH));
+            regex.append("(.+?)");
+            wildcard.append("*");
+            position = end + 1;
+        }
+
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Invalid partition pattern [%s]; no {column} specified", pattern));
+        }
+        this.regex = Pattern.compile(regex.toString());
+        this.wildcard = wildcard.toString();
+    }
+
+    /**
+     * Returns the expression matching all the indices of the pattern.
+     */
+    String wildcard() {
+        return wildcard;
+    }
+
+    /**
+     * Returns the part of the given predicate (its top-level conjuncts) that only references the partition columns
+     * or null if there is none.
+     */
+    ExprNodeDesc partitionPredicate(ExprNodeDesc predicate) {
+        List<ExprNodeDesc> conjuncts = new ArrayList<ExprNodeDesc>();
+        collect(predicate, conjuncts);
+        if (conjuncts.isEmpty()) {
+            return null;
+        }
+        ExprNodeDesc result = conjuncts.get(0);
+        for (int i = 1; i < conjuncts.size(); i++) {
+            result = new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPAnd(),
+                    Arrays.asList(result, conjuncts.get(i)));
+        }
+        return result;
+    }
+
+    private void collect(ExprNodeDesc expr, List<ExprNodeDesc> conjuncts) {
+        if (expr instanceof ExprNodeGenericFuncDesc && ((ExprNodeGenericFuncDesc) expr).getGenericUDF() instanceof GenericUDFOPAnd) {
+            for (ExprNodeDesc child : expr.getChildren()) {
+                collect(child, conjuncts);
+            }
+            return;
+        }
+        List<String> cols = expr.getCols();
+        if (cols == null || cols.isEmpty()) {
+            return;
+        }
+        for (String col : cols) {
+            if (!columns.contains(col.toLowerCase(Locale.ENGLISH))) {
+                return;
+            }
+        }
+        // the outcome has to be the same at planning time
+        if (isDeterministic(expr)) {
+            conjuncts.add(expr);
+        }
+    }
+
+    private static boolean isDeterministic(ExprNodeDesc expr) {
+        if (expr instanceof ExprNodeGenericFuncDesc && !FunctionRegistry.isDeterministic(((ExprNodeGenericFuncDesc) expr).getGenericUDF())) {
+            return false;
+        }
+        if (expr.getChildren() != null) {
+            for (ExprNodeDesc child : expr.getChildren()) {
+                if (!isDeterministic(child)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the indices (out of the given ones) that can match the predicate. Indices not matching the pattern are
+     * discarded while indices for which the predicate cannot be evaluated (such as values not convertible to the column type) are kept.
+     */
+    List<String> prune(Collection<String> indices, ExprNodeDesc predicate) throws HiveException {
+        ExprNodeDesc partition = partitionPredicate(predicate);
+
+        // the column types as seen by the predicate
+        Map<String, TypeInfo> types = new LinkedHashMap<String, TypeInfo>();
+        for (String column : columns) {
+            types.put(column, TypeInfoFactory.stringTypeInfo);
+        }
+        if (partition != null) {
+            types(partition, types);
+        }
+
+        List<String> names = new ArrayList<String>(types.keySet());
+        List<ObjectInspector> inspectors = new ArrayList<ObjectInspector>();
+        List<ObjectInspectorConverters.Converter> converters = new ArrayList<ObjectInspectorConverters.Converter>();
+        for (TypeInfo type : types.values()) {
+            ObjectInspector inspector = TypeInfoUtils.getStandardJavaObjectInspectorFromTypeInfo(type);
+            inspectors.add(inspector);
+            converters.add(ObjectInspectorConverters.getConverter(PrimitiveObjectInspectorFactory.javaStringObjectInspector, inspector));
+        }
+
+        ExprNodeEvaluator evaluator = null;
+        PrimitiveObjectInspector result = null;
+        if (partition != null) {
+            evaluator = ExprNodeEvaluatorFactory.get(partition);
+            result = (PrimitiveObjectInspector) evaluator.initialize(ObjectInspectorFactory.getStandardStructObjectInspector(names, inspectors));
+        }
+
+        List<String> selected = new ArrayList<String>();
+        for (String index : indices) {
+            Matcher matcher = regex.matcher(index);
+            if (!matcher.matches()) {
+                continue;
+            }
+            if (evaluator != null) {
+                List<Object> row = new ArrayList<Object>(names.size());
+                for (int i = 0; i < names.size(); i++) {
+                    // a column used multiple times is taken from its first occurrence
+                    row.add(converters.get(i).convert(matcher.group(columns.indexOf(names.get(i)) + 1)));
+                }
+                if (Boolean.FALSE.equals(result.getPrimitiveJavaObject(evaluator.evaluate(row)))) {
+                    continue;
+                }
+            }
+            selected.add(index);
+        }
+        return selected;
+    }
+
+    private static void types(ExprNodeDesc expr, Map<String, TypeInfo> types) {
+        if (expr instanceof ExprNodeColumnDesc) {
+            String column = ((ExprNodeColumnDesc) expr).getColumn().toLowerCase(Locale.ENGLISH);
+            if (types.containsKey(column)) {
+                types.put(column, expr.getTypeInfo());
+            }
+        }
+        if (expr.getChildren() != null) {
+            for (ExprNodeDesc child : expr.getChildren()) {
+                types(child, types);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.mr;
+
+import org.elasticsearch.hadoop.rest.Stats;
+
+/**
+ * Hadoop counters published by the ElasticSearch Input/OutputFormat. Display names are defined in <tt>Counter.properties</tt>.
+ */
+public enum Counter {
+
+    DOCS_WRITTEN {
+        @Override
+        long get(Stats stats) {
+            return stats.docsWritten.get();
+        }
+    },
+    BYTES_WRITTEN {
+        @Override
+        long get(Stats stats) {
+            return stats.bytesWritten.get();
+        }
+    },
+    BULK_WRITES {
+        @Override
+        long get(Stats stats) {
+            return stats.bulkWrites.get();
+        }
+    },
+    DOCS_RETRIED {
+        @Override
+        long get(Stats stats) {
+            return stats.docsRetried.get();
+        }
+    },
+    DOCS_REJECTED {
+        @Override
+        long get(Stats stats) {
+            return stats.docsRejected.get();
+        }
+    },
+    DOCS_COALESCED {
+        @Override
+        long get(Stats stats) {
+            return stats.docsCoalesced.get();
+        }
+    },
+    BULK_TIME_MS {
+        @Override
+        long get(Stats stats) {
+            return stats.bulkTime.get();
+        }
+    },
+    THROTTLE_TIME_MS {
+        @Override
+        long get(Stats stats) {
+            return stats.throttleTime.get();
+        }
+    },
+    DOCS_READ {
+        @Override
+        long get(Stats stats) {
+            return stats.docsRead.get();
+        }
+    },
+    BYTES_READ {
+        @Override
+        long get(Stats stats) {
+            return stats.bytesRead.get();
+        }
+    },
+    SCROLL_READS {
+        @Override
+        long get(Stats stats) {
+            return stats.scrollReads.get();
+        }
+    },
+    SCROLL_TIME_MS {
+        @Override
+        long get(Stats stats) {
+            return stats.scrollTime.get();
+        }
+    };
+
+    abstract long get(Stats stats);
+}
@@ -18,10 +18,22 @@ package org.elasticsearch.hadoop.mr;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -35,14 +47,19 @@ import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.util.Progressable;
 import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
 import org.elasticsearch.hadoop.cfg.Settings;
 import org.elasticsearch.hadoop.cfg.SettingsManager;
 import org.elasticsearch.hadoop.rest.BufferedRestClient;
 import org.elasticsearch.hadoop.rest.Node;
 import org.elasticsearch.hadoop.rest.QueryBuilder;
+import org.elasticsearch.hadoop.rest.RestClient;
 import org.elasticsearch.hadoop.rest.ScrollQuery;
 import org.elasticsearch.hadoop.rest.Shard;
+import org.elasticsearch.hadoop.rest.SizeEstimator;
+import org.elasticsearch.hadoop.rest.SizeEstimator.Estimate;
+import org.elasticsearch.hadoop.util.StringUtils;
 import org.elasticsearch.hadoop.util.WritableUtils;
 
 /**
@@ -63,15 +80,20 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
         private String nodeId;
         private String nodeName;
         private String shardId;
+        // concrete index of the shard and the filter of the alias (if any) it was reached through
+        private String index;
+        private String filter;
 
         public ShardInputSplit() {}
 
-        public ShardInputSplit(String nodeIp, int httpPort, String nodeId, String nodeName, Integer shard) {
+        public ShardInputSplit(String nodeIp, int httpPort, String nodeId, String nodeName, Integer shard, String index, String filter) {
             this.nodeIp = nodeIp;
             this.httpPort = httpPort;
             this.nodeId = nodeId;
             this.nodeName = nodeName;
             this.shardId = shard.toString();
+            this.index = (index != null ? index : "");
+            this.filter = (filter != null ? filter : "");
         }
 
         @Override
@@ -93,6 +115,8 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
             out.writeUTF(nodeId);
             out.writeUTF(nodeName);
             out.writeUTF(shardId);
+            out.writeUTF(index);
+            out.writeUTF(filter);
         }
 
         @Override
@@ -102,6 +126,8 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
             nodeId = in.readUTF();
             nodeName = in.readUTF();
             shardId = in.readUTF();
+            index = in.readUTF();
+            filter = in.readUTF();
         }
 
         @Override
@@ -109,12 +135,69 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
             StringBuilder builder = new StringBuilder();
             builder.append("ShardInputSplit [node=[").append(nodeId).append("/").append(nodeName)
                         .append("|").append(nodeIp).append(":").append(httpPort)
-                        .append("],shard=").append(shardId).append("]");
+                        .append("],index=").append(index).append(",shard=").append(shardId)
+                        .append(filter.length() > 0 ? ",filtered" : "").append("]");
             return builder.toString();
         }
 
     }
 
+    /**
+     * Split made of multiple shards (typically on the same node) - used for indices with many small shards.
+     */
+    static class CombinedInputSplit extends InputSplit implements org.apache.hadoop.mapred.InputSplit {
+
+        private ShardInputSplit[] shards;
+        private long length;
+
+        public CombinedInputSplit() {}
+
+        public CombinedInputSplit(ShardInputSplit[] shards, long length) {
+            this.shards = shards;
+            this.length = length;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public String[] getLocations() {
+            Set<String> locations = new LinkedHashSet<String>();
+            for (ShardInputSplit shard : shards) {
+                locations.add(shard.nodeIp);
+            }
+            return locations.toArray(new String[locations.size()]);
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            out.writeLong(length);
+            out.writeInt(shards.length);
+            for (ShardInputSplit shard : shards) {
+                shard.write(out);
+            }
+        }
+
+        @Override
+        public void readFields(DataInput in) throws IOException {
+            length = in.readLong();
+            shards = new ShardInputSplit[in.readInt()];
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new ShardInputSplit();
+                shards[i].readFields(in);
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("CombinedInputSplit [shards=").append(shards.length).append(",").append(Arrays.toString(shards)).append("]");
+            return builder.toString();
+        }
+    }
+
 
     static class ShardRecordReader extends RecordReader<Text, MapWritable> implements
             org.apache.hadoop.mapred.RecordReader<Text, MapWritable> {
@@ -122,15 +205,20 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
         private int read = 0;
         private ShardInputSplit esSplit;
 
-        private BufferedRestClient client;
+        private RestClient client;
         private QueryBuilder queryBuilder;
         private ScrollQuery result;
+        // optional limit of concurrent scrolls per node
+        private NodePermit permit;
 
         // minor optimization - see below
         private String currentKey;
         private MapWritable currentValue;
         private long size = 0;
 
+        // used for publishing the counters
+        private Progressable progressable;
+
         // default constructor used by the NEW api
         ShardRecordReader() {
         }
@@ -138,6 +226,7 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
         // constructor used by the old API
         ShardRecordReader(org.apache.hadoop.mapred.InputSplit split, Configuration job, Reporter reporter) {
             reporter.setStatus(split.toString());
+            this.progressable = reporter;
             init((ShardInputSplit) split, job);
         }
 
@@ -145,6 +234,7 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
         @Override
         public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
             context.setStatus(split.toString());
+            this.progressable = context;
             init((ShardInputSplit) split, context.getConfiguration());
         }
 
@@ -162,14 +252,23 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
 
             this.esSplit = esSplit;
 
-            // initialize REST client
-            client = new BufferedRestClient(settings);
+            // initialize REST client (read-only - no need for the write buffers)
+            client = new RestClient(settings);
 
             queryBuilder = QueryBuilder.query(query)
+                    .filter(esSplit.filter)
                     .shard(esSplit.shardId)
                     .onlyNode(esSplit.nodeId)
                     .time(settings.getScrollKeepAlive())
                     .size(settings.getScrollSize());
+            // shard numbers are per index so the index needs to be targeted directly (in case of multiple indices)
+            if (StringUtils.hasText(esSplit.index)) {
+                queryBuilder.index(esSplit.index);
+            }
+
+            if (settings.getScrollNodeLimit() > 0) {
+                permit = new NodePermit(settings, esSplit.nodeId);
+            }
 
             if (log.isDebugEnabled()) {
                 log.debug(String.format("Initializing RecordReader for [%s]", esSplit));
@@ -204,16 +303,26 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
                 log.debug(String.format("Closing RecordReader for [%s]", esSplit));
             }
 
-            if (result != null) {
-                result.close();
-                result = null;
+            try {
+                if (result != null) {
+                    result.close();
+                    result = null;
+                }
+                client.close();
+                ReportingUtils.report(progressable, client.stats());
+            } finally {
+                if (permit != null) {
+                    permit.release();
+                }
             }
-            client.close();
         }
 
         @Override
         public boolean next(Text key, MapWritable value) throws IOException {
             if (result == null) {
+                if (permit != null) {
+                    permit.acquire(progressable);
+                }
                 result = queryBuilder.build(client);
                 size = result.getSize();
 
@@ -222,6 +331,10 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
                 }
             }
 
+            if (permit != null) {
+                permit.renew(progressable);
+            }
+
             boolean hasNext = result.hasNext();
 
             if (!hasNext) {
@@ -265,18 +378,246 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
         }
     }
 
+    /**
+     * Reads the shards of a {@link CombinedInputSplit} concurrently (each through its own scroll) on a small thread pool,
+     * merging the results into one stream of records. The order of the records between shards is not defined.
+     */
+    static class CombinedRecordReader extends RecordReader<Text, MapWritable> implements
+            org.apache.hadoop.mapred.RecordReader<Text, MapWritable> {
+
+        // marks the end of a shard
+        private static final Object[] END = new Object[0];
+        private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+        private int read = 0;
+        private CombinedInputSplit esSplit;
+        private ShardRecordReader[] readers;
+        private int threads;
+        private long shutdownWait;
+
+        private ExecutorService executor;
+        private BlockingQueue<Object[]> queue;
+        private volatile Throwable failure;
+        private int finished = 0;
+
+        private String currentKey;
+        private MapWritable currentValue;
+
+        private Progressable progressable;
+
+        // default constructor used by the NEW api
+        CombinedRecordReader() {
+        }
+
+        // constructor used by the old API
+        CombinedRecordReader(org.apache.hadoop.mapred.InputSplit split, Configuration job, Reporter reporter) {
+            reporter.setStatus(split.toString());
+            this.progressable = reporter;
+            init((CombinedInputSplit) split, job);
+        }
+
+        // new API init call
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+            context.setStatus(split.toString());
+            this.progressable = context;
+            init((CombinedInputSplit) split, context.getConfiguration());
+        }
+
+        void init(CombinedInputSplit esSplit, Configuration cfg) {
+            Settings settings = SettingsManager.loadFrom(cfg);
+            this.esSplit = esSplit;
+
+            readers = new ShardRecordReader[esSplit.shards.length];
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new ShardRecordReader();
+                readers[i].progressable = progressable;
+                readers[i].init(esSplit.shards[i], cfg);
+            }
+
+            threads = Math.max(1, Math.min(settings.getInputCombineThreads(), readers.length));
+            // enough room for a scroll page per thread
+            queue = new ArrayBlockingQueue<Object[]>((int) Math.max(1, settings.getScrollSize()) * threads);
+            shutdownWait = settings.getHttpTimeout();
+
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Initializing CombinedRecordReader for [%s] using [%d] threads", esSplit, threads));
+            }
+        }
+
+        private void start() {
+            final int pool = POOL_COUNTER.incrementAndGet();
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "es-combined-reader-" + pool + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            for (final ShardRecordReader reader : readers) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (reader.nextKeyValue()) {
+                                queue.put(new Object[] { reader.currentKey, reader.currentValue });
+                            }
+                        } catch (InterruptedException ex) {
+                            // closed
+                            Thread.currentThread().interrupt();
+                            return;
+                        } catch (Throwable th) {
+                            failure = th;
+                        }
+                        try {
+                            queue.put(END);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            return next(null, null);
+        }
+
+        @Override
+        public Text getCurrentKey() throws IOException {
+            return new Text(currentKey);
+        }
+
+        @Override
+        public MapWritable getCurrentValue() {
+            return currentValue;
+        }
+
+        @Override
+        public float getProgress() {
+            float progress = 0;
+            for (ShardRecordReader reader : readers) {
+                progress += reader.getProgress();
+            }
+            return progress / readers.length;
+        }
+
+        @Override
+        public boolean next(Text key, MapWritable value) throws IOException {
+            if (executor == null) {
+                start();
+            }
+
+            while (true) {
+                Object[] entry;
+                try {
+                    entry = queue.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(String.format("Interrupted while reading [%s]", esSplit));
+                }
+
+                if (failure != null) {
+                    if (failure instanceof IOException) {
+                        throw (IOException) failure;
+                    }
+                    if (failure instanceof RuntimeException) {
+                        throw (RuntimeException) failure;
+                    }
+                    throw new IllegalStateException(String.format("Cannot read [%s]", esSplit), failure);
+                }
+
+                if (entry == END) {
+                    if (++finished == readers.length) {
+                        return false;
+                    }
+                    continue;
+                }
+
+                currentKey = (String) entry[0];
+                currentValue = (MapWritable) entry[1];
+
+                if (key != null) {
+                    key.set(currentKey);
+                }
+                if (value != null) {
+                    value.clear();
+                    value.putAll(currentValue);
+                }
+
+                read++;
+                return true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Closing CombinedRecordReader for [%s]", esSplit));
+            }
+
+            if (executor != null) {
+                executor.shutdownNow();
+                try {
+                    // in-flight requests are not interruptible
+                    executor.awaitTermination(shutdownWait, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            IOException error = null;
+            for (ShardRecordReader reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                    if (error == null) {
+                        error = ex;
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        @Override
+        public Text createKey() {
+            return new Text();
+        }
+
+        @Override
+        public MapWritable createValue() {
+            return new MapWritable();
+        }
+
+        @Override
+        public long getPos() {
+            return read;
+        }
+    }
+
     //
     // new API - just delegates to the Old API
     //
     @Override
     public List<InputSplit> getSplits(JobContext context) throws IOException {
         JobConf conf = (JobConf) context.getConfiguration();
-        return Arrays.asList((InputSplit[]) getSplits(conf, conf.getNumMapTasks()));
+        List<InputSplit> splits = new ArrayList<InputSplit>();
+        for (org.apache.hadoop.mapred.InputSplit split : getSplits(conf, conf.getNumMapTasks())) {
+            splits.add((InputSplit) split);
+        }
+        return splits;
     }
 
     @Override
-    public ShardRecordReader createRecordReader(InputSplit split, TaskAttemptContext context) {
-        return new ShardRecordReader();
+    public RecordReader<Text, MapWritable> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return (split instanceof CombinedInputSplit ? new CombinedRecordReader() : new ShardRecordReader());
     }
 
 
@@ -284,12 +625,18 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
     // Old API
     //
     @Override
-    public ShardInputSplit[] getSplits(JobConf job, int numSplits) throws IOException {
+    public org.apache.hadoop.mapred.InputSplit[] getSplits(JobConf job, int numSplits) throws IOException {
 
         Settings settings = SettingsManager.loadFrom(job);
         BufferedRestClient client = new BufferedRestClient(settings);
-        Map<Shard, Node> targetShards = client.getTargetShards();
-        client.close();
+        Map<Shard, Node> targetShards;
+        Map<String, String> filters;
+        try {
+            targetShards = client.getTargetShards();
+            filters = client.getIndexFilters();
+        } finally {
+            client.close();
+        }
 
         if (log.isTraceEnabled()) {
             log.trace("Creating splits for shards " + targetShards);
@@ -298,19 +645,111 @@ public class ESInputFormat extends InputFormat<Text, MapWritable> implements
         ShardInputSplit[] splits = new ShardInputSplit[targetShards.size()];
 
         int index = 0;
+        Set<String> indices = new LinkedHashSet<String>();
         for (Entry<Shard, Node> entry : targetShards.entrySet()) {
             Shard shard = entry.getKey();
             Node node = entry.getValue();
+            indices.add(shard.getIndex());
             splits[index++] =
-                    new ShardInputSplit(node.getIpAddress(), node.getHttpPort(), node.getId(), node.getName(), shard.getName());
+                    new ShardInputSplit(node.getIpAddress(), node.getHttpPort(), node.getId(), node.getName(), shard.getName(),
+                            shard.getIndex(), filters.get(shard.getIndex()));
+        }
+
+        splits = interleave(splits);
+        log.info(String.format("Created [%d] shard-splits over [%d] indices", splits.length, indices.size()));
+        if (!filters.isEmpty()) {
+            log.info(String.format("Applying the alias filters of indices %s", filters.keySet()));
         }
 
-        log.info(String.format("Created [%d] shard-splits", splits.length));
+        if (settings.getInputCombine() && splits.length > 1) {
+            // the shards are assumed to be of similar size
+            Estimate estimate = SizeEstimator.estimate(settings);
+            long shardSize = (estimate != null ? estimate.getSizeInBytes() / splits.length : 0);
+            org.apache.hadoop.mapred.InputSplit[] combined =
+                    combine(splits, settings.getInputCombineShards(), settings.getInputCombineSize(), shardSize);
+            log.info(String.format("Combined [%d] shard-splits into [%d] splits", splits.length, combined.length));
+            return combined;
+        }
         return splits;
     }
 
+    /**
+     * Groups the shards of each node into splits of at most <tt>maxShards</tt> shards and (if the shard size is known)
+     * <tt>maxSize</tt> bytes. Like {@link #interleave(ShardInputSplit[])}, the resulting splits alternate between nodes.
+     */
+    static org.apache.hadoop.mapred.InputSplit[] combine(ShardInputSplit[] splits, int maxShards, long maxSize, long shardSize) {
+        List<List<org.apache.hadoop.mapred.InputSplit>> byNode = new ArrayList<List<org.apache.hadoop.mapred.InputSplit>>();
+
+        for (List<ShardInputSplit> shards : byNode(splits).values()) {
+            List<org.apache.hadoop.mapred.InputSplit> groups = new ArrayList<org.apache.hadoop.mapred.InputSplit>();
+            List<ShardInputSplit> group = new ArrayList<ShardInputSplit>();
+            for (ShardInputSplit shard : shards) {
+                if (!group.isEmpty() && (group.size() >= maxShards || (shardSize > 0 && (group.size() + 1) * shardSize > maxSize))) {
+                    groups.add(group(group, shardSize));
+                    group = new ArrayList<ShardInputSplit>();
+                }
+                group.add(shard);
+            }
+            groups.add(group(group, shardSize));
+            byNode.add(groups);
+        }
+
+        List<org.apache.hadoop.mapred.InputSplit> ordered = roundRobin(byNode);
+        return ordered.toArray(new org.apache.hadoop.mapred.InputSplit[ordered.size()]);
+    }
+
+    // single shards are read as usual
+    private static org.apache.hadoop.mapred.InputSplit group(List<ShardInputSplit> shards, long shardSize) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        return new CombinedInputSplit(shards.toArray(new ShardInputSplit[shards.size()]), shards.size() * Math.max(1, shardSize));
+    }
+
+    /**
+     * Orders the splits round-robin by node (one split per node in turn) so that consecutive splits, and thus
+     * the tasks scheduled together, read from different nodes instead of all hitting the same ones.
+     */
+    static ShardInputSplit[] interleave(ShardInputSplit[] splits) {
+        List<ShardInputSplit> ordered = roundRobin(byNode(splits).values());
+        return ordered.toArray(new ShardInputSplit[ordered.size()]);
+    }
+
+    private static Map<String, List<ShardInputSplit>> byNode(ShardInputSplit[] splits) {
+        Map<String, List<ShardInputSplit>> byNode = new LinkedHashMap<String, List<ShardInputSplit>>();
+        for (ShardInputSplit split : splits) {
+            List<ShardInputSplit> list = byNode.get(split.nodeId);
+            if (list == null) {
+                list = new ArrayList<ShardInputSplit>();
+                byNode.put(split.nodeId, list);
+            }
+            list.add(split);
+        }
+        return byNode;
+    }
+
+    // takes one element of each list in turn
+    private static <T> List<T> roundRobin(Collection<List<T>> lists) {
+        List<T> ordered = new ArrayList<T>();
+        for (int round = 0; ; round++) {
+            boolean found = false;
+            for (List<T> list : lists) {
+                if (round < list.size()) {
+                    ordered.add(list.get(round));
+                    found = true;
+                }
+            }
+            if (!found) {
+                return ordered;
+            }
+        }
+    }
+
     @Override
-    public ShardRecordReader getRecordReader(org.apache.hadoop.mapred.InputSplit split, JobConf job, Reporter reporter) {
+    public org.apache.hadoop.mapred.RecordReader<Text, MapWritable> getRecordReader(org.apache.hadoop.mapred.InputSplit split, JobConf job, Reporter reporter) {
+        if (split instanceof CombinedInputSplit) {
+            return new CombinedRecordReader(split, job, reporter);
+        }
         return new ShardRecordReader(split, job, reporter);
     }
 }
@@ -27,6 +27,7 @@ import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobStatus.State;
 import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -48,7 +49,17 @@ public class ESOutputFormat extends OutputFormat<Object, Object> implements org.
 
         @Override
         public void setupJob(JobContext jobContext) throws IOException {
-            //no-op
+            JobCommitUtils.setupJob(jobContext.getConfiguration());
+        }
+
+        @Override
+        public void commitJob(JobContext jobContext) throws IOException {
+            JobCommitUtils.commitJob(jobContext.getConfiguration());
+        }
+
+        @Override
+        public void abortJob(JobContext jobContext, State state) throws IOException {
+            JobCommitUtils.abortJob(jobContext.getConfiguration());
         }
 
         @Override
@@ -77,7 +88,17 @@ public class ESOutputFormat extends OutputFormat<Object, Object> implements org.
 
         @Override
         public void setupJob(org.apache.hadoop.mapred.JobContext jobContext) throws IOException {
-            //no-op
+            JobCommitUtils.setupJob(jobContext.getJobConf());
+        }
+
+        @Override
+        public void commitJob(org.apache.hadoop.mapred.JobContext jobContext) throws IOException {
+            JobCommitUtils.commitJob(jobContext.getJobConf());
+        }
+
+        @Override
+        public void abortJob(org.apache.hadoop.mapred.JobContext jobContext, int status) throws IOException {
+            JobCommitUtils.abortJob(jobContext.getJobConf());
         }
 
         @Override
@@ -113,9 +134,17 @@ public class ESOutputFormat extends OutputFormat<Object, Object> implements org.
 
         private final BufferedRestClient client;
         private final String uri, resource;
+        // used for publishing the counters (if no other reporter is available)
+        private final Progressable progressable;
 
         public ESRecordWriter(Configuration cfg) {
+            this(cfg, null);
+        }
+
+        public ESRecordWriter(Configuration cfg, Progressable progressable) {
+            this.progressable = progressable;
             Settings settings = SettingsManager.loadFrom(cfg);
+            ESShardPartitioner.targetPrimary(cfg, settings);
             client = new BufferedRestClient(settings);
             uri = settings.getTargetUri();
             resource = settings.getTargetResource();
@@ -134,15 +163,20 @@ public class ESOutputFormat extends OutputFormat<Object, Object> implements org.
 
         @Override
         public void close(TaskAttemptContext context) throws IOException {
-          close((Reporter) null);
+          doClose(context);
         }
     
         @Override
         public void close(Reporter reporter) throws IOException {
+          doClose(reporter);
+        }
+
+        private void doClose(Progressable reporter) throws IOException {
           if (log.isTraceEnabled()) {
             log.trace(String.format("Closing RecordWriter [%s][%s]", uri, resource));
           }
           client.close();
+          ReportingUtils.report(reporter != null ? reporter : progressable, client.stats());
         }
     }
 
@@ -156,7 +190,8 @@ public class ESOutputFormat extends OutputFormat<Object, Object> implements org.
 
     @Override
     public void checkOutputSpecs(JobContext context) {
-        checkOutputSpecs(null, (JobConf) context.getConfiguration());
+        // the new API always uses the ES committer (see getOutputCommitter)
+        checkOutputSpecs((JobConf) context.getConfiguration(), true);
     }
 
     @Override
@@ -169,14 +204,34 @@ public class ESOutputFormat extends OutputFormat<Object, Object> implements org.
     //
     @Override
     public ESRecordWriter getRecordWriter(FileSystem ignored, JobConf job, String name, Progressable progress) {
-        return new ESRecordWriter(job);
+        return new ESRecordWriter(job, progress);
     }
 
     @Override
     public void checkOutputSpecs(FileSystem ignored, JobConf cfg) {
+        // the old API uses the FileOutputCommitter by default - replace it so the index is refreshed once per job
+        if (cfg.get("mapred.output.committer.class") == null) {
+            cfg.setOutputCommitter(ESOldAPIOutputCommitter.class);
+        }
+        // a user-defined committer does not know about the index - leave the refresh to the tasks
+        checkOutputSpecs(cfg, ESOldAPIOutputCommitter.class.isAssignableFrom(cfg.getClass("mapred.output.committer.class", null)));
+    }
+
+    /**
+     * Validates the output configuration and, when the job is committed through the ES committer, prepares it for the job-level
+     * index operations (see {@link JobCommitUtils}).
+     *
+     * @param cfg job configuration
+     * @param jobCommit whether the ES committer runs for this job
+     */
+    protected void checkOutputSpecs(JobConf cfg, boolean jobCommit) {
         Settings settings = SettingsManager.loadFrom(cfg);
         Validate.notEmpty(settings.getTargetResource(), String.format("No resource ['%s'] (index/query/location) specified", ES_RESOURCE));
 
+        if (jobCommit) {
+            JobCommitUtils.init(cfg);
+        }
+
         log.info(String.format("Preparing to write/index to [%s][%s]", settings.getTargetUri(), settings.getTargetResource()));
     }
 }
\ No newline at end of file
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.mr;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.cfg.SettingsManager;
+import org.elasticsearch.hadoop.rest.BufferedRestClient;
+import org.elasticsearch.hadoop.rest.Node;
+import org.elasticsearch.hadoop.util.StringUtils;
+
+/**
+ * Partitioner sending each record to the reducer associated with the target shard, using the same hash as ElasticSearch.
+ * With one reducer per shard (see {@link #configureJob(Job)}), each reducer writes to exactly one shard and, since the
+ * writer then talks directly to the node hosting the shard primary, to one node.
+ *
+ * <p/>The routing value is taken from the map output value field indicated by <tt>es.mapping.routing</tt> or
+ * <tt>es.mapping.id</tt> (in this order) if the value is a map, otherwise the map output key is used - emit the
+ * document id (or routing) as the key.
+ *
+ * <p/>Works with both the old and the new Map/Reduce API (and thus with Crunch through its grouping options).
+ */
+public class ESShardPartitioner extends Partitioner<Object, Object> implements org.apache.hadoop.mapred.Partitioner<Object, Object>, Configurable {
+
+    private static final Log log = LogFactory.getLog(ESShardPartitioner.class);
+
+    // ES default
+    private static final int DEFAULT_SHARDS = 5;
+
+    private Configuration cfg;
+    private int shards = DEFAULT_SHARDS;
+    private String[] routing;
+
+    /**
+     * Configures the job to use this partitioner with one reducer per shard of the target index.
+     *
+     * @param job job to configure
+     * @return the number of shards (and reducers)
+     */
+    public static int configureJob(Job job) {
+        int shards = init(job.getConfiguration());
+        job.setPartitionerClass(ESShardPartitioner.class);
+        job.setNumReduceTasks(shards);
+        return shards;
+    }
+
+    /**
+     * Configures the job to use this partitioner with one reducer per shard of the target index.
+     *
+     * @param job job to configure
+     * @return the number of shards (and reducers)
+     */
+    public static int configureJob(JobConf job) {
+        int shards = init(job);
+        job.setPartitionerClass(ESShardPartitioner.class);
+        job.setNumReduceTasks(shards);
+        return shards;
+    }
+
+    /**
+     * Looks up the number of shards of the target index and saves it in the configuration.
+     *
+     * @param cfg job configuration
+     * @return the number of shards
+     */
+    public static int init(Configuration cfg) {
+        Settings settings = SettingsManager.loadFrom(cfg);
+        BufferedRestClient client = new BufferedRestClient(settings);
+        int shards = DEFAULT_SHARDS;
+        try {
+            if (client.isDynamicResource()) {
+                throw new IllegalArgumentException(String.format("Cannot partition by shard dynamic resources [%s]", settings.getTargetResource()));
+            }
+            if (client.indexExists()) {
+                Object value = client.getIndexSettings().get("index.number_of_shards");
+                if (value != null) {
+                    shards = Integer.parseInt(value.toString());
+                }
+            }
+            else {
+                log.info(String.format("Index [%s] does not exist; assuming the default number of shards [%d]", client.getAlias(), shards));
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(String.format("Cannot read settings for index [%s]", client.getAlias()), ex);
+        } finally {
+            try {
+                client.close();
+            } catch (IOException ex) {
+                log.warn("Cannot close client", ex);
+            }
+        }
+        settings.setPartitionerShards(shards);
+        return shards;
+    }
+
+    /**
+     * Returns the shard for the given routing value (or id), as computed by ElasticSearch (djb hash).
+     */
+    public static int shard(String routing, int shards) {
+        long hash = 5381;
+        for (int i = 0; i < routing.length(); i++) {
+            hash = ((hash << 5) + hash) + routing.charAt(i);
+        }
+        return Math.abs(((int) hash) % shards);
+    }
+
+    /**
+     * Points the settings of a reducer writing a single shard (one reducer per shard) to the node hosting the shard
+     * primary. Does nothing if the job is not partitioned by shard.
+     */
+    static void targetPrimary(Configuration cfg, Settings settings) {
+        int shards = settings.getPartitionerShards();
+        String partitioner = cfg.get("mapreduce.partitioner.class", cfg.get("mapred.partitioner.class"));
+        if (shards <= 0 || cfg.getBoolean("mapred.task.is.map", true) || !ESShardPartitioner.class.getName().equals(partitioner)
+                || cfg.getInt("mapred.reduce.tasks", 1) != shards) {
+            return;
+        }
+        int shard = cfg.getInt("mapred.task.partition", -1);
+        if (shard < 0) {
+            return;
+        }
+
+        BufferedRestClient client = new BufferedRestClient(settings);
+        try {
+            Node node = client.getPrimaryNode(shard);
+            if (node != null) {
+                if (log.isDebugEnabled()) {
+                    log.debug(String.format("Writing shard [%d] directly to node [%s]", shard, node));
+                }
+                settings.cleanUri().setHost(node.getIpAddress()).setPort(node.getHttpPort());
+            }
+        } catch (IOException ex) {
+            // not critical - fall back to the configured node
+            log.warn(String.format("Cannot find primary node for shard [%d]", shard), ex);
+        } finally {
+            try {
+                client.close();
+            } catch (IOException ex) {
+                log.warn("Cannot close client", ex);
+            }
+        }
+    }
+
+    @Override
+    public void configure(JobConf job) {
+        setConf(job);
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.cfg = conf;
+        Settings settings = SettingsManager.loadFrom(conf);
+        int configured = settings.getPartitionerShards();
+        shards = (configured > 0 ? configured : DEFAULT_SHARDS);
+
+        String field = settings.getMappingRouting();
+        if (!StringUtils.hasText(field)) {
+            field = settings.getMappingId();
+        }
+        routing = (StringUtils.hasText(field) ? field.trim().split("\\.") : null);
+    }
+
+    @Override
+    public Configuration getConf() {
+        return cfg;
+    }
+
+    @Override
+    public int getPartition(Object key, Object value, int numPartitions) {
+        Object route = null;
+        if (routing != null) {
+            route = lookup(value, routing);
+        }
+        if (route == null) {
+            route = key;
+        }
+        if (route == null) {
+            throw new IllegalArgumentException(String.format("Cannot determine routing for record [%s]", value));
+        }
+        // with one partition per shard, the partition matches the shard
+        return shard(route.toString(), shards) % numPartitions;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object lookup(Object value, String[] path) {
+        Object current = value;
+        for (String segment : path) {
+            if (current instanceof MapWritable) {
+                current = ((MapWritable) current).get(new Text(segment));
+            }
+            else if (current instanceof Map) {
+                current = ((Map<String, Object>) current).get(segment);
+            }
+            else {
+                return null;
+            }
+        }
+        return current;
+    }
+}
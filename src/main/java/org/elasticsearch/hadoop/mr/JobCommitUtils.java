@@ -0,0 +1,244 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.mr;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.cfg.SettingsManager;
+import org.elasticsearch.hadoop.rest.BufferedRestClient;
+import org.elasticsearch.hadoop.rest.RestClient;
+
+/**
+ * Job-level index operations performed by the ES committers. Refreshing the index once per job (instead of once per task)
+ * and, optionally, tuning it for bulk loading (no refresh, no replicas) while the job runs.
+ *
+ * <p/>When rebuilding, the job writes into a fresh, timestamped (staging) index which, on commit, replaces the indices
+ * pointed by the target alias (and is dropped on abort) - readers see either the old or the new data, never a mix.
+ *
+ * <p/>Since the job setup and commit run in different tasks, the original index settings are captured
+ * when the job is configured (see {@link #init(Configuration)}) and passed along through the job configuration.
+ */
+public abstract class JobCommitUtils {
+
+    private static final Log log = LogFactory.getLog(JobCommitUtils.class);
+
+    private static final String REFRESH_INTERVAL = "refresh_interval";
+    private static final String REPLICAS = "number_of_replicas";
+    private static final String SHARDS = "number_of_shards";
+
+    // ES defaults - used when the index does not exist before the job
+    private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+    private static final String DEFAULT_REPLICAS = "1";
+
+    /**
+     * Prepares the job configuration (before the job is submitted) for the ES committer.
+     *
+     * @param cfg job configuration
+     */
+    public static void init(Configuration cfg) {
+        Settings settings = SettingsManager.loadFrom(cfg);
+        settings.setJobCommit(true);
+
+        boolean rebuild = settings.getBatchWriteRebuild();
+        if (!settings.getBatchWriteBulkLoad() && !rebuild) {
+            return;
+        }
+
+        BufferedRestClient client = new BufferedRestClient(settings);
+        try {
+            if (client.isDynamicResource()) {
+                throw new IllegalArgumentException(String.format(
+                        "Bulk loading/rebuilding is not supported for dynamic resources [%s]", settings.getTargetResource()));
+            }
+
+            String alias = client.getAlias();
+            boolean exists = client.indexExists();
+
+            if (rebuild && exists && client.getRestClient().getIndices(alias).contains(alias)) {
+                throw new IllegalArgumentException(String.format(
+                        "Cannot rebuild [%s] as it is an index, not an alias; remove the index or use a different name", alias));
+            }
+
+            if (exists) {
+                Map<String, Object> current = client.getIndexSettings();
+                settings.setOriginalRefreshInterval(setting(current, REFRESH_INTERVAL, DEFAULT_REFRESH_INTERVAL));
+                settings.setOriginalReplicas(setting(current, REPLICAS, DEFAULT_REPLICAS));
+                if (current.get("index." + SHARDS) != null) {
+                    settings.setOriginalShards(current.get("index." + SHARDS).toString());
+                }
+            }
+
+            if (rebuild) {
+                // avoid '_' as it marks the ES endpoints inside the resource
+                String staging = alias + "-" + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+                settings.setStagingIndex(staging);
+                log.info(String.format("Rebuilding [%s] through staging index [%s]", alias, staging));
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(String.format("Cannot read settings for index [%s]", client.getAlias()), ex);
+        } finally {
+            close(client);
+        }
+    }
+
+    private static String setting(Map<String, Object> settings, String name, String defaultValue) {
+        Object value = settings.get("index." + name);
+        return (value != null ? value.toString() : defaultValue);
+    }
+
+    static void setupJob(Configuration cfg) throws IOException {
+        Settings settings = SettingsManager.loadFrom(cfg);
+        if (!settings.getBatchWriteBulkLoad() && !settings.getBatchWriteRebuild()) {
+            return;
+        }
+
+        Map<String, Object> bulkLoad = new LinkedHashMap<String, Object>();
+        bulkLoad.put(REFRESH_INTERVAL, "-1");
+        bulkLoad.put(REPLICAS, "0");
+
+        BufferedRestClient client = new BufferedRestClient(settings);
+        try {
+            if (client.indexExists()) {
+                client.updateIndexSettings(bulkLoad);
+            }
+            else {
+                // keep the layout of the index being replaced
+                if (settings.getOriginalShards() != null) {
+                    bulkLoad.put(SHARDS, settings.getOriginalShards());
+                }
+                client.createIndex(bulkLoad);
+            }
+            log.info(String.format("Index [%s] prepared for bulk loading %s", client.getIndex(), bulkLoad));
+        } finally {
+            close(client);
+        }
+    }
+
+    static void commitJob(Configuration cfg) throws IOException {
+        Settings settings = SettingsManager.loadFrom(cfg);
+        BufferedRestClient client = new BufferedRestClient(settings);
+        try {
+            // nothing was written
+            if (!client.indexExists()) {
+                return;
+            }
+
+            restore(settings, client);
+
+            if (settings.getBatchWriteOptimize()) {
+                log.info(String.format("Optimizing index [%s]", client.getIndex()));
+                client.optimize();
+            }
+
+            if (settings.getBatchRefreshAfterWrite() || settings.getBatchWriteBulkLoad() || settings.getBatchWriteRebuild()) {
+                if (log.isDebugEnabled()) {
+                    log.debug(String.format("Refreshing index [%s]", client.getIndex()));
+                }
+                client.refresh();
+            }
+
+            if (settings.getBatchWriteRebuild()) {
+                swapAlias(settings, client);
+            }
+        } finally {
+            close(client);
+        }
+    }
+
+    static void abortJob(Configuration cfg) throws IOException {
+        Settings settings = SettingsManager.loadFrom(cfg);
+        BufferedRestClient client = new BufferedRestClient(settings);
+        try {
+            if (client.indexExists()) {
+                if (settings.getBatchWriteRebuild()) {
+                    log.info(String.format("Dropping staging index [%s]", client.getIndex()));
+                    client.deleteIndex();
+                }
+                else {
+                    restore(settings, client);
+                }
+            }
+        } finally {
+            close(client);
+        }
+    }
+
+    // points the alias to the staging index (in one atomic operation) and, optionally, deletes the previous indices
+    private static void swapAlias(Settings settings, BufferedRestClient client) throws IOException {
+        RestClient rest = client.getRestClient();
+        String alias = client.getAlias();
+        String staging = client.getIndex();
+
+        List<String> previous = (rest.exists(alias) ? rest.getIndices(alias) : Collections.<String> emptyList());
+
+        List<Map<String, Object>> actions = new ArrayList<Map<String, Object>>();
+        for (String index : previous) {
+            actions.add(aliasAction("remove", index, alias));
+        }
+        actions.add(aliasAction("add", staging, alias));
+        rest.updateAliases(actions);
+        log.info(String.format("Alias [%s] now points to [%s] (previously %s)", alias, staging, previous));
+
+        if (settings.getBatchWriteRebuildDeleteOld()) {
+            for (String index : previous) {
+                log.info(String.format("Deleting index [%s]", index));
+                rest.deleteIndex(index);
+            }
+        }
+    }
+
+    private static Map<String, Object> aliasAction(String action, String index, String alias) {
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("index", index);
+        params.put("alias", alias);
+        return Collections.<String, Object> singletonMap(action, params);
+    }
+
+    private static void restore(Settings settings, BufferedRestClient client) throws IOException {
+        if (!settings.getBatchWriteBulkLoad() && !settings.getBatchWriteRebuild()) {
+            return;
+        }
+
+        String refresh = settings.getOriginalRefreshInterval();
+        String replicas = settings.getOriginalReplicas();
+
+        Map<String, Object> original = new LinkedHashMap<String, Object>();
+        original.put(REFRESH_INTERVAL, (refresh != null ? refresh : DEFAULT_REFRESH_INTERVAL));
+        original.put(REPLICAS, (replicas != null ? replicas : DEFAULT_REPLICAS));
+
+        client.updateIndexSettings(original);
+        log.info(String.format("Index [%s] settings restored %s", client.getIndex(), original));
+    }
+
+    private static void close(BufferedRestClient client) {
+        try {
+            client.close();
+        } catch (IOException ex) {
+            log.warn("Cannot close client", ex);
+        }
+    }
+}
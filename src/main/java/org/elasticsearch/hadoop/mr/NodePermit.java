@@ -0,0 +1,180 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.mr;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.util.Progressable;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.rest.RestClient;
+
+/**
+ * Cooperative permit for scrolling a node, limiting the number of concurrent scrolls per node across all the tasks of a job.
+ *
+ * <p/>Each node has a fixed number of slots, stored as documents (<tt>{permits}/permit/{node}-{slot}</tt>) in ElasticSearch itself
+ * so that tasks running on different machines see each other. A slot is taken by creating its document (which fails if it already exists)
+ * and freed by deleting it. Permits are leases: the holder renews them while reading and the ones left behind by failed tasks expire and
+ * are reclaimed (through a versioned update so only one task wins). The expiry is based on the task clock so the lease should be well
+ * above the clock skew between machines. A holder that loses its permit (not renewed in time) waits for a new one before reading on.
+ *
+ * <p/>As the permits are documents, the tasks need write access to the permits index (see {@link ConfigurationOptions#ES_SCROLL_NODE_PERMITS})
+ * even when the job only reads.
+ */
+class NodePermit {
+
+    private static final Log log = LogFactory.getLog(NodePermit.class);
+    private static final Random RANDOM = new Random();
+
+    private final RestClient client;
+    private final String node;
+    private final String prefix;
+    private final int limit;
+    private final long wait;
+    private final long lease;
+    private final String owner;
+
+    private String slot;
+    private long version;
+    private long renewAt;
+
+    NodePermit(Settings settings, String node) {
+        this.client = new RestClient(settings);
+        this.node = node;
+        this.prefix = settings.getScrollNodePermits() + "/permit/" + node + "-";
+        this.limit = settings.getScrollNodeLimit();
+        this.wait = settings.getScrollNodeWait();
+        this.lease = settings.getScrollNodeLease();
+        String task = settings.getProperty("mapred.task.id");
+        this.owner = (task != null ? task : Thread.currentThread().getName());
+    }
+
+    /**
+     * Blocks until a slot on the node becomes available, reporting progress while waiting so the task is not considered hung.
+     */
+    void acquire(Progressable progressable) throws IOException {
+        long start = System.currentTimeMillis();
+        // start with a random slot so the tasks do not all compete for the first one
+        int first = RANDOM.nextInt(limit);
+
+        while (true) {
+            for (int i = 0; i < limit; i++) {
+                if (tryAcquire(prefix + (first + i) % limit)) {
+                    long waited = System.currentTimeMillis() - start;
+                    if (waited > 0 && log.isDebugEnabled()) {
+                        log.debug(String.format("Acquired scroll permit [%s] after [%d] ms", slot, waited));
+                    }
+                    return;
+                }
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("All [%d] scroll permits for node [%s] are taken; waiting...", limit, node));
+            }
+            if (progressable != null) {
+                progressable.progress();
+            }
+            try {
+                // randomized so the waiting tasks do not retry in lockstep
+                Thread.sleep(wait / 2 + (long) (RANDOM.nextDouble() * wait));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException(String.format("Interrupted while waiting for a scroll permit for node [%s]", node));
+            }
+        }
+    }
+
+    private boolean tryAcquire(String path) throws IOException {
+        long now = System.currentTimeMillis();
+        long created = client.createDocument(path, permit(now));
+
+        if (created < 0) {
+            Map<String, Object> existing = client.getDocument(path);
+            // released in the meantime - picked up in the next round
+            if (existing == null) {
+                return false;
+            }
+            Map<?, ?> source = (Map<?, ?>) existing.get("_source");
+            if (((Number) source.get("expires")).longValue() > now) {
+                return false;
+            }
+            created = client.updateDocument(path, permit(now), ((Number) existing.get("_version")).longValue());
+            if (created < 0) {
+                return false;
+            }
+            log.warn(String.format("Reclaimed expired scroll permit [%s] held by [%s]", path, source.get("owner")));
+        }
+
+        slot = path;
+        version = created;
+        renewAt = now + lease / 2;
+        return true;
+    }
+
+    /**
+     * Extends the lease (if needed). Cheap enough to be called for every document read. If the permit has been lost in the meantime,
+     * blocks until a new one is acquired (so the node limit is honoured).
+     */
+    void renew(Progressable progressable) throws IOException {
+        if (slot == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now < renewAt) {
+            return;
+        }
+        version = client.updateDocument(slot, permit(now), version);
+        renewAt = now + lease / 2;
+        if (version < 0) {
+            log.warn(String.format("Lost scroll permit [%s] (expired and reclaimed by another task) - re-acquiring it; consider increasing [%s]",
+                    slot, ConfigurationOptions.ES_SCROLL_NODE_LEASE));
+            slot = null;
+            acquire(progressable);
+        }
+    }
+
+    void release() {
+        try {
+            if (slot != null) {
+                client.deleteDocument(slot, version);
+            }
+        } catch (Exception ex) {
+            // the permit expires on its own
+            log.warn(String.format("Cannot release scroll permit [%s]", slot), ex);
+        } finally {
+            slot = null;
+            client.close();
+        }
+    }
+
+    private Map<String, Object> permit(long now) {
+        Map<String, Object> permit = new LinkedHashMap<String, Object>();
+        permit.put("node", node);
+        permit.put("owner", owner);
+        permit.put("expires", now + lease);
+        return permit;
+    }
+
+    @Override
+    public String toString() {
+        return (slot != null ? slot : prefix + "?");
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.mr;
+
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.util.Progressable;
+import org.elasticsearch.hadoop.rest.Stats;
+
+/**
+ * Utility class publishing the REST {@link Stats} as Hadoop counters through the old ({@link Reporter}) or new ({@link TaskInputOutputContext}) API.
+ */
+abstract class ReportingUtils {
+
+    static void report(Progressable progressable, Stats stats) {
+        if (progressable == null || stats == null) {
+            return;
+        }
+
+        if (progressable instanceof Reporter) {
+            Reporter reporter = (Reporter) progressable;
+            for (Counter count : Counter.values()) {
+                long value = count.get(stats);
+                if (value > 0) {
+                    reporter.incrCounter(count, value);
+                }
+            }
+        }
+        else if (progressable instanceof TaskInputOutputContext) {
+            TaskInputOutputContext<?, ?, ?, ?> context = (TaskInputOutputContext<?, ?, ?, ?>) progressable;
+            for (Counter count : Counter.values()) {
+                long value = count.get(stats);
+                if (value > 0) {
+                    context.getCounter(count).increment(value);
+                }
+            }
+        }
+    }
+}
@@ -31,7 +31,9 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.pig.Expression;
 import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadMetadata;
 import org.apache.pig.ResourceSchema;
 import org.apache.pig.ResourceSchema.ResourceFieldSchema;
 import org.apache.pig.ResourceStatistics;
@@ -41,9 +43,13 @@ import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.util.UDFContext;
+import org.elasticsearch.hadoop.cfg.Settings;
 import org.elasticsearch.hadoop.cfg.SettingsManager;
 import org.elasticsearch.hadoop.mr.ESInputFormat;
 import org.elasticsearch.hadoop.mr.ESOutputFormat;
+import org.elasticsearch.hadoop.rest.BufferedRestClient;
+import org.elasticsearch.hadoop.rest.SizeEstimator;
+import org.elasticsearch.hadoop.rest.SizeEstimator.Estimate;
 import org.elasticsearch.hadoop.util.IOUtils;
 import org.elasticsearch.hadoop.util.WritableUtils;
 
@@ -62,10 +68,14 @@ import org.elasticsearch.hadoop.util.WritableUtils;
  *
  * The ElasticSearch host/port can be specified through Hadoop properties (see package description)
  * or passed to the {@link #ESStorage(String, int)} constructor.
+ *
+ * <p/>When loading, the schema is derived from the index mapping (if the target resource maps to exactly one type)
+ * and the statistics from the {@link SizeEstimator}.
  */
-public class ESStorage extends LoadFunc implements StoreFuncInterface, StoreMetadata {
+public class ESStorage extends LoadFunc implements LoadMetadata, StoreFuncInterface, StoreMetadata {
 
     private static final Log log = LogFactory.getLog(ESStorage.class);
+    private static final long ONE_MB = 1024 * 1024;
     private final boolean trace = log.isTraceEnabled();
 
     private final String host;
@@ -73,7 +83,9 @@ public class ESStorage extends LoadFunc implements StoreFuncInterface, StoreMeta
 
     private String relativeLocation;
     private String signature;
+    private String loadSignature;
     private ResourceSchema schema;
+    private ResourceFieldSchema[] loadFields;
     private RecordReader<Text, MapWritable> reader;
     private RecordWriter<Object, Object> writer;
 
@@ -169,6 +181,11 @@ public class ESStorage extends LoadFunc implements StoreFuncInterface, StoreMeta
         SettingsManager.loadFrom(job.getConfiguration()).setHost(host).setPort(port).setResource(location).save();
     }
 
+    @Override
+    public void setUDFContextSignature(String signature) {
+        this.loadSignature = signature;
+    }
+
 
     @Override
     public String relativeToAbsolutePath(String location, Path curDir) throws IOException {
@@ -187,6 +204,13 @@ public class ESStorage extends LoadFunc implements StoreFuncInterface, StoreMeta
     @Override
     public void prepareToRead(RecordReader reader, PigSplit split) throws IOException {
         this.reader = reader;
+
+        Properties props = UDFContext.getUDFContext().getUDFProperties(getClass(), new String[] { loadSignature });
+        String s = props.getProperty(ResourceSchema.class.getName());
+        if (s != null) {
+            ResourceSchema loadSchema = IOUtils.deserializeFromBase64(s);
+            loadFields = loadSchema.getFields();
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -198,10 +222,18 @@ public class ESStorage extends LoadFunc implements StoreFuncInterface, StoreMeta
             }
 
             Map<Object, Object> data = (Map<Object, Object>) WritableUtils.fromWritable(reader.getCurrentValue());
-            Tuple tuple = TupleFactory.getInstance().newTuple(data.size());
-            int i = 0;
-            for (Entry<Object, Object> entry : data.entrySet()) {
-                tuple.set(i++, PigTypeUtils.objectToPig(entry.getValue()));
+            Tuple tuple;
+
+            // use the mapping (if available) to type and order the fields
+            if (loadFields != null) {
+                tuple = PigTypeUtils.mapToTuple(data, loadFields);
+            }
+            else {
+                tuple = TupleFactory.getInstance().newTuple(data.size());
+                int i = 0;
+                for (Entry<Object, Object> entry : data.entrySet()) {
+                    tuple.set(i++, PigTypeUtils.objectToPig(entry.getValue()));
+                }
             }
 
             if (trace) {
@@ -214,6 +246,72 @@ public class ESStorage extends LoadFunc implements StoreFuncInterface, StoreMeta
         }
     }
 
+    //
+    // LoadMetadata
+    //
+
+    @Override
+    public ResourceSchema getSchema(String location, Job job) throws IOException {
+        BufferedRestClient client = createClient(location, job);
+        Map<String, Object> mapping;
+        try {
+            mapping = client.getMapping();
+        } catch (IllegalStateException ex) {
+            // no mapping available (the index might not exist yet) - fall back to untyped loading
+            log.warn(String.format("Cannot retrieve mapping for [%s]; loading data without a schema", location), ex);
+            mapping = null;
+        } finally {
+            client.close();
+        }
+
+        if (mapping == null || mapping.isEmpty()) {
+            return null;
+        }
+
+        ResourceSchema loadSchema = PigTypeUtils.mappingToSchema(mapping);
+        // save the schema to back-end for the tuple conversion
+        Properties props = UDFContext.getUDFContext().getUDFProperties(getClass(), new String[] { loadSignature });
+        props.setProperty(ResourceSchema.class.getName(), IOUtils.serializeToBase64(loadSchema));
+
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Using schema [%s] for [%s]", loadSchema, location));
+        }
+        return loadSchema;
+    }
+
+    @Override
+    public ResourceStatistics getStatistics(String location, Job job) throws IOException {
+        setLocation(location, job);
+        Estimate estimate = SizeEstimator.estimate(SettingsManager.loadFrom(job.getConfiguration()));
+        if (estimate == null) {
+            return null;
+        }
+
+        ResourceStatistics statistics = new ResourceStatistics();
+        statistics.setNumRecords(estimate.getDocCount());
+        // round up so that non-empty results are never reported as 0
+        statistics.setmBytes((estimate.getSizeInBytes() + ONE_MB - 1) / ONE_MB);
+        statistics.setAvgRecordSize(estimate.getAverageDocSize());
+        return statistics;
+    }
+
+    @Override
+    public String[] getPartitionKeys(String location, Job job) throws IOException {
+        // no partitioning supported
+        return null;
+    }
+
+    @Override
+    public void setPartitionFilter(Expression partitionFilter) throws IOException {
+        // no partitioning supported
+    }
+
+    private BufferedRestClient createClient(String location, Job job) throws IOException {
+        setLocation(location, job);
+        Settings settings = SettingsManager.loadFrom(job.getConfiguration());
+        return new BufferedRestClient(settings);
+    }
+
     // added in Pig 11.x
     public void cleanupOnSuccess(String location, Job job) throws IOException {
         //no-op
@@ -15,7 +15,9 @@
  */
 package org.elasticsearch.hadoop.pig;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,11 +27,13 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pig.ResourceSchema;
 import org.apache.pig.ResourceSchema.ResourceFieldSchema;
+import org.apache.pig.data.BagFactory;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.elasticsearch.hadoop.util.StringUtils;
 
 /**
@@ -39,6 +43,10 @@ abstract class PigTypeUtils {
 
     private static final Log log = LogFactory.getLog(ESStorage.class);
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // the truncation of multi-valued fields is reported only once
+    private static volatile boolean multiValueWarned = false;
+
     @SuppressWarnings("unchecked")
     static Object pigToObject(Object object, ResourceFieldSchema field) {
         switch (field.getType()) {
@@ -96,6 +104,201 @@ abstract class PigTypeUtils {
         }
     }
 
+    /**
+     * Converts the given ElasticSearch mapping properties into a Pig schema.
+     *
+     * @param properties mapping properties (field name to field definition)
+     * @return equivalent Pig schema
+     */
+    @SuppressWarnings("unchecked")
+    static ResourceSchema mappingToSchema(Map<String, Object> properties) throws IOException {
+        ResourceSchema schema = new ResourceSchema();
+        List<ResourceFieldSchema> fields = new ArrayList<ResourceFieldSchema>(properties.size());
+
+        for (Entry<String, Object> entry : properties.entrySet()) {
+            fields.add(mappingToField(entry.getKey(), (Map<String, Object>) entry.getValue()));
+        }
+        schema.setFields(fields.toArray(new ResourceFieldSchema[fields.size()]));
+        return schema;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ResourceFieldSchema mappingToField(String name, Map<String, Object> definition) throws IOException {
+        ResourceFieldSchema field = new ResourceFieldSchema();
+        field.setName(name);
+
+        String type = (String) definition.get("type");
+        Map<String, Object> properties = (Map<String, Object>) definition.get("properties");
+
+        // objects do not declare their type explicitly
+        if (type == null && properties != null) {
+            type = "object";
+        }
+
+        if ("string".equals(type)) {
+            field.setType(DataType.CHARARRAY);
+        }
+        else if ("long".equals(type)) {
+            field.setType(DataType.LONG);
+        }
+        else if ("integer".equals(type) || "short".equals(type) || "byte".equals(type)) {
+            field.setType(DataType.INTEGER);
+        }
+        else if ("double".equals(type)) {
+            field.setType(DataType.DOUBLE);
+        }
+        else if ("float".equals(type)) {
+            field.setType(DataType.FLOAT);
+        }
+        else if ("boolean".equals(type)) {
+            field.setType(DataType.BOOLEAN);
+        }
+        else if ("date".equals(type)) {
+            // dates are returned as is (string or number) from the source
+            field.setType(DataType.CHARARRAY);
+        }
+        else if ("object".equals(type)) {
+            if (properties == null || properties.isEmpty()) {
+                field.setType(DataType.MAP);
+            }
+            else {
+                field.setType(DataType.TUPLE);
+                field.setSchema(mappingToSchema(properties));
+            }
+        }
+        else if ("nested".equals(type) && properties != null) {
+            // bags contain tuples
+            ResourceFieldSchema tuple = new ResourceFieldSchema();
+            tuple.setType(DataType.TUPLE);
+            tuple.setSchema(mappingToSchema(properties));
+
+            ResourceSchema bagSchema = new ResourceSchema();
+            bagSchema.setFields(new ResourceFieldSchema[] { tuple });
+
+            field.setType(DataType.BAG);
+            field.setSchema(bagSchema);
+        }
+        else {
+            // unknown (geo_point, ip, binary, etc...) - leave it untyped
+            field.setType(DataType.BYTEARRAY);
+        }
+
+        return field;
+    }
+
+    /**
+     * Converts the given object to the Pig type declared by the given field.
+     * Multi-valued fields (which the mapping does not tell apart) are coerced to the declared type - see {@link #multiValue(List, ResourceFieldSchema)}.
+     * Falls back to the untyped conversion when the value does not match the declared type.
+     */
+    @SuppressWarnings("unchecked")
+    static Object objectToPig(Object object, ResourceFieldSchema field) {
+        if (object instanceof List && field.getType() != DataType.BAG && field.getType() != DataType.BYTEARRAY) {
+            object = multiValue((List<Object>) object, field);
+        }
+        // and single values of bags are wrapped
+        if (object != null && !(object instanceof List) && field.getType() == DataType.BAG) {
+            object = Collections.singletonList(object);
+        }
+        if (object == null) {
+            return null;
+        }
+
+        switch (field.getType()) {
+        case DataType.CHARARRAY:
+            if (object instanceof String || object instanceof Number || object instanceof Boolean) {
+                return object.toString();
+            }
+            break;
+        case DataType.LONG:
+            if (object instanceof Number) {
+                return ((Number) object).longValue();
+            }
+            break;
+        case DataType.INTEGER:
+            if (object instanceof Number) {
+                return ((Number) object).intValue();
+            }
+            break;
+        case DataType.DOUBLE:
+            if (object instanceof Number) {
+                return ((Number) object).doubleValue();
+            }
+            break;
+        case DataType.FLOAT:
+            if (object instanceof Number) {
+                return ((Number) object).floatValue();
+            }
+            break;
+        case DataType.BOOLEAN:
+            if (object instanceof Boolean) {
+                return object;
+            }
+            break;
+        case DataType.TUPLE:
+            if (object instanceof Map) {
+                return mapToTuple((Map<Object, Object>) object, field.getSchema().getFields());
+            }
+            break;
+        case DataType.BAG:
+            if (object instanceof List) {
+                ResourceFieldSchema[] nestedFields = field.getSchema().getFields()[0].getSchema().getFields();
+                List<Tuple> tuples = new ArrayList<Tuple>();
+                for (Object element : (List<Object>) object) {
+                    if (element instanceof Map) {
+                        tuples.add(mapToTuple((Map<Object, Object>) element, nestedFields));
+                    }
+                    else {
+                        tuples.add(TupleFactory.getInstance().newTuple(objectToPig(element)));
+                    }
+                }
+                return BagFactory.getInstance().newDefaultBag(tuples);
+            }
+            break;
+        default:
+        }
+
+        // no match between the declared type and the actual value (such as arrays) - use the untyped conversion
+        return objectToPig(object);
+    }
+
+    /**
+     * Reduces the values of a multi-valued field to one value of the declared type: single values are unwrapped, multiple
+     * strings are returned as a JSON array while for the other types only the first value is kept (with a warning).
+     */
+    private static Object multiValue(List<Object> values, ResourceFieldSchema field) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        if (values.size() == 1) {
+            return values.get(0);
+        }
+        if (field.getType() == DataType.CHARARRAY) {
+            try {
+                return MAPPER.writeValueAsString(values);
+            } catch (IOException ex) {
+                throw new IllegalStateException(String.format("Cannot convert multi-valued field [%s]", field.getName()), ex);
+            }
+        }
+        if (!multiValueWarned) {
+            multiValueWarned = true;
+            log.warn(String.format("Field [%s] has multiple values but is declared as [%s]; keeping only the first value",
+                    field.getName(), DataType.findTypeName(field.getType())));
+        }
+        return values.get(0);
+    }
+
+    /**
+     * Creates a tuple out of the given map (typically a JSON object) using the field order defined by the schema.
+     */
+    static Tuple mapToTuple(Map<Object, Object> data, ResourceFieldSchema[] fields) {
+        List<Object> values = new ArrayList<Object>(fields.length);
+        for (ResourceFieldSchema field : fields) {
+            values.add(objectToPig(data.get(field.getName()), field));
+        }
+        return TupleFactory.getInstance().newTupleNoCopy(values);
+    }
+
     static Object objectToPig(Object object) {
         if (object == null) {
             return null;
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.hadoop.cfg.Settings;
+
+/**
+ * Base class for the {@link BulkWriter}s executing the bulk requests themselves. Enforces the write rate limit and, with
+ * back-pressure enabled, polls the bulk thread pools of the cluster.
+ */
+abstract class AbstractBulkWriter implements BulkWriter {
+
+    private static final Log log = LogFactory.getLog(AbstractBulkWriter.class);
+
+    protected final RestClient client;
+    // resource used for the bulk requests (the root endpoint for dynamic resources)
+    protected final String target;
+    // index written to (used for reporting)
+    protected final String index;
+    protected final int batchSizeThreshold;
+    protected final int entriesThreshold;
+    protected final Timings timings;
+
+    // null unless a write rate limit or back-pressure is enabled
+    protected final WriteThrottle throttle;
+    protected final boolean backpressure;
+    private final long queueCheckInterval;
+    private final float queueThreshold;
+    private long lastQueueCheck = 0;
+    // bulk queue capacity and rejections per node
+    private Map<String, Integer> queueCapacity;
+    private final Map<String, Long> queueRejections = new HashMap<String, Long>();
+
+    AbstractBulkWriter(Settings settings, RestClient client, String target, String index, WriteThrottle throttle) {
+        this.client = client;
+        this.target = target;
+        this.index = index;
+        this.batchSizeThreshold = settings.getBatchSizeInBytes();
+        this.entriesThreshold = settings.getBatchSizeInEntries();
+        this.timings = client.timings();
+
+        this.throttle = throttle;
+        backpressure = (throttle != null && settings.getBatchWriteBackpressure());
+        queueCheckInterval = (backpressure ? settings.getBatchWriteBackpressureInterval() : 0);
+        queueThreshold = settings.getBatchWriteBackpressureQueue();
+    }
+
+    @Override
+    public int batchSize() {
+        return batchSizeThreshold;
+    }
+
+    // waits (if needed) to honour the write rate limit
+    protected void throttle(int docs, long bytes) throws IOException {
+        if (throttle == null) {
+            return;
+        }
+        checkQueues();
+
+        long wait = throttle.delay(docs, bytes);
+        if (wait > 0) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(wait);
+            try {
+                Thread.sleep(millis, (int) (wait % 1000000));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while throttling bulk write");
+            }
+            client.stats().throttleTime.addAndGet(millis);
+        }
+    }
+
+    // polls the bulk thread pools of the cluster and slows down if any of them is filling up (or rejecting)
+    private void checkQueues() {
+        long now = System.currentTimeMillis();
+        if (queueCheckInterval <= 0 || now - lastQueueCheck < queueCheckInterval) {
+            return;
+        }
+        lastQueueCheck = now;
+
+        try {
+            if (queueCapacity == null) {
+                queueCapacity = new HashMap<String, Integer>();
+                for (Map.Entry<String, Map<String, Object>> entry : client.bulkThreadPoolInfo().entrySet()) {
+                    queueCapacity.put(entry.getKey(), WriteThrottle.parseQueueSize(entry.getValue().get("queue_size")));
+                }
+            }
+
+            double fill = 0;
+            for (Map.Entry<String, Map<String, Object>> entry : client.bulkThreadPoolStats().entrySet()) {
+                String node = entry.getKey();
+                Object queue = entry.getValue().get("queue");
+                Integer capacity = queueCapacity.get(node);
+                if (queue instanceof Number && capacity != null && capacity > 0) {
+                    fill = Math.max(fill, ((Number) queue).doubleValue() / capacity);
+                }
+                Object rejected = entry.getValue().get("rejected");
+                if (rejected instanceof Number) {
+                    Long previous = queueRejections.put(node, ((Number) rejected).longValue());
+                    if (previous != null && ((Number) rejected).longValue() > previous) {
+                        fill = 1;
+                    }
+                }
+            }
+            throttle.onQueue(fill, queueThreshold);
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Bulk queue fill [%.2f]; write rate factor [%.3f]", fill, throttle.factor()));
+            }
+        } catch (Exception ex) {
+            // not critical - rejections still slow the writes down
+            if (log.isDebugEnabled()) {
+                log.debug("Cannot retrieve the bulk thread pool statistics", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link DocumentMerger} adding up the numeric fields present in both documents (such as counters). The other fields
+ * are taken from the current document (last write wins).
+ */
+public class AdditiveMerger implements DocumentMerger {
+
+    @Override
+    public Map<String, Object> merge(Map<String, Object> previous, Map<String, Object> current) {
+        Map<String, Object> merged = new LinkedHashMap<String, Object>(previous);
+        for (Map.Entry<String, Object> entry : current.entrySet()) {
+            Object old = previous.get(entry.getKey());
+            Object value = entry.getValue();
+            merged.put(entry.getKey(), (old instanceof Number && value instanceof Number) ? add((Number) old, (Number) value) : value);
+        }
+        return merged;
+    }
+
+    private static Number add(Number a, Number b) {
+        if (isIntegral(a) && isIntegral(b)) {
+            return Long.valueOf(a.longValue() + b.longValue());
+        }
+        return Double.valueOf(a.doubleValue() + b.doubleValue());
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte
+                || number instanceof BigInteger;
+    }
+}
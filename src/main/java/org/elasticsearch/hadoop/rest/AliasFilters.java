@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+
+/**
+ * Works out the filter to apply when reading a concrete index directly instead of through the (filtered) aliases
+ * of the configured indices expression. Like ElasticSearch, an index has a filter only if it is reached solely through
+ * filtered aliases; multiple filters are or-ed.
+ */
+abstract class AliasFilters {
+
+    /**
+     * Returns the filter of each concrete index that needs one.
+     *
+     * @param expression indices expression (comma-separated list of indices, aliases or wildcards)
+     * @param aliases aliases (and their definition) of each concrete index, as returned by <tt>_aliases</tt>
+     * @return filter per concrete index
+     */
+    static Map<String, Object> resolve(String expression, Map<String, Map<String, Map<String, Object>>> aliases) {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String name : expression.split(",")) {
+            name = name.trim();
+            if (name.startsWith("+")) {
+                name = name.substring(1);
+            }
+            // exclusions remove indices - the ones left are handled by the other names
+            if (name.length() == 0 || name.startsWith("-")) {
+                continue;
+            }
+            if ("_all".equals(name)) {
+                return Collections.emptyMap();
+            }
+            patterns.add(pattern(name));
+        }
+
+        Map<String, Object> filters = new LinkedHashMap<String, Object>();
+        for (Entry<String, Map<String, Map<String, Object>>> entry : aliases.entrySet()) {
+            String index = entry.getKey();
+            boolean direct = false;
+            List<Object> indexFilters = new ArrayList<Object>();
+
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(index).matches()) {
+                    direct = true;
+                    break;
+                }
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                for (Entry<String, Map<String, Object>> alias : entry.getValue().entrySet()) {
+                    if (pattern.matcher(alias.getKey()).matches()) {
+                        Object filter = (alias.getValue() != null ? alias.getValue().get("filter") : null);
+                        if (filter == null) {
+                            direct = true;
+                        }
+                        else {
+                            indexFilters.add(filter);
+                        }
+                    }
+                }
+            }
+
+            if (!direct && !indexFilters.isEmpty()) {
+                filters.put(index, indexFilters.size() == 1 ? indexFilters.get(0) : Collections.singletonMap("or", indexFilters));
+            }
+        }
+        return filters;
+    }
+
+    private static Pattern pattern(String name) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int wildcard = name.indexOf('*'); wildcard >= 0; wildcard = name.indexOf('*', start)) {
+            regex.append(Pattern.quote(name.substring(start, wildcard))).append(".*");
+            start = wildcard + 1;
+        }
+        regex.append(Pattern.quote(name.substring(start)));
+        return Pattern.compile(regex.toString());
+    }
+}
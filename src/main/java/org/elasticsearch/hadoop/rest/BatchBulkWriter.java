@@ -0,0 +1,418 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.rest.Timings.Phase;
+import org.elasticsearch.hadoop.util.StringUtils;
+
+/**
+ * {@link BulkWriter} sending the entries in batches buffered in memory. Entries rejected by ElasticSearch (bulk queue
+ * full) are retried; with journaling enabled, the batches that cannot be sent are spilled to a local {@link BulkJournal}
+ * and replayed later.
+ * <p/>
+ * Also used by the {@link SharedBulkWriter} I/O threads for sending the shared batches.
+ */
+class BatchBulkWriter extends AbstractBulkWriter {
+
+    private static final Log log = LogFactory.getLog(BatchBulkWriter.class);
+
+    // smallest batch used when memory runs low
+    private static final int MIN_BUFFER_SIZE = 64 * 1024;
+
+    // allocated on the first write (writers used only for sending do not need one)
+    private byte[] buffer = new byte[0];
+    private int bufferSize = 0;
+    private int bufferEntries = 0;
+    // start of each entry inside the buffer - used for retrying rejected entries
+    private int[] entryOffsets = new int[64];
+    // ids of the entries sent for the shared writer and the ones that could not be indexed
+    private int[] entryIds;
+    private BitSet failedEntries;
+    private final int retryCount;
+    private final long retryWait;
+
+    // null unless journaling is enabled
+    private final BulkJournal journal;
+    private final long journalTimeout;
+    private long replayWait;
+    private long nextReplay = 0;
+    private static final long MAX_REPLAY_WAIT = 60 * 1000;
+    // distinguishes the journals of the writers inside a JVM
+    private static final AtomicInteger JOURNALS = new AtomicInteger();
+
+    BatchBulkWriter(Settings settings, RestClient client, String target, String index, WriteThrottle throttle, boolean journaled) {
+        super(settings, client, target, index, throttle);
+        retryCount = settings.getBatchWriteRetryCount();
+        retryWait = settings.getBatchWriteRetryWait();
+
+        if (journaled) {
+            String dir = settings.getBatchWriteJournalDir();
+            String taskId = settings.getProperty("mapred.task.id");
+            // a task can have several writers (such as Hive dynamic partitions or Pig multi-stores) - each gets its own journal
+            File journalDir = new File(StringUtils.hasText(dir) ? dir : ".", "es-journal-"
+                    + (taskId != null ? taskId : ManagementFactory.getRuntimeMXBean().getName()) + "-" + JOURNALS.incrementAndGet());
+            journal = new BulkJournal(journalDir, 2 * batchSizeThreshold, settings.getBatchWriteJournalSize());
+        }
+        else {
+            journal = null;
+        }
+        journalTimeout = settings.getBatchWriteJournalTimeout();
+        replayWait = retryWait;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (buffer.length == 0) {
+            int granted = client.memory().grant(batchSizeThreshold, MIN_BUFFER_SIZE);
+            if (granted < batchSizeThreshold) {
+                log.info(String.format("Memory budget running low; using a batch of [%d] bytes instead of [%d]", granted, batchSizeThreshold));
+            }
+            buffer = new byte[granted];
+        }
+
+        // make some space first
+        if (length + bufferSize >= buffer.length) {
+            flushBatch();
+        }
+        if (length >= buffer.length) {
+            // sent on its own
+            if (offset > 0 || length < data.length) {
+                data = Arrays.copyOfRange(data, offset, offset + length);
+            }
+            send(data, data.length, new int[] { 0 }, 1);
+            return;
+        }
+
+        if (bufferEntries == entryOffsets.length) {
+            int[] offsets = new int[entryOffsets.length * 2];
+            System.arraycopy(entryOffsets, 0, offsets, 0, entryOffsets.length);
+            entryOffsets = offsets;
+        }
+        entryOffsets[bufferEntries] = bufferSize;
+
+        long copyStart = System.nanoTime();
+        System.arraycopy(data, offset, buffer, bufferSize, length);
+        timings.record(Phase.BUFFER_COPY, System.nanoTime() - copyStart);
+        bufferSize += length;
+        bufferEntries++;
+
+        if (entriesThreshold > 0 && bufferEntries >= entriesThreshold) {
+            flushBatch();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (bufferSize > 0) {
+            flushBatch();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        flush();
+        if (journal != null) {
+            // replay the un-acknowledged tail
+            replayJournal(true);
+        }
+    }
+
+    @Override
+    public boolean hasPending() {
+        return bufferEntries > 0;
+    }
+
+    @Override
+    public int batchSize() {
+        return (buffer.length > 0 ? buffer.length : batchSizeThreshold);
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (buffer.length > 0) {
+                client.memory().release(buffer.length);
+                buffer = new byte[0];
+            }
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * Sends the given entries as a batch on their own (through the buffer, temporarily swapped). Used by the shared writer.
+     *
+     * @return the entries that could not be indexed (and were discarded)
+     */
+    BitSet send(byte[] data, int size, int[] offsets, int entries) throws IOException {
+        byte[] currentBuffer = buffer;
+        int[] currentOffsets = entryOffsets;
+
+        buffer = data;
+        bufferSize = size;
+        entryOffsets = offsets;
+        bufferEntries = entries;
+        entryIds = new int[entries];
+        for (int i = 0; i < entries; i++) {
+            entryIds[i] = i;
+        }
+        failedEntries = new BitSet(entries);
+        try {
+            flushBatch();
+            return failedEntries;
+        } finally {
+            buffer = currentBuffer;
+            entryOffsets = currentOffsets;
+            bufferSize = 0;
+            bufferEntries = 0;
+            entryIds = null;
+            failedEntries = null;
+        }
+    }
+
+    private void flushBatch() throws IOException {
+        if (journal == null) {
+            sendBatch();
+            return;
+        }
+
+        // keep the write order - while there are journaled batches, new ones are queued behind them
+        if (!journal.isEmpty()) {
+            journalBatch();
+            replayJournal(false);
+            return;
+        }
+
+        try {
+            sendBatch();
+        } catch (TransientRestException ex) {
+            // the buffer contains the documents not sent yet
+            log.warn(String.format("Cannot write batch to [%s] (%s); spilling it to the journal", index, ex.getMessage()));
+            replayWait = retryWait;
+            nextReplay = System.currentTimeMillis() + replayWait;
+            journalBatch();
+        }
+    }
+
+    private void journalBatch() throws IOException {
+        while (!journal.append(buffer, bufferSize, entryOffsets, bufferEntries)) {
+            // journal full - wait for the cluster to catch up
+            log.warn(String.format("Journal full (%d bytes); waiting for the cluster to recover", journal.diskSize()));
+            replayJournal(true);
+        }
+        bufferSize = 0;
+        bufferEntries = 0;
+    }
+
+    /**
+     * Replays the journaled batches (oldest first) with exponential backoff. When blocking, waits (up to the journal
+     * timeout) for the cluster to recover, otherwise returns as soon as a replay fails or is not due yet.
+     *
+     * @return true if the journal was fully replayed
+     */
+    private boolean replayJournal(boolean blocking) throws IOException {
+        long deadline = System.currentTimeMillis() + journalTimeout;
+
+        while (!journal.isEmpty()) {
+            long now = System.currentTimeMillis();
+            if (now < nextReplay) {
+                if (!blocking) {
+                    return false;
+                }
+                if (now >= deadline) {
+                    throw new TransientRestException(String.format("Cannot write to [%s] for more than [%d]ms; [%d] batches left in the journal",
+                            index, journalTimeout, journal.batches()));
+                }
+                try {
+                    Thread.sleep(Math.min(nextReplay, deadline) - now);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting to replay the journal");
+                }
+                continue;
+            }
+
+            if (replay(journal.peek())) {
+                journal.remove();
+                replayWait = retryWait;
+            }
+            else {
+                replayWait = Math.min(replayWait * 2, MAX_REPLAY_WAIT);
+                nextReplay = System.currentTimeMillis() + replayWait;
+            }
+        }
+        return true;
+    }
+
+    // sends the given batch through the buffer (temporarily swapped)
+    private boolean replay(BulkJournal.Batch batch) throws IOException {
+        byte[] currentBuffer = buffer;
+        int currentSize = bufferSize;
+        int[] currentOffsets = entryOffsets;
+        int currentEntries = bufferEntries;
+
+        buffer = batch.data;
+        bufferSize = batch.data.length;
+        entryOffsets = batch.offsets;
+        bufferEntries = batch.offsets.length;
+        try {
+            sendBatch();
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Replayed journaled batch of [%d] bytes; [%d] batches left", batch.data.length, journal.batches() - 1));
+            }
+            return true;
+        } catch (TransientRestException ex) {
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Cannot replay journaled batch (%s); retrying in [%d]ms", ex.getMessage(), replayWait));
+            }
+            return false;
+        } finally {
+            buffer = currentBuffer;
+            bufferSize = currentSize;
+            entryOffsets = currentOffsets;
+            bufferEntries = currentEntries;
+        }
+    }
+
+    private void sendBatch() throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Flushing batch of [%d]", bufferSize));
+        }
+
+        Stats stats = client.stats();
+        int retries = 0;
+
+        while (bufferEntries > 0) {
+            throttle(bufferEntries, bufferSize);
+            List<Map<String, Object>> items;
+            try {
+                items = client.bulk(target, buffer, bufferSize);
+            } catch (TransientRestException ex) {
+                // the whole bulk was rejected (or the node is overloaded)
+                if (backpressure) {
+                    throttle.onBulk(bufferEntries);
+                }
+                throw ex;
+            }
+
+            if (items.isEmpty()) {
+                stats.docsWritten.addAndGet(bufferEntries);
+                if (backpressure) {
+                    throttle.onBulk(0);
+                }
+                break;
+            }
+
+            int rejected = retainRejected(items);
+            stats.docsRejected.addAndGet(rejected);
+            if (backpressure) {
+                throttle.onBulk(rejected);
+            }
+
+            if (rejected > 0) {
+                if (retries >= retryCount) {
+                    throw new TransientRestException(String.format("Bulk write to [%s] failed; [%d] documents rejected after [%d] retries", index, rejected, retries));
+                }
+                retries++;
+                stats.docsRetried.addAndGet(rejected);
+
+                if (log.isDebugEnabled()) {
+                    log.debug(String.format("[%d] documents rejected; retrying in [%s]ms (attempt %d/%d)", rejected, retryWait, retries, retryCount));
+                }
+                try {
+                    Thread.sleep(retryWait);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting to retry bulk write");
+                }
+            }
+        }
+
+        bufferSize = 0;
+        bufferEntries = 0;
+    }
+
+    /**
+     * Compacts the buffer to contain only the entries rejected by ElasticSearch (which can be retried).
+     * Entries that failed for other reasons are logged and discarded.
+     *
+     * @return the number of rejected entries
+     */
+    private int retainRejected(List<Map<String, Object>> items) {
+        int entries = bufferEntries;
+        int size = 0;
+        int retained = 0;
+        int failed = 0;
+        String failure = null;
+
+        for (int i = 0; i < entries; i++) {
+            String error = null;
+            if (i < items.size()) {
+                // each item contains the operation (index) and its result
+                Map<?, ?> result = (Map<?, ?>) items.get(i).values().iterator().next();
+                Object err = result.get("error");
+                error = (err != null ? err.toString() : null);
+            }
+
+            if (error == null) {
+                continue;
+            }
+            if (!error.contains("EsRejectedExecutionException")) {
+                failed++;
+                failure = error;
+                if (failedEntries != null) {
+                    failedEntries.set(entryIds[i]);
+                }
+                continue;
+            }
+
+            int start = entryOffsets[i];
+            int end = (i + 1 < entries ? entryOffsets[i + 1] : bufferSize);
+            int length = end - start;
+            // entries are moved only to the left so the copy is safe
+            System.arraycopy(buffer, start, buffer, size, length);
+            if (entryIds != null) {
+                entryIds[retained] = entryIds[i];
+            }
+            entryOffsets[retained++] = size;
+            size += length;
+        }
+
+        client.stats().docsWritten.addAndGet(entries - retained - failed);
+
+        if (failed > 0) {
+            log.error(String.format("[%d] documents could not be indexed in [%s]; last failure [%s]", failed, index, failure));
+        }
+
+        bufferSize = size;
+        bufferEntries = retained;
+        return retained;
+    }
+}
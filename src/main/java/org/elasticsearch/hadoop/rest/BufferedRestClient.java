@@ -20,6 +20,11 @@ import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -27,36 +32,75 @@ import org.apache.hadoop.io.Writable;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
 import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.rest.Timings.Phase;
 import org.elasticsearch.hadoop.util.Assert;
 import org.elasticsearch.hadoop.util.StringUtils;
 import org.elasticsearch.hadoop.util.WritableUtils;
 
 /**
  * Rest client performing high-level operations using buffers to improve performance. Stateful in that once created, it is used to perform updates against the same index.
+ * Not thread-safe unless <tt>es.batch.write.concurrent</tt> is enabled, in which case {@link #addToIndex(Object)} can be called by multiple threads.
+ * <p/>
+ * The entries are sent by a {@link BulkWriter} picked based on the settings: buffered batches (optionally journaled),
+ * streamed batches or the JVM-wide shared writer.
  */
 public class BufferedRestClient implements Closeable {
 
     private static Log log = LogFactory.getLog(BufferedRestClient.class);
 
-    // TODO: make this configurable
-    private final byte[] buffer;
     private final int bufferEntriesThreshold;
-
-    private int bufferSize = 0;
-    private int bufferEntries = 0;
     private boolean requiresRefreshAfterBulk = false;
-    private boolean executedBulkWrite = false;
 
     private ObjectMapper mapper = new ObjectMapper();
 
     private RestClient client;
     private String index;
+    // resource used for the bulk requests (the root endpoint for dynamic resources)
+    private String bulkTarget;
     private Resource resource;
+    // resource written to - differs from the configured one when rebuilding (staging index)
+    private Resource writeResource;
     private final boolean trace;
 
+    private final BulkCommand command;
+
+    // write path (buffered, streamed or shared)
+    private final BulkWriter writer;
+    // whether multiple threads can write (through the appender, created on the first write)
+    private final boolean concurrentWrites;
+    private volatile ConcurrentAppender concurrent;
+    // null unless coalescing is enabled
+    private final WriteCoalescer coalescer;
+
+    // linger/periodic refresh (started on the first write)
+    private final boolean timed;
+    private volatile ScheduledExecutorService timer;
+    // guards the writer against the timer
+    private final Object lock = new Object();
+    private final long lingerNanos;
+    private final long refreshNanos;
+    // bounds the wait for a running timed flush on close
+    private final long flushTimeout;
+    // when the oldest pending document was added (0 if there is none)
+    private long oldest = 0;
+    // bulk writes when the oldest pending document was recorded - any send since then restarts the linger
+    private long bulkWritesAtPending = 0;
+    private long lastRefresh = System.nanoTime();
+    private long bulkWritesAtRefresh = 0;
+    private volatile Throwable timerFailure;
+
+    private final Timings timings;
+    // end of the last addToIndex call - used for measuring the time spent by the caller
+    private long lastCall = 0;
+
     public BufferedRestClient(Settings settings) {
+        this(settings, new RestClient(settings));
+    }
+
+    // allows a custom RestClient to be used (for testing/benchmarking)
+    BufferedRestClient(Settings settings, RestClient client) {
       //    mapper.getSerializationConfig().disable(SerializationConfig.Feature.FAIL_ON_EMPTY_BEANS);      
-        this.client = new RestClient(settings);
+        this.client = client;
         String tempIndex = settings.getTargetResource();
         if (tempIndex == null) {
             tempIndex = ""; 
@@ -67,26 +111,73 @@ public class BufferedRestClient implements Closeable {
             }
 
         }
+        ResourcePattern pattern = null;
+        if (ResourcePattern.isPattern(tempIndex)) {
+            // dynamic resource - the index/type are resolved per document and passed in each bulk entry
+            pattern = new ResourcePattern(tempIndex);
+            tempIndex = pattern.wildcard();
+            bulkTarget = "";
+        }
+        this.resource = new Resource(tempIndex);
+
+        String staging = settings.getStagingIndex();
+        if (pattern == null && StringUtils.hasText(staging) && StringUtils.hasText(tempIndex)) {
+            // rebuild - write into the staging index instead of the (aliased) target one
+            tempIndex = staging + tempIndex.substring(resource.index.length());
+            this.writeResource = new Resource(tempIndex);
+        }
+        else {
+            this.writeResource = resource;
+        }
         this.index = tempIndex;
-        this.resource = new Resource(index);
+        if (pattern == null) {
+            bulkTarget = index;
+        }
 
-        buffer = new byte[settings.getBatchSizeInBytes()];
         bufferEntriesThreshold = settings.getBatchSizeInEntries();
-        requiresRefreshAfterBulk = settings.getBatchRefreshAfterWrite();
+        if (settings.getBatchWriteStreaming()) {
+            if (settings.getBatchWriteJournal()) {
+                throw new IllegalArgumentException(String.format("[%s] cannot be used with [%s] as streamed batches are not retained",
+                        ConfigurationOptions.ES_BATCH_WRITE_STREAMING, ConfigurationOptions.ES_BATCH_WRITE_JOURNAL));
+            }
+            if (settings.getBatchWriteShared()) {
+                throw new IllegalArgumentException(String.format("[%s] cannot be used with [%s]",
+                        ConfigurationOptions.ES_BATCH_WRITE_STREAMING, ConfigurationOptions.ES_BATCH_WRITE_SHARED));
+            }
+        }
+        if (settings.getBatchWriteJournal() && settings.getBatchWriteShared()) {
+            // the entries are handed over to the shared writer which does not journal them
+            throw new IllegalArgumentException(String.format("[%s] cannot be used with [%s]",
+                    ConfigurationOptions.ES_BATCH_WRITE_JOURNAL, ConfigurationOptions.ES_BATCH_WRITE_SHARED));
+        }
+        // when running inside a job, the committer refreshes the index once all tasks are done
+        requiresRefreshAfterBulk = settings.getBatchRefreshAfterWrite() && !settings.getJobCommit();
         trace = log.isTraceEnabled();
-    }
+        command = new BulkCommand(settings, mapper, pattern);
+        coalescer = (settings.getBatchWriteCoalesce() ? new WriteCoalescer(settings, command) : null);
 
-    /**
-     * Returns a pageable (scan based) result to the given query.
-     *
-     * @param uri
-     * @return
-     */
-    ScrollQuery scan(String query) throws IOException {
-        String[] scrollInfo = client.scan(query);
-        String scrollId = scrollInfo[0];
-        long totalSize = Long.parseLong(scrollInfo[1]);
-        return new ScrollQuery(client, scrollId, totalSize);
+        concurrentWrites = settings.getBatchWriteConcurrent();
+        if (concurrentWrites && coalescer != null) {
+            throw new IllegalArgumentException(String.format("[%s] cannot be used with [%s]",
+                    ConfigurationOptions.ES_BATCH_WRITE_CONCURRENT, ConfigurationOptions.ES_BATCH_WRITE_COALESCE));
+        }
+
+        if (settings.getBatchWriteStreaming()) {
+            writer = new StreamingBulkWriter(settings, client, bulkTarget, index, WriteThrottle.of(settings));
+        }
+        else if (settings.getBatchWriteShared()) {
+            // the shared writer sends (and throttles) the entries of all its writers
+            writer = new SharedBulkWriter.Handle(settings, bulkTarget, client);
+        }
+        else {
+            writer = new BatchBulkWriter(settings, client, bulkTarget, index, WriteThrottle.of(settings), settings.getBatchWriteJournal());
+        }
+        timings = client.timings();
+
+        lingerNanos = TimeUnit.MILLISECONDS.toNanos(settings.getBatchLinger());
+        refreshNanos = TimeUnit.MILLISECONDS.toNanos(settings.getBatchRefreshInterval());
+        timed = (lingerNanos > 0 || refreshNanos > 0);
+        flushTimeout = settings.getHttpTimeout();
     }
 
     /**
@@ -98,72 +189,362 @@ public class BufferedRestClient implements Closeable {
     public void addToIndex(Object object) throws IOException {
         Assert.hasText(index, "no index given");
 
-        Object d = (object instanceof Writable ? WritableUtils.fromWritable((Writable) object) : object);
+        if (concurrentWrites) {
+            // the timings are per thread so they are not recorded
+            if (timed) {
+                checkTimer();
+            }
+            Object d = (object instanceof Writable ? WritableUtils.fromWritable((Writable) object) : object);
+            appender().add(command.entry(object, d).getBytes(StringUtils.UTF_8));
+            return;
+        }
 
+        if (!timed) {
+            write(object);
+            return;
+        }
+        if (timer == null) {
+            timer = createTimer();
+        }
+        checkTimer();
+        synchronized (lock) {
+            write(object);
+            markPending();
+        }
+    }
 
-        StringBuilder sb = new StringBuilder("{\"index\":{}}\n");
+    private void write(Object object) throws IOException {
+        long start = System.nanoTime();
+        if (lastCall > 0) {
+            timings.record(Phase.MAPPER, start - lastCall);
+        }
 
-        //(Chris) allow adding plain json string to the index 
-        if (object instanceof String) {
-          sb.append(d);
-        } else {
-          sb.append(mapper.writeValueAsString(d));
+        Object d = (object instanceof Writable ? WritableUtils.fromWritable((Writable) object) : object);
+
+        if (coalescer != null) {
+            if (coalescer.add(command.document(d))) {
+                client.stats().docsCoalesced.incrementAndGet();
+            }
+            timings.record(Phase.SERIALIZATION, System.nanoTime() - start);
+
+            if (coalescer.size() >= writer.batchSize() || (bufferEntriesThreshold > 0 && coalescer.entries() >= bufferEntriesThreshold)) {
+                flushCoalesced();
+            }
+            lastCall = System.nanoTime();
+            return;
         }
-        sb.append("\n");
 
-        String str = sb.toString();
+        String str = command.entry(object, d);
 
         if (trace) {
             log.trace(String.format("Indexing object [%s]", str));
         }
 
         byte[] data = str.getBytes(StringUtils.UTF_8);
+        timings.record(Phase.SERIALIZATION, System.nanoTime() - start);
 
-        // make some space first
-        if (data.length + bufferSize >= buffer.length) {
-            flushBatch();
+        append(data);
+        lastCall = System.nanoTime();
+    }
+
+    private ConcurrentAppender appender() {
+        ConcurrentAppender appender = concurrent;
+        if (appender == null) {
+            synchronized (this) {
+                appender = concurrent;
+                if (appender == null) {
+                    concurrent = appender = new ConcurrentAppender(new ConcurrentAppender.Sink() {
+                        @Override
+                        public void append(byte[] data, int offset, int length) throws IOException {
+                            if (!timed) {
+                                BufferedRestClient.this.append(data, offset, length);
+                                return;
+                            }
+                            synchronized (lock) {
+                                BufferedRestClient.this.append(data, offset, length);
+                                markPending();
+                            }
+                        }
+                    }, client.memory());
+                    if (timed) {
+                        timer = createTimer();
+                    }
+                }
+            }
         }
+        return appender;
+    }
 
-        System.arraycopy(data, 0, buffer, bufferSize, data.length);
-        bufferSize += data.length;
-        bufferEntries++;
+    private ScheduledExecutorService createTimer() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "es-batch-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long min = Math.min(lingerNanos > 0 ? lingerNanos : Long.MAX_VALUE, refreshNanos > 0 ? refreshNanos : Long.MAX_VALUE);
+        // check often enough to honour the linger within a fraction of it
+        long tick = Math.max(TimeUnit.MILLISECONDS.toNanos(10), min / 4);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                onTimer();
+            }
+        }, tick, tick, TimeUnit.NANOSECONDS);
+        return executor;
+    }
 
-        if (bufferEntriesThreshold > 0 && bufferEntries >= bufferEntriesThreshold) {
-            flushBatch();
+    private void onTimer() {
+        if (timerFailure != null) {
+            return;
+        }
+        synchronized (lock) {
+            try {
+                long now = System.nanoTime();
+                if (lingerNanos > 0 && oldest > 0 && now - oldest >= lingerNanos) {
+                    if (log.isTraceEnabled()) {
+                        log.trace(String.format("Flushing batch older than [%d]ms", TimeUnit.NANOSECONDS.toMillis(lingerNanos)));
+                    }
+                    if (coalescer != null && coalescer.entries() > 0) {
+                        flushCoalesced();
+                    }
+                    writer.flush();
+                    oldest = 0;
+                }
+                if (refreshNanos > 0 && now - lastRefresh >= refreshNanos) {
+                    long bulkWrites = client.stats().bulkWrites.get();
+                    // refresh only if something was written in the meantime
+                    if (bulkWrites != bulkWritesAtRefresh) {
+                        client.refresh(index);
+                        bulkWritesAtRefresh = bulkWrites;
+                    }
+                    lastRefresh = now;
+                }
+            } catch (Throwable th) {
+                log.error(String.format("Periodic flush of [%s] failed", index), th);
+                timerFailure = th;
+            }
         }
     }
 
-    private void flushBatch() throws IOException {
-        if (log.isDebugEnabled()) {
-            log.debug(String.format("Flushing batch of [%d]", bufferSize));
+    // rethrows the failure of a timer-triggered flush (if any)
+    private void checkTimer() throws IOException {
+        Throwable th = timerFailure;
+        if (th != null) {
+            if (th instanceof IOException) {
+                throw (IOException) th;
+            }
+            if (th instanceof RuntimeException) {
+                throw (RuntimeException) th;
+            }
+            throw new IllegalStateException("Periodic flush failed", th);
+        }
+    }
+
+    // records the time of the oldest pending document
+    private void markPending() {
+        if (lingerNanos <= 0) {
+            return;
+        }
+        long bulkWrites = client.stats().bulkWrites.get();
+        if (bulkWrites != bulkWritesAtPending) {
+            // a batch was sent in the meantime
+            bulkWritesAtPending = bulkWrites;
+            oldest = 0;
         }
+        if (oldest == 0 && hasPending()) {
+            oldest = System.nanoTime();
+        }
+    }
 
-        client.bulk(index, buffer, bufferSize);
-        bufferSize = 0;
-        bufferEntries = 0;
-        executedBulkWrite = true;
+    private boolean hasPending() {
+        return writer.hasPending() || (coalescer != null && coalescer.entries() > 0);
+    }
+
+    private void append(byte[] data) throws IOException {
+        append(data, 0, data.length);
+    }
+
+    private void append(byte[] data, int offset, int length) throws IOException {
+        writer.write(data, offset, length);
+    }
+
+    // moves the coalesced entries into the writer and sends them
+    private void flushCoalesced() throws IOException {
+        for (byte[] data : coalescer.drain()) {
+            append(data);
+        }
+        writer.flush();
     }
 
     @Override
     public void close() throws IOException {
-        if (bufferSize > 0) {
-            flushBatch();
-        }
-        if (requiresRefreshAfterBulk && executedBulkWrite) {
-            // refresh batch
-            client.refresh(index);
+        // the writes stop at the first failure (which is rethrown) but the resources are always released
+        try {
+            try {
+                if (concurrent != null) {
+                    concurrent.close();
+                }
+            } finally {
+                if (timer != null) {
+                    // let a running flush complete
+                    timer.shutdown();
+                    try {
+                        timer.awaitTermination(flushTimeout, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            if (timer != null) {
+                checkTimer();
+            }
+            if (coalescer != null && coalescer.entries() > 0) {
+                flushCoalesced();
+            }
+            writer.finish();
+            if (requiresRefreshAfterBulk && client.stats().bulkWrites.get() > 0) {
+                // refresh batch
+                client.refresh(index);
 
-            if (log.isDebugEnabled()) {
-                log.debug(String.format("Refreshing index [%s]", index));
+                if (log.isDebugEnabled()) {
+                    log.debug(String.format("Refreshing index [%s]", index));
+                }
+            }
+        } finally {
+            try {
+                writer.close();
+            } finally {
+                client.close();
             }
         }
-        client.close();
+    }
+
+    /**
+     * Returns the name of the index written to (the staging index when rebuilding).
+     */
+    public String getIndex() {
+        return writeResource.index;
+    }
+
+    /**
+     * Returns true if the target index/type are resolved per document.
+     */
+    public boolean isDynamicResource() {
+        return bulkTarget.length() == 0;
+    }
+
+    /**
+     * Returns the name of the configured target index (or alias).
+     */
+    public String getAlias() {
+        return resource.index;
+    }
+
+    public boolean indexExists() throws IOException {
+        return client.exists(writeResource.index);
+    }
+
+    public void createIndex(Map<String, Object> settings) throws IOException {
+        client.createIndex(writeResource.index, settings);
+    }
+
+    public Map<String, Object> getIndexSettings() throws IOException {
+        return client.getSettings(writeResource.index);
+    }
+
+    public void updateIndexSettings(Map<String, Object> settings) throws IOException {
+        client.updateSettings(writeResource.index, settings);
+    }
+
+    public void refresh() throws IOException {
+        client.refresh(writeResource.index);
+    }
+
+    public void optimize() throws IOException {
+        client.optimize(writeResource.index);
+    }
+
+    public void deleteIndex() throws IOException {
+        client.deleteIndex(writeResource.index);
     }
 
     public RestClient getRestClient() {
         return client;
     }
 
+    public Stats stats() {
+        return client.stats();
+    }
+
+    /**
+     * Returns the mapping properties of the target resource or null if the resource does not map to exactly one type.
+     *
+     * @return mapping properties (field name to field definition)
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getMapping() throws IOException {
+        Map<String, Object> mapping = client.getMapping(resource.mapping());
+        // unwrap the index/type envelopes until the type definition is found
+        while (mapping != null && !mapping.containsKey("properties")) {
+            if (mapping.size() != 1) {
+                return null;
+            }
+            Object value = mapping.values().iterator().next();
+            mapping = (value instanceof Map ? (Map<String, Object>) value : null);
+        }
+        return (mapping != null ? (Map<String, Object>) mapping.get("properties") : null);
+    }
+
+    /**
+     * Returns the (primaries) statistics of the target index.
+     *
+     * @return index statistics
+     */
+    public Map<String, Object> getIndexStats() throws IOException {
+        return client.getIndexStats(resource.indexStats());
+    }
+
+    /**
+     * Returns the number of documents matching the target resource (index or query).
+     *
+     * @return number of matching documents
+     */
+    public long count() throws IOException {
+        return client.count(resource.count());
+    }
+
+    /**
+     * Returns the node hosting the (started) primary of the given shard of the index written to, or null if there is none.
+     */
+    public Node getPrimaryNode(int shard) throws IOException {
+        Map<String, Node> nodes = client.getNodes();
+        for (List<Map<String, Object>> shardGroup : client.targetShards(writeResource.targetShards())) {
+            for (Map<String, Object> shardData : shardGroup) {
+                Shard candidate = new Shard(shardData);
+                if (candidate.isPrimary() && candidate.getState().isStarted() && candidate.getName().intValue() == shard) {
+                    return nodes.get(candidate.getNode());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the filter (as JSON) of the concrete indices read which are reached only through filtered aliases.
+     * These apply when reading the indices directly (such as per shard).
+     */
+    public Map<String, String> getIndexFilters() throws IOException {
+        Map<String, Object> filters = AliasFilters.resolve(resource.index, client.getAliases(resource.index));
+        Map<String, String> json = new LinkedHashMap<String, String>();
+        for (Entry<String, Object> entry : filters.entrySet()) {
+            json.put(entry.getKey(), mapper.writeValueAsString(entry.getValue()));
+        }
+        return json;
+    }
+
     public Map<Shard, Node> getTargetShards() throws IOException {
         Map<String, Node> nodes = client.getNodes();
 
@@ -181,4 +562,4 @@ public class BufferedRestClient implements Closeable {
         }
         return shards;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.util.StringUtils;
+
+/**
+ * Builds the bulk entries (action line plus source, if any) for the configured write operation.
+ */
+class BulkCommand {
+
+    enum Operation {
+        INDEX("index"), CREATE("create"), UPDATE("update"), UPSERT("update"), DELETE("delete");
+
+        // bulk action name
+        final String action;
+
+        Operation(String action) {
+            this.action = action;
+        }
+
+        static Operation from(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException(String.format("Unknown write operation [%s]; expected one of index, create, update, upsert or delete", name));
+            }
+        }
+    }
+
+    private static final String PLAIN_INDEX = "{\"index\":{}}\n";
+
+    private final ObjectMapper mapper;
+    private final Operation operation;
+    private final MetadataExtractor metadata;
+    // per-document index/type (if any)
+    private final ResourcePattern pattern;
+
+    private final String script;
+    private final String scriptLang;
+    // script param -> document field path
+    private final Map<String, String[]> scriptParams = new LinkedHashMap<String, String[]>();
+    private final int retryOnConflict;
+
+    BulkCommand(Settings settings, ObjectMapper mapper) {
+        this(settings, mapper, null);
+    }
+
+    BulkCommand(Settings settings, ObjectMapper mapper, ResourcePattern pattern) {
+        this.mapper = mapper;
+        this.pattern = pattern;
+        operation = Operation.from(settings.getWriteOperation());
+        metadata = new MetadataExtractor(settings);
+
+        if (operation != Operation.INDEX && operation != Operation.CREATE && !metadata.hasId()) {
+            throw new IllegalArgumentException(String.format("Write operation [%s] requires the document id; specify [%s]",
+                    settings.getWriteOperation(), ConfigurationOptions.ES_MAPPING_ID));
+        }
+
+        script = settings.getUpdateScript();
+        scriptLang = settings.getUpdateScriptLang();
+        String params = settings.getUpdateScriptParams();
+        if (StringUtils.hasText(params)) {
+            for (String param : StringUtils.tokenize(params, ",")) {
+                int separator = param.indexOf(":");
+                if (separator <= 0) {
+                    throw new IllegalArgumentException(String.format("Invalid script parameter [%s]; expected param:field", param));
+                }
+                scriptParams.put(param.substring(0, separator).trim(), param.substring(separator + 1).trim().split("\\."));
+            }
+        }
+        retryOnConflict = settings.getUpdateRetryOnConflict();
+    }
+
+    Operation operation() {
+        return operation;
+    }
+
+    boolean hasId() {
+        return metadata.hasId();
+    }
+
+    /**
+     * Returns the key identifying the target document (index, type, id, routing and parent).
+     */
+    String key(Map<String, Object> document) {
+        StringBuilder sb = new StringBuilder();
+        if (pattern != null) {
+            String[] target = pattern.resolve(document);
+            sb.append(target[0]).append('/').append(target[1]).append('\0');
+        }
+        for (Map.Entry<String, Object> entry : metadata.extract(document).entrySet()) {
+            // versions differ between writes of the same document
+            if (!entry.getKey().startsWith("_version")) {
+                sb.append(entry.getValue()).append('\0');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a copy of the merged document with the metadata fields of the current one (so that mergers do not
+     * alter the document identity).
+     */
+    Map<String, Object> withMetadata(Map<String, Object> merged, Map<String, Object> current) {
+        return metadata.copy(current, merged);
+    }
+
+    /**
+     * Returns the bulk entry (new line terminated) for the given object.
+     *
+     * @param object object passed by the user
+     * @param document object converted from Writable (if needed)
+     */
+    String entry(Object object, Object document) throws IOException {
+        StringBuilder sb;
+
+        // common case - no metadata, the source is written as is
+        if (operation == Operation.INDEX && metadata.isEmpty() && pattern == null) {
+            sb = new StringBuilder(PLAIN_INDEX);
+            //(Chris) allow adding plain json string to the index
+            sb.append(object instanceof String ? document : mapper.writeValueAsString(document));
+            return sb.append("\n").toString();
+        }
+
+        Map<String, Object> doc = document(document);
+        Map<String, Object> header = new LinkedHashMap<String, Object>();
+        if (pattern != null) {
+            String[] target = pattern.resolve(doc);
+            header.put("_index", target[0]);
+            header.put("_type", target[1]);
+        }
+        header.putAll(metadata.extract(doc));
+        if (retryOnConflict > 0 && operation.action.equals("update")) {
+            header.put("_retry_on_conflict", retryOnConflict);
+        }
+        sb = new StringBuilder(mapper.writeValueAsString(Collections.singletonMap(operation.action, header)));
+        sb.append("\n");
+
+        if (operation == Operation.DELETE) {
+            return sb.toString();
+        }
+
+        Map<String, Object> source = (metadata.removeFromSource() ? metadata.remove(doc) : doc);
+
+        switch (operation) {
+        case UPDATE:
+            sb.append(mapper.writeValueAsString(StringUtils.hasText(script) ? script(doc) : Collections.singletonMap("doc", source)));
+            break;
+        case UPSERT:
+            Map<String, Object> upsert;
+            if (StringUtils.hasText(script)) {
+                upsert = script(doc);
+                upsert.put("upsert", source);
+            }
+            else {
+                upsert = new LinkedHashMap<String, Object>();
+                upsert.put("doc", source);
+                upsert.put("doc_as_upsert", Boolean.TRUE);
+            }
+            sb.append(mapper.writeValueAsString(upsert));
+            break;
+        default:
+            // index/create
+            sb.append(object instanceof String && source == doc ? document : mapper.writeValueAsString(source));
+        }
+
+        return sb.append("\n").toString();
+    }
+
+    // params are looked up in the whole document (including the metadata fields)
+    private Map<String, Object> script(Map<String, Object> document) {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("script", script);
+        if (StringUtils.hasText(scriptLang)) {
+            body.put("lang", scriptLang);
+        }
+        if (!scriptParams.isEmpty()) {
+            Map<String, Object> params = new LinkedHashMap<String, Object>();
+            for (Map.Entry<String, String[]> entry : scriptParams.entrySet()) {
+                params.put(entry.getKey(), MetadataExtractor.lookup(document, entry.getValue()));
+            }
+            body.put("params", params);
+        }
+        return body;
+    }
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> document(Object document) throws IOException {
+        if (document instanceof String) {
+            // plain json - needs to be parsed to extract the metadata
+            return mapper.readValue((String) document, Map.class);
+        }
+        if (document instanceof Map) {
+            return (Map<String, Object>) document;
+        }
+        throw new IllegalArgumentException(String.format("Cannot extract metadata from non-map document [%s]", document));
+    }
+}
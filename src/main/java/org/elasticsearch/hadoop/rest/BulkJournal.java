@@ -0,0 +1,209 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Local write-ahead journal for bulk batches that could not be sent. Batches are appended to memory-mapped segment
+ * files and consumed in order (FIFO); fully consumed segments are deleted. The disk usage is capped.
+ *
+ * <p/>Each entry holds the bulk payload along with the offsets of its documents (needed for retrying rejected
+ * documents): <tt>[int length][int entries][int offset]*[byte payload]*</tt>.
+ */
+class BulkJournal implements Closeable {
+
+    private static final Log log = LogFactory.getLog(BulkJournal.class);
+
+    static class Batch {
+        final byte[] data;
+        final int[] offsets;
+
+        Batch(byte[] data, int[] offsets) {
+            this.data = data;
+            this.offsets = offsets;
+        }
+    }
+
+    private static class Segment {
+        final File file;
+        final MappedByteBuffer map;
+        int writePosition = 0;
+        int readPosition = 0;
+
+        Segment(File file, int size) throws IOException {
+            this.file = file;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(size);
+                // the mapping remains valid after the channel is closed
+                map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                raf.close();
+            }
+        }
+
+        int capacity() {
+            return map.capacity();
+        }
+    }
+
+    private final File dir;
+    private final int segmentSize;
+    private final long maxSize;
+
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+    private long diskSize = 0;
+    private int batches = 0;
+    private int segmentCounter = 0;
+
+    BulkJournal(File dir, int segmentSize, long maxSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+    }
+
+    boolean isEmpty() {
+        return batches == 0;
+    }
+
+    int batches() {
+        return batches;
+    }
+
+    long diskSize() {
+        return diskSize;
+    }
+
+    /**
+     * Appends the given batch to the journal.
+     *
+     * @return true if the batch was appended, false if there is not enough disk space left (under the configured cap)
+     */
+    boolean append(byte[] buffer, int length, int[] offsets, int entries) throws IOException {
+        int size = 8 + 4 * entries + length;
+
+        Segment tail = (segments.isEmpty() ? null : segments.getLast());
+        if (tail == null || tail.capacity() - tail.writePosition < size) {
+            int capacity = Math.max(segmentSize, size);
+            if (diskSize + capacity > maxSize) {
+                return false;
+            }
+            tail = newSegment(capacity);
+        }
+
+        MappedByteBuffer map = tail.map;
+        map.position(tail.writePosition);
+        map.putInt(length);
+        map.putInt(entries);
+        for (int i = 0; i < entries; i++) {
+            map.putInt(offsets[i]);
+        }
+        map.put(buffer, 0, length);
+        tail.writePosition = map.position();
+        batches++;
+        return true;
+    }
+
+    private Segment newSegment(int capacity) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException(String.format("Cannot create journal directory [%s]", dir.getAbsolutePath()));
+        }
+        File file = new File(dir, String.format("bulk-%05d.journal", segmentCounter++));
+        Segment segment = new Segment(file, capacity);
+        segments.add(segment);
+        diskSize += capacity;
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Created journal segment [%s] of [%d] bytes", file, capacity));
+        }
+        return segment;
+    }
+
+    /**
+     * Returns (without removing it) the oldest batch or null if the journal is empty.
+     */
+    Batch peek() {
+        if (batches == 0) {
+            return null;
+        }
+        Segment head = segments.getFirst();
+        MappedByteBuffer map = head.map;
+        map.position(head.readPosition);
+        int length = map.getInt();
+        int entries = map.getInt();
+        int[] offsets = new int[entries];
+        for (int i = 0; i < entries; i++) {
+            offsets[i] = map.getInt();
+        }
+        byte[] data = new byte[length];
+        map.get(data);
+        return new Batch(data, offsets);
+    }
+
+    /**
+     * Removes the oldest batch.
+     */
+    void remove() {
+        if (batches == 0) {
+            return;
+        }
+        Segment head = segments.getFirst();
+        MappedByteBuffer map = head.map;
+        map.position(head.readPosition);
+        int length = map.getInt();
+        int entries = map.getInt();
+        head.readPosition += 8 + 4 * entries + length;
+        batches--;
+
+        // fully consumed
+        if (head.readPosition == head.writePosition) {
+            if (segments.size() > 1 || batches == 0) {
+                segments.removeFirst();
+                delete(head);
+            }
+        }
+    }
+
+    private void delete(Segment segment) {
+        diskSize -= segment.capacity();
+        if (!segment.file.delete()) {
+            // typically the mapping is still in use (Windows) - try again on exit
+            segment.file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Discards the journal, deleting its files.
+     */
+    @Override
+    public void close() {
+        for (Segment segment : segments) {
+            delete(segment);
+        }
+        segments.clear();
+        batches = 0;
+        dir.delete();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.IOException;
+
+/**
+ * Write path of a {@link BufferedRestClient} - receives the serialized bulk entries and sends them to ElasticSearch
+ * (in buffered batches, streamed or through the JVM-wide shared writer).
+ * <p/>
+ * Not thread-safe - the client serializes the calls.
+ */
+interface BulkWriter {
+
+    /**
+     * Appends the given (serialized) bulk entry, sending the pending entries first if needed.
+     */
+    void write(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Sends the pending entries.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Sends the pending entries and waits for all the entries written so far to be acknowledged.
+     */
+    void finish() throws IOException;
+
+    /**
+     * Returns true if some entries are not sent (or acknowledged) yet.
+     */
+    boolean hasPending();
+
+    /**
+     * Returns the size (in bytes) of a batch.
+     */
+    int batchSize();
+
+    /**
+     * Releases the resources held (buffers, threads) whether the entries were sent or not.
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets several threads write through the same {@link BufferedRestClient}. Each thread appends its (serialized) entries into a
+ * small buffer of its own; full buffers are handed off through a lock-free queue to a single flushing thread which merges them
+ * into the bulk requests. As the queue is consumed in order by one thread, the entries of each writing thread are sent in
+ * the order they were written.
+ * <p/>
+ * {@link #close()} needs to be called once all the writing threads are done.
+ */
+class ConcurrentAppender implements Closeable {
+
+    /** Receives the entries (on the flushing thread). */
+    interface Sink {
+        void append(byte[] data, int offset, int length) throws IOException;
+    }
+
+    private static class Chunk {
+        final byte[] data;
+        int size = 0;
+        int entries = 0;
+        int[] offsets = new int[16];
+
+        Chunk(int capacity) {
+            data = new byte[capacity];
+        }
+
+        boolean fits(byte[] entry) {
+            return size + entry.length <= data.length;
+        }
+
+        void add(byte[] entry) {
+            if (entries == offsets.length) {
+                int[] o = new int[entries * 2];
+                System.arraycopy(offsets, 0, o, 0, entries);
+                offsets = o;
+            }
+            offsets[entries++] = size;
+            System.arraycopy(entry, 0, data, size, entry.length);
+            size += entry.length;
+        }
+    }
+
+    // the chunk currently filled by a thread
+    private static class Slot {
+        volatile Chunk chunk;
+    }
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // chunks handed off but not yet consumed
+    private static final int MAX_QUEUED = 32;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Sink sink;
+    private final MemoryBudget memory;
+    private final Queue<Chunk> queue = new ConcurrentLinkedQueue<Chunk>();
+    private final Queue<Chunk> free = new ConcurrentLinkedQueue<Chunk>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    private final Queue<Slot> slots = new ConcurrentLinkedQueue<Slot>();
+    private final ThreadLocal<Slot> local = new ThreadLocal<Slot>() {
+        @Override
+        protected Slot initialValue() {
+            Slot slot = new Slot();
+            slots.add(slot);
+            return slot;
+        }
+    };
+
+    private final Thread flusher;
+    private volatile boolean closed = false;
+
+    ConcurrentAppender(Sink sink, MemoryBudget memory) {
+        this.sink = sink;
+        this.memory = memory;
+        flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "es-bulk-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Appends the given entry on behalf of the calling thread. Blocks while too many chunks are waiting to be flushed.
+     */
+    void add(byte[] entry) throws IOException {
+        checkFailure();
+
+        Slot slot = local.get();
+        if (entry.length > CHUNK_SIZE) {
+            // hand off the current chunk first to preserve the order
+            handOff(slot.chunk);
+            slot.chunk = null;
+            Chunk large = new Chunk(entry.length);
+            large.add(entry);
+            handOff(large);
+            return;
+        }
+
+        if (slot.chunk != null && !slot.chunk.fits(entry)) {
+            handOff(slot.chunk);
+            slot.chunk = null;
+        }
+        if (slot.chunk == null) {
+            slot.chunk = take();
+        }
+        slot.chunk.add(entry);
+    }
+
+    private Chunk take() {
+        Chunk chunk = free.poll();
+        if (chunk == null) {
+            memory.force(CHUNK_SIZE);
+            allocated.incrementAndGet();
+            chunk = new Chunk(CHUNK_SIZE);
+        }
+        return chunk;
+    }
+
+    private void handOff(Chunk chunk) throws IOException {
+        if (chunk == null || chunk.entries == 0) {
+            return;
+        }
+        while (queued.get() >= MAX_QUEUED) {
+            checkFailure();
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+        queued.incrementAndGet();
+        queue.add(chunk);
+        LockSupport.unpark(flusher);
+    }
+
+    private void consume() {
+        while (true) {
+            Chunk chunk = queue.poll();
+            if (chunk == null) {
+                if (closed && queue.isEmpty()) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            queued.decrementAndGet();
+
+            if (failure.get() == null) {
+                try {
+                    for (int i = 0; i < chunk.entries; i++) {
+                        int end = (i + 1 < chunk.entries ? chunk.offsets[i + 1] : chunk.size);
+                        sink.append(chunk.data, chunk.offsets[i], end - chunk.offsets[i]);
+                    }
+                } catch (Throwable th) {
+                    failure.compareAndSet(null, th);
+                }
+            }
+
+            if (chunk.data.length == CHUNK_SIZE) {
+                chunk.size = 0;
+                chunk.entries = 0;
+                free.add(chunk);
+            }
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable th = failure.get();
+        if (th != null) {
+            if (th instanceof IOException) {
+                throw (IOException) th;
+            }
+            if (th instanceof RuntimeException) {
+                throw (RuntimeException) th;
+            }
+            throw new IllegalStateException("Concurrent bulk write failed", th);
+        }
+    }
+
+    /**
+     * Hands off the pending chunks of all threads and waits for them to be consumed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            for (Slot slot : slots) {
+                handOff(slot.chunk);
+                slot.chunk = null;
+            }
+        } finally {
+            closed = true;
+            LockSupport.unpark(flusher);
+            try {
+                flusher.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for the concurrent writes to be flushed");
+            } finally {
+                memory.release((long) allocated.get() * CHUNK_SIZE);
+            }
+        }
+        checkFailure();
+    }
+}
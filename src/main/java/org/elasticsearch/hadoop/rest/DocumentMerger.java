@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.Map;
+
+/**
+ * Merges two writes to the same document (same id) into one, when coalescing writes inside a batch. Implementations
+ * need a public no-arg constructor.
+ */
+public interface DocumentMerger {
+
+    /**
+     * Merges the given documents.
+     *
+     * @param previous document buffered so far
+     * @param current document being written
+     * @return the merged document (can be a new instance or one of the arguments)
+     */
+    Map<String, Object> merge(Map<String, Object> previous, Map<String, Object> current);
+}
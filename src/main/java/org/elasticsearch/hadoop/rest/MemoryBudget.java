@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import org.elasticsearch.hadoop.cfg.Settings;
+
+/**
+ * JVM-wide accountant of the memory held by the connector buffers (bulk batches, streaming chunks, shared buffers and
+ * scroll pages). The budget is a fraction of the max heap; once it is used up, buffers are shrunk (bulk batches, streaming
+ * windows) or producers block until a buffer is recycled (shared buffers) instead of running out of heap. Without a budget the memory is
+ * only tracked (for the high-water mark).
+ */
+final class MemoryBudget {
+
+    private static final MemoryBudget INSTANCE = new MemoryBudget(Runtime.getRuntime().maxMemory());
+
+    private final long maxMemory;
+    private long limit = Long.MAX_VALUE;
+    private long used = 0;
+    private long highWater = 0;
+
+    MemoryBudget(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Returns the JVM-wide budget, applying the fraction (if any) from the given settings.
+     */
+    static MemoryBudget of(Settings settings) {
+        float fraction = settings.getMemoryBudget();
+        if (fraction > 0) {
+            INSTANCE.limit(fraction);
+        }
+        return INSTANCE;
+    }
+
+    synchronized void limit(float fraction) {
+        limit = (long) (maxMemory * Math.min(fraction, 1f));
+        notifyAll();
+    }
+
+    /**
+     * Reserves up to the requested amount - less (but not less than the minimum) if the budget is running out. Never blocks.
+     *
+     * @return the amount reserved
+     */
+    synchronized int grant(int requested, int minimum) {
+        long available = Math.max(0, limit - used);
+        int granted = (int) Math.min(requested, Math.max(Math.min(minimum, requested), available));
+        add(granted);
+        return granted;
+    }
+
+    /**
+     * Reserves the given amount if it fits within the budget.
+     */
+    synchronized boolean tryReserve(long bytes) {
+        if (used + bytes > limit) {
+            return false;
+        }
+        add(bytes);
+        return true;
+    }
+
+    /**
+     * Accounts for memory that is needed regardless of the budget (such as a scroll page already received).
+     */
+    synchronized void force(long bytes) {
+        add(bytes);
+    }
+
+    synchronized void release(long bytes) {
+        used = Math.max(0, used - bytes);
+        notifyAll();
+    }
+
+    private void add(long bytes) {
+        used += bytes;
+        if (used > highWater) {
+            highWater = used;
+        }
+    }
+
+    synchronized long used() {
+        return used;
+    }
+
+    synchronized long highWater() {
+        return highWater;
+    }
+
+    synchronized long limit() {
+        return limit;
+    }
+
+    /**
+     * Returns a one-line summary of the memory usage (in bytes).
+     */
+    synchronized String summary() {
+        StringBuilder sb = new StringBuilder("memory[used=").append(used).append(",peak=").append(highWater);
+        if (limit < Long.MAX_VALUE) {
+            sb.append(",limit=").append(limit);
+        }
+        return sb.append("]").toString();
+    }
+}
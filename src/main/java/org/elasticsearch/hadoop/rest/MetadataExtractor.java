@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.util.StringUtils;
+
+/**
+ * Extracts the document metadata (id, routing, version and parent) from the configured document fields so it can be
+ * passed in the bulk action line. Deterministic ids make the writes idempotent - retried or speculative tasks overwrite
+ * the same documents instead of duplicating them.
+ */
+class MetadataExtractor {
+
+    // bulk metadata -> document field path
+    private final Map<String, String[]> fields = new LinkedHashMap<String, String[]>();
+    private final boolean remove;
+
+    MetadataExtractor(Settings settings) {
+        add("_id", settings.getMappingId());
+        add("_routing", settings.getMappingRouting());
+        add("_parent", settings.getMappingParent());
+        add("_version", settings.getMappingVersion());
+        remove = settings.getMappingMetadataRemove();
+    }
+
+    private void add(String metadata, String field) {
+        if (StringUtils.hasText(field)) {
+            fields.put(metadata, field.trim().split("\\."));
+        }
+    }
+
+    boolean isEmpty() {
+        return fields.isEmpty();
+    }
+
+    boolean removeFromSource() {
+        return remove && !fields.isEmpty();
+    }
+
+    /**
+     * Returns the bulk action metadata for the given document.
+     */
+    Map<String, Object> extract(Map<String, Object> document) {
+        Map<String, Object> metadata = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, String[]> entry : fields.entrySet()) {
+            String name = entry.getKey();
+            Object value = lookup(document, entry.getValue());
+            if (value == null) {
+                throw new IllegalArgumentException(String.format("Cannot find %s field [%s] in document [%s]", name,
+                        StringUtils.concatenate(entry.getValue(), "."), document));
+            }
+            if ("_version".equals(name)) {
+                metadata.put(name, Long.valueOf(value.toString()));
+                metadata.put("_version_type", "external");
+            }
+            else {
+                metadata.put(name, value.toString());
+            }
+        }
+        return metadata;
+    }
+
+    boolean hasId() {
+        return fields.containsKey("_id");
+    }
+
+    @SuppressWarnings("unchecked")
+    static Object lookup(Map<String, Object> document, String[] path) {
+        Object value = document;
+        for (String segment : path) {
+            if (!(value instanceof Map)) {
+                return null;
+            }
+            value = ((Map<String, Object>) value).get(segment);
+        }
+        return value;
+    }
+
+    /**
+     * Returns a copy of the given document without the metadata fields. The document itself is left untouched.
+     */
+    Map<String, Object> remove(Map<String, Object> document) {
+        Map<String, Object> copy = new LinkedHashMap<String, Object>(document);
+        for (String[] path : fields.values()) {
+            remove(copy, path, 0);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the target document with the metadata fields (if any) taken from the source document.
+     */
+    Map<String, Object> copy(Map<String, Object> source, Map<String, Object> target) {
+        Map<String, Object> copy = new LinkedHashMap<String, Object>(target);
+        for (String[] path : fields.values()) {
+            Object value = lookup(source, path);
+            if (value != null) {
+                set(copy, path, 0, value);
+            }
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void set(Map<String, Object> document, String[] path, int index, Object value) {
+        if (index == path.length - 1) {
+            document.put(path[index], value);
+            return;
+        }
+        Object nested = document.get(path[index]);
+        Map<String, Object> copy = (nested instanceof Map ? new LinkedHashMap<String, Object>((Map<String, Object>) nested) : new LinkedHashMap<String, Object>());
+        document.put(path[index], copy);
+        set(copy, path, index + 1, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void remove(Map<String, Object> document, String[] path, int index) {
+        if (index == path.length - 1) {
+            document.remove(path[index]);
+            return;
+        }
+        Object nested = document.get(path[index]);
+        if (nested instanceof Map) {
+            // copy the nested maps on the way down
+            Map<String, Object> copy = new LinkedHashMap<String, Object>((Map<String, Object>) nested);
+            document.put(path[index], copy);
+            remove(copy, path, index + 1);
+        }
+    }
+}
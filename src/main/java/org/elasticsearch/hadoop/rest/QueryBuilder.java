@@ -16,6 +16,14 @@
 package org.elasticsearch.hadoop.rest;
 
 import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
 
 import org.elasticsearch.hadoop.util.Assert;
 import org.elasticsearch.hadoop.util.StringUtils;
@@ -29,6 +37,8 @@ public class QueryBuilder {
     private long size = 50;
     private String shard;
     private String node;
+    private String index;
+    private String filter;
 
     private QueryBuilder(String query) {
         Assert.hasText(query, "Invalid query");
@@ -62,9 +72,35 @@ public class QueryBuilder {
         return this;
     }
 
+    /**
+     * Reads the given concrete index instead of the indices (or aliases) of the query - needed when targeting
+     * a shard since shard numbers are per index.
+     */
+    public QueryBuilder index(String index) {
+        Assert.hasText(index, "Invalid index");
+        this.index = index;
+        return this;
+    }
+
+    /**
+     * Applies the given filter (as JSON) on top of the query - used for the filter of the alias an index was reached through.
+     */
+    public QueryBuilder filter(String filter) {
+        this.filter = filter;
+        return this;
+    }
+
     private String assemble() {
         StringBuilder sb = new StringBuilder();
-        sb.append(query);
+        String q = query;
+        if (StringUtils.hasText(index)) {
+            int slash = q.indexOf("/");
+            q = (slash >= 0 ? index + q.substring(slash) : index);
+        }
+        if (StringUtils.hasText(filter)) {
+            q = applyFilter(q, filter);
+        }
+        sb.append(q);
         sb.append("&search_type=scan&scroll=");
         sb.append(time.minutes());
         sb.append("m&size=");
@@ -91,10 +127,47 @@ public class QueryBuilder {
         return sb.toString();
     }
 
+    // adds the filter (as a post filter) to the request body passed through the source parameter
+    @SuppressWarnings("unchecked")
+    static String applyFilter(String query, String filter) {
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            Object parsedFilter = mapper.readValue(filter, Object.class);
+
+            int params = query.indexOf("?");
+            String path = (params >= 0 ? query.substring(0, params) : query);
+            StringBuilder sb = new StringBuilder(path).append("?");
+
+            Map<String, Object> source = new LinkedHashMap<String, Object>();
+            if (params >= 0) {
+                for (String param : query.substring(params + 1).split("&")) {
+                    if (param.startsWith("source=")) {
+                        source = mapper.readValue(URLDecoder.decode(param.substring("source=".length()), "UTF-8"), Map.class);
+                    }
+                    else if (param.length() > 0) {
+                        sb.append(param).append("&");
+                    }
+                }
+            }
+
+            Object existing = source.get("filter");
+            source.put("filter", existing == null ? parsedFilter : Collections.singletonMap("and", Arrays.asList(existing, parsedFilter)));
+            sb.append("source=").append(URLEncoder.encode(mapper.writeValueAsString(source), "UTF-8"));
+            return sb.toString();
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Cannot apply filter [" + filter + "] to query [" + query + "]", ex);
+        }
+    }
+
     public ScrollQuery build(BufferedRestClient client) {
+        return build(client.getRestClient());
+    }
+
+    public ScrollQuery build(RestClient client) {
         String scrollUri = assemble();
         try {
-            return client.scan(scrollUri);
+            String[] scrollInfo = client.scan(scrollUri);
+            return new ScrollQuery(client, scrollInfo[0], Long.parseLong(scrollInfo[1]));
         } catch (IOException ex) {
             throw new IllegalStateException("Cannot build scroll [" + scrollUri + "]", ex);
         }
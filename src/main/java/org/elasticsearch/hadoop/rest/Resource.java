@@ -18,25 +18,36 @@ package org.elasticsearch.hadoop.rest;
 
 
 /**
- * ElasticSearch Resource (index or query).
+ * ElasticSearch Resource (index or query). The index part can be a single index, an alias, a wildcard expression
+ * (such as <tt>logs-2013.06.*</tt>) or a comma-separated list of any of these.
  */
 class Resource {
 
     final StringBuilder resource;
     // cleaned up index with trailing "/"
     final StringBuilder root;
+    // index name (without type)
+    final String index;
 
     Resource(String resource) {
         this.resource = new StringBuilder(resource);
-        int index = resource.lastIndexOf("_");
-        if (index <= 0) {
-            index = resource.length();
+        String localRoot = resource;
+        // ignore the parameters (which can contain anything)
+        int params = localRoot.indexOf("?");
+        if (params >= 0) {
+            localRoot = localRoot.substring(0, params);
+        }
+        // and the endpoint (such as _search) - index and type names cannot start with '_'
+        int slash = localRoot.lastIndexOf("/");
+        if (slash >= 0 && localRoot.startsWith("_", slash + 1)) {
+            localRoot = localRoot.substring(0, slash);
         }
-        String localRoot = resource.substring(0, index);
         if (!localRoot.endsWith("/")) {
             localRoot = localRoot + "/";
         }
         root = new StringBuilder(localRoot);
+        slash = localRoot.indexOf("/");
+        this.index = (slash > 0 ? localRoot.substring(0, slash) : localRoot);
     }
 
     String bulkIndexing() {
@@ -47,5 +58,22 @@ class Resource {
     String targetShards() {
         return root + "_search_shards";
     }
-}
 
+    String mapping() {
+        return root + "_mapping";
+    }
+
+    String count() {
+        // reuse the query parameters (if any)
+        int params = resource.indexOf("?");
+        return root + "_count" + (params >= 0 ? resource.substring(params) : "");
+    }
+
+    String indexStats() {
+        return index + "/_stats";
+    }
+
+    String aliases() {
+        return index + "/_aliases";
+    }
+}
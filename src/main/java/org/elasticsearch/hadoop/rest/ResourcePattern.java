@@ -0,0 +1,241 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.codehaus.jackson.map.util.StdDateFormat;
+import org.elasticsearch.hadoop.util.StringUtils;
+
+/**
+ * Write resource resolved per document, such as <tt>logs-{@timestamp:yyyy.MM.dd}/{type}</tt>. Each <tt>{field}</tt> is
+ * replaced by the value of the document field (nested fields are specified through '.'); an optional date format
+ * (<tt>{field:format}</tt>) formats the field value (date, ISO8601 string or millis) in UTC.
+ *
+ * <p/>Thread-safe - {@link #resolve(Map)} is synchronized (the date formats and the cache are shared) so the writers of a
+ * {@link BufferedRestClient} can resolve documents concurrently.
+ */
+class ResourcePattern {
+
+    private static final int CACHE_SIZE = 128;
+
+    private static class Segment {
+        final String literal;
+        final String[] field;
+        final SimpleDateFormat format;
+
+        Segment(String literal) {
+            this.literal = literal;
+            this.field = null;
+            this.format = null;
+        }
+
+        Segment(String field, String format) {
+            this.literal = null;
+            this.field = field.split("\\.");
+            if (format != null) {
+                this.format = new SimpleDateFormat(format);
+                this.format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            }
+            else {
+                this.format = null;
+            }
+        }
+    }
+
+    private final String pattern;
+    private final List<Segment> index;
+    private final List<Segment> type;
+    private final int fields;
+    // ISO8601 (lenient on the millis and time zone)
+    private final StdDateFormat isoFormat = new StdDateFormat();
+
+    // raw field values -> resolved index/type (avoids formatting the same values over and over)
+    private final Map<String, String[]> cache = new LinkedHashMap<String, String[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    static boolean isPattern(String resource) {
+        // queries (which can contain json) are not patterns
+        if (resource == null || resource.indexOf('?') >= 0 || resource.indexOf('"') >= 0) {
+            return false;
+        }
+        int start = resource.indexOf("{");
+        return start >= 0 && resource.indexOf("}", start) > start;
+    }
+
+    ResourcePattern(String pattern) {
+        this.pattern = pattern;
+
+        // split index and type on the first '/' outside a placeholder
+        int split = -1;
+        boolean inside = false;
+        for (int i = 0; i < pattern.length() && split < 0; i++) {
+            char c = pattern.charAt(i);
+            if (c == '{') {
+                inside = true;
+            }
+            else if (c == '}') {
+                inside = false;
+            }
+            else if (c == '/' && !inside) {
+                split = i;
+            }
+        }
+        if (split <= 0 || split == pattern.length() - 1) {
+            throw new IllegalArgumentException(String.format("Invalid resource pattern [%s]; expected index/type", pattern));
+        }
+
+        index = parse(pattern.substring(0, split));
+        type = parse(pattern.substring(split + 1));
+
+        int count = 0;
+        for (Segment segment : index) {
+            count += (segment.field != null ? 1 : 0);
+        }
+        for (Segment segment : type) {
+            count += (segment.field != null ? 1 : 0);
+        }
+        fields = count;
+    }
+
+    private List<Segment> parse(String string) {
+        List<Segment> segments = new ArrayList<Segment>();
+        int position = 0;
+        while (position < string.length()) {
+            int start = string.indexOf("{", position);
+            if (start < 0) {
+                segments.add(new Segment(string.substring(position)));
+                break;
+            }
+            int end = string.indexOf("}", start);
+            if (end < 0) {
+                throw new IllegalArgumentException(String.format("Invalid resource pattern [%s]; unclosed '{'", pattern));
+            }
+            if (start > position) {
+                segments.add(new Segment(string.substring(position, start)));
+            }
+            String placeholder = string.substring(start + 1, end).trim();
+            int colon = placeholder.indexOf(":");
+            segments.add(colon > 0 ? new Segment(placeholder.substring(0, colon).trim(), placeholder.substring(colon + 1)) : new Segment(placeholder, null));
+            position = end + 1;
+        }
+        return segments;
+    }
+
+    /**
+     * Returns the index and type for the given document. Synchronized as the cache and the date formats are shared by the
+     * (concurrent) writing threads.
+     */
+    synchronized String[] resolve(Map<String, Object> document) {
+        Object[] values = new Object[fields];
+        StringBuilder key = new StringBuilder();
+        int i = 0;
+        i = lookup(index, document, values, i, key);
+        lookup(type, document, values, i, key);
+
+        String cacheKey = key.toString();
+        String[] resolved = cache.get(cacheKey);
+        if (resolved == null) {
+            StringBuilder sb = new StringBuilder();
+            i = format(index, values, 0, sb);
+            String idx = sb.toString();
+            sb.setLength(0);
+            format(type, values, i, sb);
+            resolved = new String[] { idx, sb.toString() };
+            cache.put(cacheKey, resolved);
+        }
+        return resolved;
+    }
+
+    private int lookup(List<Segment> segments, Map<String, Object> document, Object[] values, int i, StringBuilder key) {
+        for (Segment segment : segments) {
+            if (segment.field != null) {
+                Object value = MetadataExtractor.lookup(document, segment.field);
+                if (value == null) {
+                    throw new IllegalArgumentException(String.format("Cannot resolve resource [%s]; field [%s] not found in document [%s]",
+                            pattern, StringUtils.concatenate(segment.field, "."), document));
+                }
+                values[i++] = value;
+                key.append(value).append('\0');
+            }
+        }
+        return i;
+    }
+
+    private int format(List<Segment> segments, Object[] values, int i, StringBuilder sb) {
+        for (Segment segment : segments) {
+            if (segment.field == null) {
+                sb.append(segment.literal);
+            }
+            else {
+                Object value = values[i++];
+                sb.append(segment.format != null ? segment.format.format(date(value)) : value.toString());
+            }
+        }
+        return i;
+    }
+
+    private Date date(Object value) {
+        if (value instanceof Date) {
+            return (Date) value;
+        }
+        if (value instanceof Number) {
+            return new Date(((Number) value).longValue());
+        }
+        String string = value.toString();
+        try {
+            return isoFormat.parse(string);
+        } catch (ParseException ex) {
+            try {
+                return new Date(Long.parseLong(string));
+            } catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException(String.format("Cannot parse date [%s] for resource [%s]", string, pattern));
+            }
+        }
+    }
+
+    /**
+     * Returns the pattern with all placeholders replaced by wildcards (such as <tt>logs-*&#47;*</tt>), used for the
+     * index-level operations (like refresh).
+     */
+    String wildcard() {
+        StringBuilder sb = new StringBuilder();
+        for (Segment segment : index) {
+            sb.append(segment.field != null ? "*" : segment.literal);
+        }
+        sb.append("/");
+        for (Segment segment : type) {
+            sb.append(segment.field != null ? "*" : segment.literal);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -17,6 +17,8 @@ package org.elasticsearch.hadoop.rest;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,12 +33,16 @@ import org.apache.commons.httpclient.URI;
 import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.HeadMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.httpclient.params.HttpClientParams;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.rest.Timings.Phase;
 import org.elasticsearch.hadoop.util.StringUtils;
 import org.elasticsearch.hadoop.util.unit.TimeValue;
 
@@ -47,9 +53,16 @@ public class RestClient implements Closeable {
 
     private static final Log log = LogFactory.getLog(RestClient.class);
 
+    private static final byte[] ERROR = "\"error\"".getBytes(StringUtils.UTF_8);
+    private static final byte[] TOOK = "\"took\":".getBytes(StringUtils.UTF_8);
+
     private HttpClient client;
     private ObjectMapper mapper = new ObjectMapper();
     private TimeValue scrollKeepAlive;
+    private final Stats stats = new Stats();
+    private final Timings timings = new Timings();
+    private final MemoryBudget memory;
+    private boolean closed = false;
 
     public RestClient(Settings settings) {
         HttpClientParams params = new HttpClientParams();
@@ -66,6 +79,8 @@ public class RestClient implements Closeable {
         client.setHostConfiguration(hostConfig);
 
         scrollKeepAlive = TimeValue.timeValueMillis(settings.getScrollKeepAlive());
+        memory = MemoryBudget.of(settings);
+        Timings.register(timings);
     }
 
     @SuppressWarnings("unchecked")
@@ -75,18 +90,130 @@ public class RestClient implements Closeable {
         return (T) (string != null ? map.get(string) : map);
     }
 
-    public void bulk(String index, byte[] buffer, int bufferSize) {
+    /**
+     * Executes a bulk request. Returns the bulk items (in the same order as the request entries) if any of them failed, or an empty list otherwise.
+     */
+    public List<Map<String, Object>> bulk(String index, byte[] buffer, int bufferSize) throws IOException {
+        return bulk(index, new JsonByteArrayRequestEntity(buffer, bufferSize));
+    }
+
+    /**
+     * Executes a bulk request with the given content. Entities of unknown length are sent using chunked transfer encoding
+     * (and their size is not accounted for in the stats).
+     */
+    @SuppressWarnings("unchecked")
+    List<Map<String, Object>> bulk(String index, RequestEntity entity) throws IOException {
         PostMethod post = new PostMethod(index + "/_bulk");
-        post.setRequestEntity(new JsonByteArrayRequestEntity(buffer, bufferSize));
-        post.setContentChunked(false);
-        execute(post);
+        post.setRequestEntity(entity);
+        long length = entity.getContentLength();
+        post.setContentChunked(length < 0);
+
+        long start = System.currentTimeMillis();
+        byte[] content = execute(post);
+        stats.bulkTime.addAndGet(System.currentTimeMillis() - start);
+        stats.bulkWrites.incrementAndGet();
+        if (length > 0) {
+            stats.bytesWritten.addAndGet(length);
+        }
+
+        long took = parseTook(content);
+        if (took >= 0) {
+            timings.record(Phase.SERVER, took * 1000000);
+        }
+
+        // avoid parsing the response unless there are errors
+        if (indexOf(content, ERROR, content.length) < 0) {
+            return Collections.emptyList();
+        }
+        return (List<Map<String, Object>>) mapper.readValue(content, Map.class).get("items");
+    }
+
+    // the took field is the first one in the response so there's no need to parse the whole response to find it
+    private static long parseTook(byte[] content) {
+        int index = indexOf(content, TOOK, 64);
+        if (index < 0) {
+            return -1;
+        }
+
+        long took = 0;
+        boolean found = false;
+        for (int i = index + TOOK.length; i < content.length; i++) {
+            byte b = content[i];
+            if (b >= '0' && b <= '9') {
+                took = took * 10 + (b - '0');
+                found = true;
+            }
+            else if (found || b != ' ') {
+                break;
+            }
+        }
+        return (found ? took : -1);
+    }
+
+    private static int indexOf(byte[] content, byte[] pattern, int searchLimit) {
+        if (content == null) {
+            return -1;
+        }
+
+        int limit = Math.min(content.length, searchLimit) - pattern.length;
+        for (int i = 0; i <= limit; i++) {
+            int j = 0;
+            while (j < pattern.length && content[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public void refresh(String index) throws IOException {
-        String indx = index.substring(0, index.indexOf("/"));
+        int slash = index.indexOf("/");
+        String indx = (slash > 0 ? index.substring(0, slash) : index);
         execute(new PostMethod(indx + "/_refresh"));
     }
 
+    public void optimize(String index) throws IOException {
+        execute(new PostMethod(index + "/_optimize"));
+    }
+
+    public boolean exists(String index) throws IOException {
+        HeadMethod head = new HeadMethod(index);
+        try {
+            return client.executeMethod(head) == 200;
+        } finally {
+            head.releaseConnection();
+        }
+    }
+
+    public void createIndex(String index, Map<String, Object> settings) throws IOException {
+        Map<String, Object> body = Collections.<String, Object> singletonMap("settings", settings);
+        create(index, mapper.writeValueAsBytes(body));
+    }
+
+    /**
+     * Returns the (flattened) settings of the given index, such as <tt>index.refresh_interval</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getSettings(String index) throws IOException {
+        Map<String, Object> indices = get(index + "/_settings", null);
+        // the response is keyed by the concrete index name (which might differ in case of aliases)
+        for (Object value : indices.values()) {
+            Object settings = ((Map<String, Object>) value).get("settings");
+            if (settings instanceof Map) {
+                return (Map<String, Object>) settings;
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    public void updateSettings(String index, Map<String, Object> settings) throws IOException {
+        PutMethod put = new PutMethod(index + "/_settings");
+        put.setRequestEntity(new ByteArrayRequestEntity(mapper.writeValueAsBytes(Collections.singletonMap("index", settings))));
+        execute(put);
+    }
+
     private void create(String q, byte[] value) {
         PostMethod post = new PostMethod(q);
         post.setRequestEntity(new ByteArrayRequestEntity(value));
@@ -97,13 +224,139 @@ public class RestClient implements Closeable {
         execute(new DeleteMethod(index));
     }
 
+    /**
+     * Creates the document at the given path (<tt>index/type/id</tt>) unless it already exists.
+     * Returns the document version or -1 if the document already exists.
+     */
+    public long createDocument(String path, Map<String, Object> source) throws IOException {
+        PutMethod put = new PutMethod(path + "?op_type=create");
+        put.setRequestEntity(new ByteArrayRequestEntity(mapper.writeValueAsBytes(source)));
+        return version(execute(put, true));
+    }
+
+    /**
+     * Replaces the document at the given path as long as it still has the given version.
+     * Returns the new version or -1 if the document has been changed or removed in the meantime.
+     */
+    public long updateDocument(String path, Map<String, Object> source, long version) throws IOException {
+        PutMethod put = new PutMethod(path + "?version=" + version);
+        put.setRequestEntity(new ByteArrayRequestEntity(mapper.writeValueAsBytes(source)));
+        return version(execute(put, true));
+    }
+
+    /**
+     * Returns the document at the given path (including its <tt>_version</tt> and <tt>_source</tt>) or null if it does not exist.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getDocument(String path) throws IOException {
+        byte[] content = execute(new GetMethod(path), true);
+        if (content == null) {
+            return null;
+        }
+        Map<String, Object> document = mapper.readValue(content, Map.class);
+        return (Boolean.FALSE.equals(document.get("exists")) ? null : document);
+    }
+
+    /**
+     * Removes the document at the given path as long as it still has the given version.
+     * Returns false if the document has been changed or removed in the meantime.
+     */
+    public boolean deleteDocument(String path, long version) throws IOException {
+        return execute(new DeleteMethod(path + "?version=" + version), true) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private long version(byte[] content) throws IOException {
+        if (content == null) {
+            return -1;
+        }
+        Number version = (Number) mapper.readValue(content, Map.class).get("_version");
+        return version.longValue();
+    }
+
+    /**
+     * Returns the concrete indices behind the given alias (or the index itself in case of a concrete index).
+     */
+    public List<String> getIndices(String alias) throws IOException {
+        Map<String, Object> indices = get(alias + "/_aliases", null);
+        return new ArrayList<String>(indices.keySet());
+    }
+
+    /**
+     * Returns the aliases (with their definition, such as the filter) of each concrete index matching the given indices expression
+     * or an empty map if there are no such indices.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Map<String, Map<String, Object>>> getAliases(String indices) throws IOException {
+        byte[] content = execute(new GetMethod(indices + "/_aliases"), true);
+        Map<String, Map<String, Map<String, Object>>> aliases = new LinkedHashMap<String, Map<String, Map<String, Object>>>();
+        if (content == null) {
+            return aliases;
+        }
+        Map<String, Map<String, Object>> response = mapper.readValue(content, Map.class);
+        for (Entry<String, Map<String, Object>> entry : response.entrySet()) {
+            aliases.put(entry.getKey(), (Map<String, Map<String, Object>>) entry.getValue().get("aliases"));
+        }
+        return aliases;
+    }
+
+    /**
+     * Applies the given alias actions (such as <tt>{"add":{"index":"...","alias":"..."}}</tt>) atomically.
+     */
+    public void updateAliases(List<Map<String, Object>> actions) throws IOException {
+        PostMethod post = new PostMethod("_aliases");
+        post.setRequestEntity(new ByteArrayRequestEntity(mapper.writeValueAsBytes(Collections.singletonMap("actions", actions))));
+        execute(post);
+    }
+
     public List<List<Map<String, Object>>> targetShards(String query) throws IOException {
         List<List<Map<String, Object>>> shardsJson = get(query, "shards");
         return shardsJson;
     }
 
+    public long count(String query) throws IOException {
+        Number count = get(query, "count");
+        return count.longValue();
+    }
+
+    public Map<String, Object> getMapping(String query) throws IOException {
+        return get(query, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getIndexStats(String query) throws IOException {
+        Map<String, Object> all = get(query, "_all");
+        return (Map<String, Object>) all.get("primaries");
+    }
+
+    public Stats stats() {
+        return stats;
+    }
+
+    public Timings timings() {
+        return timings;
+    }
+
+    MemoryBudget memory() {
+        return memory;
+    }
+
     @Override
     public void close() {
+        if (!closed) {
+            closed = true;
+            Timings.retire(timings);
+
+            if (stats.docsWritten.get() > 0 || stats.docsRead.get() > 0) {
+                if (log.isInfoEnabled()) {
+                    log.info(summary());
+                }
+            }
+            else if (log.isDebugEnabled()) {
+                log.debug(summary());
+            }
+        }
+
         HttpConnectionManager manager = client.getHttpConnectionManager();
         if (manager instanceof SimpleHttpConnectionManager) {
             try {
@@ -117,9 +370,32 @@ public class RestClient implements Closeable {
         }
     }
 
+    private String summary() {
+        StringBuilder sb = new StringBuilder("ES client [");
+        sb.append(client.getHostConfiguration().getHostURL()).append("] summary: ");
+        if (stats.docsWritten.get() > 0 || stats.bulkWrites.get() > 0) {
+            sb.append("docsWritten=").append(stats.docsWritten.get()).append(" bytesWritten=").append(stats.bytesWritten.get()).append(" ");
+        }
+        if (stats.docsRead.get() > 0 || stats.scrollReads.get() > 0) {
+            sb.append("docsRead=").append(stats.docsRead.get()).append(" bytesRead=").append(stats.bytesRead.get()).append(" ");
+        }
+        sb.append("timings(ms): ").append(timings.summary());
+        sb.append(" ").append(memory.summary());
+        return sb.toString();
+    }
+
     byte[] execute(HttpMethodBase method) {
+        return execute(method, false);
+    }
+
+    // conditional requests return null instead of failing when the document is missing (404) or the version conflicts (409)
+    private byte[] execute(HttpMethodBase method, boolean conditional) {
+        long start = System.nanoTime();
         try {
             int status = client.executeMethod(method);
+            if (conditional && (status == 404 || status == 409)) {
+                return null;
+            }
             if (status >= 300) {
                 String body;
                 try {
@@ -127,8 +403,9 @@ public class RestClient implements Closeable {
                 } catch (IOException ex) {
                     body = "";
                 }
-                throw new IllegalStateException(String.format("[%s] on [%s] failed; server[%s] returned [%s]",
-                        method.getName(), method.getURI(), client.getHostConfiguration().getHostURL(), body));
+                String message = String.format("[%s] on [%s] failed; server[%s] returned [%s]",
+                        method.getName(), method.getURI(), client.getHostConfiguration().getHostURL(), body);
+                throw (TransientRestException.isTransient(status) ? new TransientRestException(message) : new IllegalStateException(message));
             }
             return method.getResponseBody();
         } catch (IOException io) {
@@ -138,9 +415,10 @@ public class RestClient implements Closeable {
             } catch (IOException ex) {
                 target = method.getPath();
             }
-            throw new IllegalStateException(String.format("Cannot get response body for [%s][%s]", method.getName(), target));
+            throw new TransientRestException(String.format("Cannot get response body for [%s][%s]", method.getName(), target), io);
         } finally {
             method.releaseConnection();
+            timings.record(Phase.HTTP, System.nanoTime() - start);
         }
     }
 
@@ -155,11 +433,44 @@ public class RestClient implements Closeable {
         return nodes;
     }
 
+    /**
+     * Returns the bulk thread pool statistics (<tt>queue</tt>, <tt>rejected</tt>, etc...) of each node.
+     */
+    public Map<String, Map<String, Object>> bulkThreadPoolStats() throws IOException {
+        return bulkThreadPool(get("_nodes/stats/thread_pool", "nodes"));
+    }
+
+    /**
+     * Returns the bulk thread pool settings (such as <tt>queue_size</tt>) of each node.
+     */
+    public Map<String, Map<String, Object>> bulkThreadPoolInfo() throws IOException {
+        return bulkThreadPool(get("_nodes/thread_pool", "nodes"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Map<String, Object>> bulkThreadPool(Map<String, Map<String, Object>> nodes) {
+        Map<String, Map<String, Object>> pools = new LinkedHashMap<String, Map<String, Object>>();
+        if (nodes == null) {
+            return pools;
+        }
+        for (Entry<String, Map<String, Object>> entry : nodes.entrySet()) {
+            Object threadPool = entry.getValue().get("thread_pool");
+            if (threadPool instanceof Map) {
+                Object bulk = ((Map<String, Object>) threadPool).get("bulk");
+                if (bulk instanceof Map) {
+                    pools.put(entry.getKey(), (Map<String, Object>) bulk);
+                }
+            }
+        }
+        return pools;
+    }
+
+    @SuppressWarnings("unchecked")
     public String[] scan(String query) throws IOException {
         Map<String, Object> scan = get(query, null);
         String[] data = new String[2];
         data[0] = scan.get("_scroll_id").toString();
-        data[1] = ((Map) scan.get("hits")).get("total").toString();
+        data[1] = ((Map<String, Object>) scan.get("hits")).get("total").toString();
         return data;
     }
 
@@ -167,8 +478,27 @@ public class RestClient implements Closeable {
         // use post instead of get to avoid some weird encoding issues (caused by the long URL)
         PostMethod post = new PostMethod("_search/scroll?scroll=" + scrollKeepAlive.toString());
         post.setRequestEntity(new ByteArrayRequestEntity(scrollId.getBytes(StringUtils.UTF_8)));
+
+        long start = System.currentTimeMillis();
         byte[] content = execute(post);
+        stats.scrollTime.addAndGet(System.currentTimeMillis() - start);
+        stats.scrollReads.incrementAndGet();
+        stats.bytesRead.addAndGet(content.length);
+
+        return parseScroll(content);
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Map<String, Object>> parseScroll(byte[] content) throws IOException {
+        long parseStart = System.nanoTime();
+        Map<String, Object> response = mapper.readValue(content, Map.class);
+        timings.record(Phase.PARSING, System.nanoTime() - parseStart);
+
+        Object took = response.get("took");
+        if (took instanceof Number) {
+            timings.record(Phase.SERVER, ((Number) took).longValue() * 1000000);
+        }
 
-        return (List<Map<String, Object>>) ((Map) mapper.readValue(content, Map.class).get("hits")).get("hits");
+        return (List<Map<String, Object>>) ((Map<String, Object>) response.get("hits")).get("hits");
     }
 }
\ No newline at end of file
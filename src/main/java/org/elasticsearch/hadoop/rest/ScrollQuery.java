@@ -22,6 +22,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.elasticsearch.hadoop.rest.Timings.Phase;
+
 /**
  * Result streaming data from a ElasticSearch query using the scan/scroll. Performs batching underneath to retrieve data in chunks.
  */
@@ -35,6 +37,10 @@ public class ScrollQuery implements Iterator<Map<String, Object>>, Closeable {
     private int batchIndex = 0;
     private long read = 0;
     private long size;
+    // end of the last next() call - used for measuring the time spent by the caller
+    private long lastCall = 0;
+    // size of the current page (accounted for in the memory budget)
+    private long pageBytes = 0;
 
     ScrollQuery(RestClient client, String scrollId, long size) {
         this.client = client;
@@ -46,6 +52,7 @@ public class ScrollQuery implements Iterator<Map<String, Object>>, Closeable {
     public void close() throws IOException {
         finished = true;
         batch = Collections.emptyList();
+        releasePage();
         client.close();
     }
 
@@ -54,18 +61,30 @@ public class ScrollQuery implements Iterator<Map<String, Object>>, Closeable {
         if (finished)
             return false;
 
+        if (lastCall > 0) {
+            client.timings().record(Phase.MAPPER, System.nanoTime() - lastCall);
+            lastCall = 0;
+        }
+
         if (batch.isEmpty() || batchIndex >= batch.size()) {
             if (read >= size) {
                 finished = true;
                 return false;
             }
 
+            // the previous page is no longer used
+            batch = Collections.emptyList();
+            releasePage();
+            long bytesRead = client.stats().bytesRead.get();
             try {
                 batch = client.scroll(scrollId);
             } catch (IOException ex) {
                 throw new IllegalStateException("Cannot retrieve scroll [" + scrollId + "]", ex);
             }
+            pageBytes = client.stats().bytesRead.get() - bytesRead;
+            client.memory().force(pageBytes);
             read += batch.size();
+            client.stats().docsRead.addAndGet(batch.size());
             if (batch.isEmpty()) {
                 finished = true;
                 return false;
@@ -77,6 +96,13 @@ public class ScrollQuery implements Iterator<Map<String, Object>>, Closeable {
         return true;
     }
 
+    private void releasePage() {
+        if (pageBytes > 0) {
+            client.memory().release(pageBytes);
+            pageBytes = 0;
+        }
+    }
+
     public long getSize() {
         return size;
     }
@@ -85,9 +111,15 @@ public class ScrollQuery implements Iterator<Map<String, Object>>, Closeable {
         return read;
     }
 
+    public Stats stats() {
+        return client.stats();
+    }
+
     @Override
     public Map<String, Object> next() {
-        return batch.get(batchIndex++);
+        Map<String, Object> next = batch.get(batchIndex++);
+        lastCall = System.nanoTime();
+        return next;
     }
 
     @Override
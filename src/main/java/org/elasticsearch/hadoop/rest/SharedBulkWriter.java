@@ -0,0 +1,559 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.rest.Timings.Phase;
+
+/**
+ * Bulk writer shared by the writers targeting the same cluster and index inside a JVM (such as Hive dynamic partition inserts
+ * or Pig scripts with several stores). Writers append their (serialized) entries into lock-striped buffers; full buffers
+ * are sent by a small pool of I/O threads. This way the bulk requests are fuller and the memory is bounded per JVM
+ * (stripes + threads buffers) instead of per writer.
+ * <p/>
+ * Reference counted - the last writer releasing it shuts down the I/O threads. The sending settings (retries, rate limit)
+ * are those of the writer that created it; the rate limit applies to all the I/O threads together. Entries of the same writer can be sent by different requests
+ * concurrently so their order is not guaranteed.
+ */
+final class SharedBulkWriter {
+
+    private static final Log log = LogFactory.getLog(SharedBulkWriter.class);
+
+    private static final Map<String, SharedBulkWriter> WRITERS = new HashMap<String, SharedBulkWriter>();
+
+    /**
+     * Tracks the entries appended by one writer so it can wait for (only) its own acknowledgements.
+     */
+    static class Ticket {
+        // stripe used by the writer - writers typically run on the same thread (Hive, Pig) so the stripe is not picked per thread
+        private final int stripe;
+        private int pending = 0;
+        private long acked = 0;
+        // whether the stripe holds (unsent) entries of this ticket
+        private boolean unsent = false;
+        private Throwable failure;
+
+        private Ticket(int stripe) {
+            this.stripe = stripe;
+        }
+
+        private synchronized void add() {
+            pending++;
+            unsent = true;
+        }
+
+        private synchronized void ack(int entries) {
+            pending -= entries;
+            acked += entries;
+            notifyAll();
+        }
+
+        // entries that could not be indexed (and were logged) - these are not written but do not fail the writer
+        private synchronized void drop(int entries) {
+            pending -= entries;
+            notifyAll();
+        }
+
+        private synchronized void fail(int entries, Throwable cause) {
+            pending -= entries;
+            if (failure == null) {
+                failure = cause;
+            }
+            notifyAll();
+        }
+
+        private synchronized boolean unsent() {
+            boolean u = unsent;
+            unsent = false;
+            return u;
+        }
+
+        /**
+         * Returns the number of entries appended but not yet acknowledged (or failed).
+         */
+        synchronized int pending() {
+            return pending;
+        }
+
+        /**
+         * Returns the number of entries acknowledged so far.
+         */
+        synchronized long acked() {
+            return acked;
+        }
+
+        private synchronized void await() throws IOException {
+            while (pending > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting for bulk acknowledgements");
+                }
+            }
+            if (failure != null) {
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                throw new IllegalStateException("Shared bulk write failed", failure);
+            }
+        }
+    }
+
+    /**
+     * {@link BulkWriter} of one writer - hands its entries over to the shared writer (acquired on the first write).
+     */
+    static class Handle implements BulkWriter {
+        private final Settings settings;
+        private final String target;
+        private final Stats stats;
+        private final Timings timings;
+        private SharedBulkWriter shared;
+        private Ticket ticket;
+
+        Handle(Settings settings, String target, RestClient client) {
+            this.settings = settings;
+            this.target = target;
+            this.stats = client.stats();
+            this.timings = client.timings();
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if (shared == null) {
+                shared = acquire(settings, target);
+                ticket = shared.ticket();
+            }
+            // the shared writer takes whole arrays
+            if (offset > 0 || length < data.length) {
+                data = Arrays.copyOfRange(data, offset, offset + length);
+            }
+            long copyStart = System.nanoTime();
+            shared.add(data, ticket);
+            timings.record(Phase.BUFFER_COPY, System.nanoTime() - copyStart);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (shared != null) {
+                shared.flush(ticket);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (shared != null) {
+                shared.flush(ticket);
+                stats.docsWritten.addAndGet(ticket.acked());
+            }
+        }
+
+        @Override
+        public boolean hasPending() {
+            return (shared != null && ticket.pending() > 0);
+        }
+
+        @Override
+        public int batchSize() {
+            return settings.getBatchSizeInBytes();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (shared != null) {
+                SharedBulkWriter writer = shared;
+                shared = null;
+                writer.release();
+            }
+        }
+    }
+
+    private static class Batch {
+        final byte[] data;
+        final boolean pooled;
+        int size = 0;
+        int entries = 0;
+        int[] offsets = new int[64];
+        Ticket[] owners = new Ticket[64];
+
+        Batch(byte[] data, boolean pooled) {
+            this.data = data;
+            this.pooled = pooled;
+        }
+
+        // wraps an entry larger than the pooled buffers
+        Batch(byte[] entry, Ticket owner) {
+            this(entry, false);
+            size = entry.length;
+            entries = 1;
+            owners[0] = owner;
+        }
+
+        boolean fits(byte[] entry) {
+            return size + entry.length <= data.length;
+        }
+
+        void add(byte[] entry, Ticket owner) {
+            if (entries == offsets.length) {
+                int[] o = new int[entries * 2];
+                System.arraycopy(offsets, 0, o, 0, entries);
+                offsets = o;
+                Ticket[] t = new Ticket[entries * 2];
+                System.arraycopy(owners, 0, t, 0, entries);
+                owners = t;
+            }
+            offsets[entries] = size;
+            owners[entries] = owner;
+            entries++;
+            System.arraycopy(entry, 0, data, size, entry.length);
+            size += entry.length;
+        }
+
+        void reset() {
+            size = 0;
+            entries = 0;
+            for (int i = 0; i < owners.length; i++) {
+                owners[i] = null;
+            }
+        }
+    }
+
+    private final String key;
+    private int references = 0;
+
+    private final int batchSize;
+    private final int entriesThreshold;
+    private final Object[] locks;
+    private final Batch[] stripes;
+    private final AtomicInteger nextStripe = new AtomicInteger();
+
+    // bounds the number of buffers (and thus the memory used)
+    private final BlockingQueue<Batch> spare = new LinkedBlockingQueue<Batch>();
+    private final int maxBatches;
+    private int allocated = 0;
+    private final MemoryBudget memory;
+
+    // each sender is used by one I/O thread at a time
+    private final BlockingQueue<BatchBulkWriter> senders;
+    // the rate limit applies to the writes of all the senders (null if there is none)
+    private final WriteThrottle throttle;
+    private final ExecutorService io;
+
+    private SharedBulkWriter(String key, Settings settings, String target) {
+        this.key = key;
+        batchSize = settings.getBatchSizeInBytes();
+        memory = MemoryBudget.of(settings);
+        entriesThreshold = settings.getBatchSizeInEntries();
+
+        int stripeCount = Math.min(64, Math.max(1, settings.getBatchWriteSharedStripes()));
+        int threads = Math.max(1, settings.getBatchWriteSharedThreads());
+        locks = new Object[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            locks[i] = new Object();
+        }
+        stripes = new Batch[stripeCount];
+        maxBatches = stripeCount + threads;
+
+        throttle = WriteThrottle.of(settings);
+        senders = new LinkedBlockingQueue<BatchBulkWriter>();
+        for (int i = 0; i < threads; i++) {
+            // the batches are handed over already and not journaled
+            senders.add(new BatchBulkWriter(settings, new RestClient(settings), target, target, throttle, false));
+        }
+
+        final AtomicInteger counter = new AtomicInteger();
+        io = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "es-bulk-shared-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Created shared bulk writer for [%s] with [%d] stripes and [%d] I/O threads", key, stripeCount, threads));
+        }
+    }
+
+    /**
+     * Returns the writer shared by the given cluster and bulk target, creating it if needed. Each call needs to be paired
+     * with a {@link #release()}.
+     */
+    static SharedBulkWriter acquire(Settings settings, String target) {
+        String key = settings.getTargetUri() + "/" + target;
+        synchronized (WRITERS) {
+            SharedBulkWriter writer = WRITERS.get(key);
+            if (writer == null) {
+                writer = new SharedBulkWriter(key, settings, target);
+                WRITERS.put(key, writer);
+            }
+            writer.references++;
+            return writer;
+        }
+    }
+
+    /**
+     * Returns a new ticket for a writer. The writers are spread across the stripes in a round-robin fashion.
+     */
+    Ticket ticket() {
+        return new Ticket((nextStripe.getAndIncrement() & Integer.MAX_VALUE) % stripes.length);
+    }
+
+    /**
+     * Appends the given entry on behalf of the given writer. Blocks while all the buffers are in use.
+     */
+    void add(byte[] entry, Ticket ticket) throws IOException {
+        if (entry.length > batchSize) {
+            // larger than the whole buffer - send it on its own (without copying it)
+            ticket.add();
+            Batch oversized = new Batch(entry, ticket);
+            if (memory.tryReserve(entry.length)) {
+                send(oversized);
+            }
+            else {
+                // over the budget - the entry is held regardless so send it right away, making the writer wait for it
+                memory.force(entry.length);
+                write(oversized);
+            }
+            return;
+        }
+
+        int stripe = ticket.stripe;
+        Batch fresh = null;
+        boolean added = false;
+
+        while (!added) {
+            Batch full = null;
+            synchronized (locks[stripe]) {
+                Batch batch = stripes[stripe];
+                if (batch == null) {
+                    batch = stripes[stripe] = fresh;
+                    fresh = null;
+                }
+                if (batch != null) {
+                    if (batch.fits(entry)) {
+                        ticket.add();
+                        batch.add(entry, ticket);
+                        added = true;
+                    }
+                    if (!added || (entriesThreshold > 0 && batch.entries >= entriesThreshold)) {
+                        full = batch;
+                        stripes[stripe] = null;
+                    }
+                }
+            }
+            // send the full buffer before waiting for a new one (it might be the only one that can be recycled)
+            // and never wait while holding the stripe lock
+            send(full);
+            if (!added && fresh == null) {
+                fresh = take();
+            }
+        }
+
+        // another writer installed a buffer in the meantime
+        if (fresh != null) {
+            recycle(fresh);
+        }
+    }
+
+    /**
+     * Sends the (partially filled) buffer holding entries of the given writer and waits for their acknowledgement.
+     */
+    void flush(Ticket ticket) throws IOException {
+        if (ticket.unsent()) {
+            Batch batch;
+            synchronized (locks[ticket.stripe]) {
+                batch = stripes[ticket.stripe];
+                stripes[ticket.stripe] = null;
+            }
+            send(batch);
+        }
+        ticket.await();
+    }
+
+    void release() throws IOException {
+        synchronized (WRITERS) {
+            if (--references > 0) {
+                return;
+            }
+            WRITERS.remove(key);
+        }
+        shutdown();
+    }
+
+    private void shutdown() throws IOException {
+        try {
+            drain();
+        } finally {
+            io.shutdown();
+            try {
+                while (!io.awaitTermination(1, TimeUnit.SECONDS)) {
+                    log.debug("Waiting for shared bulk requests to complete");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                io.shutdownNow();
+            } finally {
+                try {
+                    close(senders.iterator());
+                } finally {
+                    synchronized (spare) {
+                        memory.release((long) allocated * batchSize);
+                        allocated = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    // closes the remaining senders, even if some of them fail
+    private static void close(Iterator<BatchBulkWriter> senders) throws IOException {
+        if (senders.hasNext()) {
+            BatchBulkWriter sender = senders.next();
+            try {
+                try {
+                    sender.close();
+                } finally {
+                    sender.client.close();
+                }
+            } finally {
+                close(senders);
+            }
+        }
+    }
+
+    private Batch take() throws IOException {
+        Batch batch = spare.poll();
+        if (batch != null) {
+            return batch;
+        }
+        synchronized (spare) {
+            // past the first buffer, allocate only within the memory budget - otherwise wait for a buffer to be recycled
+            if (allocated < maxBatches && (allocated == 0 || memory.tryReserve(batchSize))) {
+                if (allocated == 0) {
+                    memory.force(batchSize);
+                }
+                allocated++;
+                return new Batch(new byte[batchSize], true);
+            }
+        }
+        try {
+            while ((batch = spare.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                // the buffers might all be held (partially filled) by the other stripes - send them so they get recycled
+                drain();
+            }
+            return batch;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for a shared bulk buffer");
+        }
+    }
+
+    // sends the (partially filled) buffers of all stripes
+    private void drain() {
+        for (int stripe = 0; stripe < stripes.length; stripe++) {
+            Batch batch;
+            synchronized (locks[stripe]) {
+                batch = stripes[stripe];
+                stripes[stripe] = null;
+            }
+            send(batch);
+        }
+    }
+
+    private void send(final Batch batch) {
+        if (batch == null) {
+            return;
+        }
+        if (batch.entries == 0) {
+            recycle(batch);
+            return;
+        }
+
+        io.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(batch);
+            }
+        });
+    }
+
+    private void write(Batch batch) {
+        // entries per writer
+        Map<Ticket, Integer> owners = new IdentityHashMap<Ticket, Integer>();
+        for (int i = 0; i < batch.entries; i++) {
+            Integer count = owners.get(batch.owners[i]);
+            owners.put(batch.owners[i], (count == null ? 1 : count + 1));
+        }
+
+        BatchBulkWriter sender = null;
+        try {
+            sender = senders.take();
+            BitSet failed = sender.send(batch.data, batch.size, batch.offsets, batch.entries);
+            // the entries that could not be indexed are not acknowledged
+            Map<Ticket, Integer> dropped = new IdentityHashMap<Ticket, Integer>();
+            for (int i = failed.nextSetBit(0); i >= 0; i = failed.nextSetBit(i + 1)) {
+                Integer count = dropped.get(batch.owners[i]);
+                dropped.put(batch.owners[i], (count == null ? 1 : count + 1));
+            }
+            for (Map.Entry<Ticket, Integer> entry : owners.entrySet()) {
+                Integer drop = dropped.get(entry.getKey());
+                if (drop != null) {
+                    entry.getKey().drop(drop);
+                }
+                entry.getKey().ack(entry.getValue() - (drop != null ? drop : 0));
+            }
+        } catch (Throwable th) {
+            log.error(String.format("Shared bulk write to [%s] failed", key), th);
+            for (Map.Entry<Ticket, Integer> entry : owners.entrySet()) {
+                entry.getKey().fail(entry.getValue(), th);
+            }
+        } finally {
+            if (sender != null) {
+                senders.add(sender);
+            }
+            recycle(batch);
+        }
+    }
+
+    private void recycle(Batch batch) {
+        if (batch.pooled) {
+            batch.reset();
+            spare.add(batch);
+        }
+        else {
+            memory.release(batch.data.length);
+        }
+    }
+}
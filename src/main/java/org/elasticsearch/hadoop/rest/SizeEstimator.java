@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.Settings;
+
+/**
+ * Estimates the size of an ElasticSearch resource (index or query) for the various planners (Hive, Pig, Crunch).
+ * Uses the number of documents matching the query (through <tt>_count</tt>) and the index store size (through <tt>_stats</tt>).
+ * Estimates are cached per query for a few minutes (so they follow the index growth in long running JVMs such as HiveServer).
+ */
+public abstract class SizeEstimator {
+
+    private static final Log log = LogFactory.getLog(SizeEstimator.class);
+
+    static final int CACHE_SIZE = 64;
+    static final long CACHE_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Map<String, Estimate> CACHE = Collections.synchronizedMap(new LinkedHashMap<String, Estimate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Estimate> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    });
+
+    public static class Estimate {
+        private final long docCount;
+        private final long indexDocCount;
+        private final long indexSize;
+        private final long timestamp = System.currentTimeMillis();
+
+        Estimate(long docCount, long indexDocCount, long indexSize) {
+            this.docCount = docCount;
+            this.indexDocCount = indexDocCount;
+            this.indexSize = indexSize;
+        }
+
+        /**
+         * Returns the number of documents matching the query.
+         */
+        public long getDocCount() {
+            return docCount;
+        }
+
+        /**
+         * Returns the average size (in bytes) of a document in the index.
+         */
+        public long getAverageDocSize() {
+            return (indexDocCount > 0 ? indexSize / indexDocCount : 0);
+        }
+
+        /**
+         * Returns the estimated size (in bytes) of the documents matching the query.
+         */
+        public long getSizeInBytes() {
+            if (indexDocCount <= 0 || docCount >= indexDocCount) {
+                return indexSize;
+            }
+            return (long) ((double) indexSize * docCount / indexDocCount);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Estimate[docCount=").append(docCount).append(", indexDocCount=").append(indexDocCount)
+                    .append(", indexSize=").append(indexSize).append("]");
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Returns the size estimate for the resource/query defined by the given settings or null if it cannot be computed
+     * (for example when the cluster is not reachable).
+     *
+     * @param settings settings
+     * @return estimate or null if none could be computed
+     */
+    public static Estimate estimate(Settings settings) {
+        String key = new StringBuilder(settings.getTargetUri()).append("|").append(settings.getTargetResource())
+                .append("|").append(settings.getProperty(ConfigurationOptions.ES_QUERY)).toString();
+
+        Estimate estimate = cached(key, System.currentTimeMillis());
+        if (estimate != null) {
+            return estimate;
+        }
+
+        BufferedRestClient client = new BufferedRestClient(settings);
+        try {
+            estimate = compute(client);
+        } catch (Exception ex) {
+            log.warn(String.format("Cannot estimate size for [%s]", key), ex);
+            return null;
+        } finally {
+            try {
+                client.close();
+            } catch (Exception ex) {
+                // ignore
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Estimated size for [%s] as [%s]", key, estimate));
+        }
+
+        cache(key, estimate);
+        return estimate;
+    }
+
+    // returns the cached estimate unless it expired
+    static Estimate cached(String key, long now) {
+        Estimate estimate = CACHE.get(key);
+        if (estimate != null && now - estimate.timestamp >= CACHE_TTL) {
+            CACHE.remove(key);
+            return null;
+        }
+        return estimate;
+    }
+
+    static void cache(String key, Estimate estimate) {
+        CACHE.put(key, estimate);
+    }
+
+    static int cacheSize() {
+        return CACHE.size();
+    }
+
+    private static Estimate compute(BufferedRestClient client) throws Exception {
+        long docCount = client.count();
+        long indexDocCount = 0;
+        long indexSize = 0;
+
+        Map<String, Object> stats = client.getIndexStats();
+        if (stats != null) {
+            Map<?, ?> docs = (Map<?, ?>) stats.get("docs");
+            if (docs != null) {
+                indexDocCount = ((Number) docs.get("count")).longValue();
+            }
+            Map<?, ?> store = (Map<?, ?>) stats.get("store");
+            if (store != null) {
+                indexSize = ((Number) store.get("size_in_bytes")).longValue();
+            }
+        }
+        return new Estimate(docCount, indexDocCount, indexSize);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Basic statistics collected by the REST clients. Kept framework agnostic - it's up to each integration to publish them (such as through Hadoop counters).
+ * The counters are atomic since they are also updated by the background flush threads.
+ */
+public class Stats {
+
+    /** docs successfully written */
+    public final AtomicLong docsWritten = new AtomicLong();
+    /** bytes sent through bulk requests */
+    public final AtomicLong bytesWritten = new AtomicLong();
+    /** bulk requests executed */
+    public final AtomicLong bulkWrites = new AtomicLong();
+    /** docs retried (after being rejected) */
+    public final AtomicLong docsRetried = new AtomicLong();
+    /** docs rejected by ElasticSearch */
+    public final AtomicLong docsRejected = new AtomicLong();
+    /** docs merged with other docs (with the same id) before being sent */
+    public final AtomicLong docsCoalesced = new AtomicLong();
+    /** cumulative bulk time (in ms) */
+    public final AtomicLong bulkTime = new AtomicLong();
+    /** cumulative time spent waiting for the write rate limit (in ms) */
+    public final AtomicLong throttleTime = new AtomicLong();
+
+    /** docs read */
+    public final AtomicLong docsRead = new AtomicLong();
+    /** bytes received from scroll requests */
+    public final AtomicLong bytesRead = new AtomicLong();
+    /** scroll requests executed */
+    public final AtomicLong scrollReads = new AtomicLong();
+    /** cumulative scroll time (in ms) */
+    public final AtomicLong scrollTime = new AtomicLong();
+
+    public Stats aggregate(Stats other) {
+        if (other == null) {
+            return this;
+        }
+
+        docsWritten.addAndGet(other.docsWritten.get());
+        bytesWritten.addAndGet(other.bytesWritten.get());
+        bulkWrites.addAndGet(other.bulkWrites.get());
+        docsRetried.addAndGet(other.docsRetried.get());
+        docsRejected.addAndGet(other.docsRejected.get());
+        docsCoalesced.addAndGet(other.docsCoalesced.get());
+        bulkTime.addAndGet(other.bulkTime.get());
+        throttleTime.addAndGet(other.throttleTime.get());
+
+        docsRead.addAndGet(other.docsRead.get());
+        bytesRead.addAndGet(other.bytesRead.get());
+        scrollReads.addAndGet(other.scrollReads.get());
+        scrollTime.addAndGet(other.scrollTime.get());
+
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Stats[docsWritten=").append(docsWritten).append(", bytesWritten=").append(bytesWritten)
+                .append(", bulkWrites=").append(bulkWrites).append(", docsRetried=").append(docsRetried)
+                .append(", docsRejected=").append(docsRejected).append(", docsCoalesced=").append(docsCoalesced).append(", bulkTime=").append(bulkTime).append(", throttleTime=").append(throttleTime)
+                .append(", docsRead=").append(docsRead).append(", bytesRead=").append(bytesRead)
+                .append(", scrollReads=").append(scrollReads).append(", scrollTime=").append(scrollTime).append("]");
+        return builder.toString();
+    }
+}
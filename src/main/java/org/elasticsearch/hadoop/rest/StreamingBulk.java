@@ -0,0 +1,270 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+/**
+ * Streams bulk entries to ElasticSearch while they are being produced. The entries are copied into small, fixed-size chunks
+ * which are handed off to a background thread that writes them to the (chunked) HTTP request. The number of chunks is
+ * bounded so a slow cluster blocks the producer instead of piling up data; entries larger than a chunk simply span
+ * several of them.
+ * <p/>
+ * Not thread-safe - meant to be used by one producer. The entries are not retained once written, hence they cannot be
+ * retried.
+ */
+class StreamingBulk implements Closeable {
+
+    private static class Chunk {
+        final byte[] data;
+        int length = 0;
+
+        Chunk(int size) {
+            data = new byte[size];
+        }
+    }
+
+    // marks the end of a request
+    private static final Chunk END = new Chunk(0);
+    private static final long POLL_MILLIS = 100;
+
+    private final RestClient client;
+    private final String target;
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> pending;
+    private final ExecutorService executor;
+    private final MemoryBudget memory;
+    private final int reserved;
+
+    private Future<List<Map<String, Object>>> request;
+    private Chunk current;
+    private long bytes = 0;
+    private int entries = 0;
+
+    StreamingBulk(RestClient client, String target, int chunkSize, int windowSize, MemoryBudget memory) {
+        this.client = client;
+        this.target = target;
+        this.memory = memory;
+
+        chunkSize = Math.max(1, chunkSize);
+        // the window shrinks (down to two chunks) when memory runs low
+        reserved = memory.grant(Math.max(windowSize, 2 * chunkSize), 2 * chunkSize);
+        int chunks = reserved / chunkSize;
+        free = new ArrayBlockingQueue<Chunk>(chunks);
+        pending = new ArrayBlockingQueue<Chunk>(chunks + 1);
+        for (int i = 0; i < chunks; i++) {
+            free.add(new Chunk(chunkSize));
+        }
+
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "es-bulk-stream");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Appends the given entry to the current request (starting one if needed). Blocks while the window is full.
+     */
+    void write(byte[] data) throws IOException {
+        if (request == null) {
+            start();
+        }
+
+        int offset = 0;
+        while (offset < data.length) {
+            if (current == null) {
+                current = take();
+            }
+            int length = Math.min(data.length - offset, current.data.length - current.length);
+            System.arraycopy(data, offset, current.data, current.length, length);
+            current.length += length;
+            offset += length;
+
+            if (current.length == current.data.length) {
+                pending.add(current);
+                current = null;
+            }
+        }
+
+        bytes += data.length;
+        entries++;
+    }
+
+    /**
+     * Returns the number of bytes written to the current request.
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of entries written to the current request.
+     */
+    int entries() {
+        return entries;
+    }
+
+    /**
+     * Completes the current request and returns its result (see {@link RestClient#bulk(String, byte[], int)}).
+     */
+    List<Map<String, Object>> finish() throws IOException {
+        if (request == null) {
+            return Collections.emptyList();
+        }
+
+        try {
+            if (current != null && current.length > 0) {
+                pending.add(current);
+                current = null;
+            }
+            pending.add(END);
+            return request.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while streaming bulk request");
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        } finally {
+            reset();
+        }
+    }
+
+    private void start() {
+        request = executor.submit(new Callable<List<Map<String, Object>>>() {
+            @Override
+            public List<Map<String, Object>> call() throws Exception {
+                return client.bulk(target, new ChunkedEntity());
+            }
+        });
+    }
+
+    // waits for a free chunk - bails out if the request fails in the meantime
+    private Chunk take() throws IOException {
+        try {
+            Chunk chunk;
+            while ((chunk = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                if (request.isDone()) {
+                    try {
+                        request.get();
+                    } catch (ExecutionException ex) {
+                        throw unwrap(ex);
+                    } finally {
+                        reset();
+                    }
+                    throw new IllegalStateException(String.format("Bulk request to [%s] completed before all entries were sent", target));
+                }
+            }
+            return chunk;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while streaming bulk request");
+        }
+    }
+
+    // reclaims the chunks of an aborted (or completed) request
+    private void reset() {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        pending.drainTo(chunks);
+        if (current != null) {
+            chunks.add(current);
+            current = null;
+        }
+        for (Chunk chunk : chunks) {
+            if (chunk != END) {
+                chunk.length = 0;
+                free.add(chunk);
+            }
+        }
+        request = null;
+        bytes = 0;
+        entries = 0;
+    }
+
+    private static IOException unwrap(ExecutionException ex) throws IOException {
+        Throwable cause = ex.getCause();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        throw new IllegalStateException("Bulk request failed", cause);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        memory.release(reserved);
+    }
+
+    // consumer side - pulls the chunks until the end of the request
+    private class ChunkedEntity implements RequestEntity {
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public void writeRequest(OutputStream out) throws IOException {
+            try {
+                for (Chunk chunk = pending.take(); chunk != END; chunk = pending.take()) {
+                    try {
+                        out.write(chunk.data, 0, chunk.length);
+                    } finally {
+                        // return the chunk even if the request fails, otherwise the pool shrinks with each failure
+                        chunk.length = 0;
+                        free.add(chunk);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while streaming bulk request");
+            }
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/json; charset=UTF-8";
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.rest.Timings.Phase;
+
+/**
+ * {@link BulkWriter} streaming the entries (through a {@link StreamingBulk}) while they are being produced. The entries
+ * are not retained hence the rejected ones cannot be retried.
+ */
+class StreamingBulkWriter extends AbstractBulkWriter {
+
+    private static final Log log = LogFactory.getLog(StreamingBulkWriter.class);
+
+    private final int chunkSize;
+    private final int window;
+    // created on the first write
+    private StreamingBulk streaming;
+
+    StreamingBulkWriter(Settings settings, RestClient client, String target, String index, WriteThrottle throttle) {
+        super(settings, client, target, index, throttle);
+        chunkSize = settings.getBatchWriteStreamingChunk();
+        window = settings.getBatchWriteStreamingWindow();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (streaming == null) {
+            streaming = new StreamingBulk(client, target, chunkSize, window, client.memory());
+        }
+        // the stream takes whole arrays
+        if (offset > 0 || length < data.length) {
+            data = Arrays.copyOfRange(data, offset, offset + length);
+        }
+        stream(data);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (streaming != null && streaming.entries() > 0) {
+            flushStream();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        flush();
+    }
+
+    @Override
+    public boolean hasPending() {
+        return (streaming != null && streaming.entries() > 0);
+    }
+
+    @Override
+    public void close() {
+        if (streaming != null) {
+            streaming.close();
+        }
+    }
+
+    private void stream(byte[] data) throws IOException {
+        throttle(1, data.length);
+        long copyStart = System.nanoTime();
+        streaming.write(data);
+        timings.record(Phase.BUFFER_COPY, System.nanoTime() - copyStart);
+
+        if (streaming.bytes() >= batchSizeThreshold || (entriesThreshold > 0 && streaming.entries() >= entriesThreshold)) {
+            flushStream();
+        }
+    }
+
+    private void flushStream() throws IOException {
+        int entries = streaming.entries();
+        long bytes = streaming.bytes();
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Completing streamed batch of [%d]", bytes));
+        }
+
+        List<Map<String, Object>> items = streaming.finish();
+        Stats stats = client.stats();
+        stats.bytesWritten.addAndGet(bytes);
+
+        if (items.isEmpty()) {
+            stats.docsWritten.addAndGet(entries);
+            return;
+        }
+
+        // streamed entries are not retained so rejections cannot be retried
+        int rejected = 0;
+        int failed = 0;
+        String failure = null;
+        for (Map<String, Object> item : items) {
+            Map<?, ?> result = (Map<?, ?>) item.values().iterator().next();
+            Object err = result.get("error");
+            if (err == null) {
+                continue;
+            }
+            if (err.toString().contains("EsRejectedExecutionException")) {
+                rejected++;
+            }
+            else {
+                failed++;
+                failure = err.toString();
+            }
+        }
+
+        stats.docsWritten.addAndGet(entries - rejected - failed);
+        stats.docsRejected.addAndGet(rejected);
+        if (backpressure) {
+            throttle.onBulk(rejected);
+        }
+        if (failed > 0) {
+            log.error(String.format("[%d] documents could not be indexed in [%s]; last failure [%s]", failed, index, failure));
+        }
+        if (rejected > 0) {
+            throw new TransientRestException(String.format("Streamed bulk write to [%s] failed; [%d] documents rejected", index, rejected));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.elasticsearch.hadoop.util.Histogram;
+
+/**
+ * Per-phase latency histograms (in nanoseconds) collected by a REST client. The JVM-wide view (used by {@link TimingsMBean})
+ * aggregates the live and the already closed clients. Live timings are tracked weakly so clients that are never closed are
+ * not retained (their timings are simply left out of the view once collected).
+ */
+public class Timings {
+
+    public enum Phase {
+        /** object conversion and JSON serialization */
+        SERIALIZATION,
+        /** copying data into the bulk buffer */
+        BUFFER_COPY,
+        /** HTTP round-trip */
+        HTTP,
+        /** time reported by ElasticSearch (took) */
+        SERVER,
+        /** JSON parsing of the scroll responses */
+        PARSING,
+        /** time spent by the caller (mapper/reducer) in between calls */
+        MAPPER;
+
+        final String label() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    // Timings does not override equals/hashCode so the weak map uses identity
+    private static final Set<Timings> LIVE = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Timings, Boolean>()));
+    private static final Timings RETIRED = new Timings();
+
+    private final Histogram[] histograms = new Histogram[Phase.values().length];
+
+    public Timings() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    public Histogram get(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    public Timings merge(Timings other) {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i].merge(other.histograms[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Returns a one-line summary of the timings (in ms).
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            Histogram histogram = get(phase);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(" ");
+            }
+            sb.append(phase.label()).append("[n=").append(histogram.getCount())
+              .append(",total=").append(millis(histogram.getSum()))
+              .append(",p50=").append(millis(histogram.percentile(50)))
+              .append(",p99=").append(millis(histogram.percentile(99)))
+              .append(",max=").append(millis(histogram.getMax())).append("]");
+        }
+        return sb.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ENGLISH, "%.3f", nanos / 1000000d);
+    }
+
+    /**
+     * Registers the given timings with the JVM-wide view.
+     */
+    static void register(Timings timings) {
+        TimingsMBean.register();
+        LIVE.add(timings);
+    }
+
+    /**
+     * Moves the given (closed) timings into the JVM-wide aggregate.
+     */
+    static void retire(Timings timings) {
+        if (LIVE.remove(timings)) {
+            synchronized (RETIRED) {
+                RETIRED.merge(timings);
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of all the timings inside the JVM (both live and closed clients).
+     */
+    static Timings aggregate() {
+        Timings snapshot = new Timings();
+        synchronized (RETIRED) {
+            snapshot.merge(RETIRED);
+        }
+        List<Timings> live;
+        synchronized (LIVE) {
+            live = new ArrayList<Timings>(LIVE);
+        }
+        for (Timings timings : live) {
+            snapshot.merge(timings);
+        }
+        return snapshot;
+    }
+
+    static int live() {
+        return LIVE.size();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.hadoop.rest.Timings.Phase;
+import org.elasticsearch.hadoop.util.Histogram;
+
+/**
+ * Read-only MBean exposing the JVM-wide {@link Timings} under <tt>org.elasticsearch.hadoop:type=Timings</tt>.
+ * For each phase, it provides the count, total, p50, p99 and max (all in microseconds).
+ */
+class TimingsMBean implements DynamicMBean {
+
+    private static final Log log = LogFactory.getLog(TimingsMBean.class);
+
+    static final String NAME = "org.elasticsearch.hadoop:type=Timings";
+
+    private static final String[] STATS = { "count", "totalMicros", "p50Micros", "p99Micros", "maxMicros" };
+
+    private static volatile boolean registered = false;
+
+    static void register() {
+        if (registered) {
+            return;
+        }
+        synchronized (TimingsMBean.class) {
+            if (registered) {
+                return;
+            }
+            registered = true;
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(NAME);
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(new TimingsMBean(), name);
+                }
+            } catch (Exception ex) {
+                // monitoring is optional
+                log.warn("Cannot register timings MBean", ex);
+            }
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        return getAttribute(Timings.aggregate(), attribute);
+    }
+
+    private Object getAttribute(Timings timings, String attribute) throws AttributeNotFoundException {
+        int dot = attribute.indexOf(".");
+        if (dot > 0) {
+            String phaseName = attribute.substring(0, dot);
+            String stat = attribute.substring(dot + 1);
+            for (Phase phase : Phase.values()) {
+                if (phase.label().equals(phaseName)) {
+                    Histogram histogram = timings.get(phase);
+                    if ("count".equals(stat)) {
+                        return histogram.getCount();
+                    }
+                    if ("totalMicros".equals(stat)) {
+                        return histogram.getSum() / 1000;
+                    }
+                    if ("p50Micros".equals(stat)) {
+                        return histogram.percentile(50) / 1000;
+                    }
+                    if ("p99Micros".equals(stat)) {
+                        return histogram.percentile(99) / 1000;
+                    }
+                    if ("maxMicros".equals(stat)) {
+                        return histogram.getMax() / 1000;
+                    }
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Timings timings = Timings.aggregate();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(timings, attribute)));
+            } catch (AttributeNotFoundException ex) {
+                // skip
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("read-only attributes");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("no operations available");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attrs = new ArrayList<MBeanAttributeInfo>();
+        for (Phase phase : Phase.values()) {
+            for (String stat : STATS) {
+                attrs.add(new MBeanAttributeInfo(phase.label() + "." + stat, Long.class.getName(), stat + " for " + phase.label(), true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "ElasticSearch Hadoop per-phase timings",
+                attrs.toArray(new MBeanAttributeInfo[attrs.size()]), null, new MBeanOperationInfo[0], null);
+    }
+}
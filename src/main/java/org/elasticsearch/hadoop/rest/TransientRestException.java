@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+/**
+ * Failure that is likely to go away on retry - the cluster is unreachable, overloaded (429) or temporarily
+ * unavailable (502/503/504).
+ */
+public class TransientRestException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TransientRestException(String message) {
+        super(message);
+    }
+
+    public TransientRestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    static boolean isTransient(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+}
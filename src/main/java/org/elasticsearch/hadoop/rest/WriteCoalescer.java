@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.rest.BulkCommand.Operation;
+import org.elasticsearch.hadoop.util.StringUtils;
+
+/**
+ * Coalesces the writes to the same document (same index, id and routing) inside a batch, before they reach the bulk
+ * buffer. By default, index operations keep the last write, create operations the first, deletes are sent once
+ * and partial updates/upserts are overlaid; a {@link DocumentMerger} can be plugged in (such as {@link AdditiveMerger}
+ * for counters).
+ *
+ * <p/>Entries are serialized when added (so their size is known) and re-serialized only when merged. The documents are
+ * copied when added since callers typically reuse the same instance for every record.
+ */
+class WriteCoalescer {
+
+    private static class Pending {
+        Map<String, Object> document;
+        byte[] data;
+    }
+
+    private static final DocumentMerger LAST = new DocumentMerger() {
+        @Override
+        public Map<String, Object> merge(Map<String, Object> previous, Map<String, Object> current) {
+            return current;
+        }
+    };
+
+    private static final DocumentMerger FIRST = new DocumentMerger() {
+        @Override
+        public Map<String, Object> merge(Map<String, Object> previous, Map<String, Object> current) {
+            return previous;
+        }
+    };
+
+    private static final DocumentMerger OVERLAY = new DocumentMerger() {
+        @Override
+        public Map<String, Object> merge(Map<String, Object> previous, Map<String, Object> current) {
+            Map<String, Object> merged = new LinkedHashMap<String, Object>(previous);
+            merged.putAll(current);
+            return merged;
+        }
+    };
+
+    private final BulkCommand command;
+    private final DocumentMerger merger;
+    // whether the merger is user-provided (and thus might change the metadata fields)
+    private final boolean custom;
+    private final Map<String, Pending> pending = new LinkedHashMap<String, Pending>();
+    private int size = 0;
+
+    WriteCoalescer(Settings settings, BulkCommand command) {
+        this.command = command;
+        if (!command.hasId()) {
+            throw new IllegalArgumentException(String.format("Coalescing writes requires the document id; specify [%s]", ConfigurationOptions.ES_MAPPING_ID));
+        }
+
+        String name = settings.getBatchWriteCoalesceMerger();
+        Operation operation = command.operation();
+        if (operation == Operation.DELETE) {
+            merger = FIRST;
+        }
+        else if (StringUtils.hasText(name)) {
+            merger = ("additive".equalsIgnoreCase(name.trim()) ? new AdditiveMerger() : instantiate(name.trim()));
+        }
+        else if (operation == Operation.CREATE) {
+            merger = FIRST;
+        }
+        else if (operation == Operation.INDEX) {
+            merger = LAST;
+        }
+        else {
+            merger = OVERLAY;
+        }
+        custom = (merger != FIRST && merger != LAST && merger != OVERLAY);
+    }
+
+    private static DocumentMerger instantiate(String className) {
+        try {
+            Class<?> clazz = Class.forName(className, true, Thread.currentThread().getContextClassLoader());
+            return (DocumentMerger) clazz.getDeclaredConstructor().newInstance();
+        } catch (Exception ex) {
+            throw new IllegalArgumentException(String.format("Cannot instantiate document merger [%s]", className), ex);
+        }
+    }
+
+    /**
+     * Adds the given document to the batch.
+     *
+     * @return true if the document was merged with an existing one, false otherwise
+     */
+    boolean add(Map<String, Object> document) throws IOException {
+        document = copy(document);
+        String key = command.key(document);
+        Pending entry = pending.get(key);
+
+        if (entry == null) {
+            entry = new Pending();
+            entry.document = document;
+            entry.data = command.entry(document, document).getBytes(StringUtils.UTF_8);
+            pending.put(key, entry);
+            size += entry.data.length;
+            return false;
+        }
+
+        Map<String, Object> merged = merger.merge(entry.document, document);
+        if (custom) {
+            merged = command.withMetadata(merged, document);
+        }
+        if (merged != entry.document) {
+            size -= entry.data.length;
+            entry.document = merged;
+            entry.data = command.entry(merged, merged).getBytes(StringUtils.UTF_8);
+            size += entry.data.length;
+        }
+        return true;
+    }
+
+    // deep copy of the (nested) maps and lists - the other values are treated as immutable
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T value) {
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return (T) copy;
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<Object>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                copy.add(copy(element));
+            }
+            return (T) copy;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the size (in bytes) of the serialized entries.
+     */
+    int size() {
+        return size;
+    }
+
+    int entries() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the serialized entries (in the order of their first write) and clears the batch.
+     */
+    List<byte[]> drain() {
+        List<byte[]> entries = new ArrayList<byte[]>(pending.size());
+        for (Pending entry : pending.values()) {
+            entries.add(entry.data);
+        }
+        pending.clear();
+        size = 0;
+        return entries;
+    }
+}
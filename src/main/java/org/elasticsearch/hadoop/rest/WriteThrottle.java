@@ -0,0 +1,183 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.hadoop.cfg.Settings;
+
+/**
+ * Limits the write rate of a task (documents and/or bytes per second) through token buckets. When ElasticSearch pushes back
+ * (bulk entries rejected or bulk queues filling up), the rate is cut in half and then recovered gradually (AIMD). Without a
+ * configured rate, the first push-back establishes one based on the throughput observed so far; it is lifted once fully
+ * recovered.
+ * <p/>
+ * Thread-safe as the I/O threads of a shared writer use the same throttle.
+ */
+class WriteThrottle {
+
+    private static final Log log = LogFactory.getLog(WriteThrottle.class);
+
+    static final double MIN_FACTOR = 1d / 32;
+    static final double RECOVERY = 0.05;
+
+    private final double docsRate;
+    private final double bytesRate;
+
+    private double factor = 1;
+    // rate established on push-back when none is configured
+    private double adaptiveDocsRate = 0;
+
+    private final TokenBucket docs = new TokenBucket();
+    private final TokenBucket bytes = new TokenBucket();
+
+    // throughput observed so far
+    private final long start = System.nanoTime();
+    private long totalDocs = 0;
+
+    private static class TokenBucket {
+        private double tokens = 0;
+        private long last = System.nanoTime();
+
+        // returns how long (in nanos) to wait for the given amount at the given rate (per second)
+        long take(double amount, double rate, long now) {
+            tokens = Math.min(rate, tokens + (now - last) * rate / TimeUnit.SECONDS.toNanos(1));
+            last = now;
+            tokens -= amount;
+            return (tokens < 0 ? (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1)) : 0);
+        }
+    }
+
+    /**
+     * Returns the throttle enforcing the task share of the write rate limit (or null if there is no limit nor back-pressure).
+     */
+    static WriteThrottle of(Settings settings) {
+        long docsRate = settings.getBatchWriteRateDocs();
+        long bytesRate = settings.getBatchWriteRateBytes();
+        boolean backpressure = settings.getBatchWriteBackpressure();
+        if (docsRate <= 0 && bytesRate <= 0 && !backpressure) {
+            return null;
+        }
+        // each task gets its share of the job limit
+        int tasks = settings.getBatchWriteRateTasks();
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Limiting writes to [%.1f] docs/s and [%.1f] bytes/s (1/%d of the job limit); back-pressure %s",
+                    docsRate / (double) tasks, bytesRate / (double) tasks, tasks, (backpressure ? "enabled" : "disabled")));
+        }
+        return new WriteThrottle(docsRate / (double) tasks, bytesRate / (double) tasks);
+    }
+
+    /**
+     * @param docsRate documents per second (0 for no limit)
+     * @param bytesRate bytes per second (0 for no limit)
+     */
+    WriteThrottle(double docsRate, double bytesRate) {
+        this.docsRate = docsRate;
+        this.bytesRate = bytesRate;
+    }
+
+    /**
+     * Returns how long (in nanos) to wait before sending the given amount of data.
+     */
+    synchronized long delay(int docCount, long byteCount) {
+        long now = System.nanoTime();
+        totalDocs += docCount;
+        long wait = 0;
+
+        double rate = (docsRate > 0 ? docsRate : adaptiveDocsRate) * factor;
+        if (rate > 0) {
+            wait = docs.take(docCount, rate, now);
+        }
+        if (bytesRate > 0) {
+            wait = Math.max(wait, bytes.take(byteCount, bytesRate * factor, now));
+        }
+        return wait;
+    }
+
+    /**
+     * Records the outcome of a bulk request.
+     */
+    synchronized void onBulk(int rejected) {
+        if (rejected > 0) {
+            slowDown();
+        }
+        else if (factor < 1) {
+            factor = Math.min(1, factor + RECOVERY);
+            if (factor == 1 && docsRate <= 0) {
+                adaptiveDocsRate = 0;
+            }
+        }
+    }
+
+    /**
+     * Records the fill ratio (0-1) of the fullest bulk queue of the cluster.
+     */
+    synchronized void onQueue(double fill, double threshold) {
+        if (fill >= threshold) {
+            slowDown();
+        }
+    }
+
+    private void slowDown() {
+        if (docsRate <= 0 && bytesRate <= 0 && adaptiveDocsRate <= 0) {
+            double elapsed = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+            adaptiveDocsRate = (elapsed > 0 ? totalDocs / elapsed : 0);
+            if (adaptiveDocsRate <= 0) {
+                return;
+            }
+        }
+        factor = Math.max(MIN_FACTOR, factor / 2);
+    }
+
+    synchronized double factor() {
+        return factor;
+    }
+
+    /**
+     * Returns the current (effective) documents per second limit or 0 if there is none.
+     */
+    synchronized double docsRate() {
+        return (docsRate > 0 ? docsRate : adaptiveDocsRate) * factor;
+    }
+
+    // queue sizes are reported as numbers or size values (such as 1k); -1 (or none) means unbounded
+    static int parseQueueSize(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value == null) {
+            return -1;
+        }
+        String string = value.toString().trim().toLowerCase(Locale.ENGLISH);
+        int multiplier = 1;
+        if (string.endsWith("k")) {
+            multiplier = 1000;
+            string = string.substring(0, string.length() - 1);
+        }
+        else if (string.endsWith("m")) {
+            multiplier = 1000 * 1000;
+            string = string.substring(0, string.length() - 1);
+        }
+        try {
+            return (int) (Double.parseDouble(string) * multiplier);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.hive;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IndexPrunerTest {
+
+    private static final List<String> INDICES = Arrays.asList("logs-2013.06.01", "logs-2013.06.02", "logs-2013.06.03", "other");
+
+    private static ExprNodeDesc column(String name, TypeInfo type) {
+        return new ExprNodeColumnDesc(type, name, "logs", false);
+    }
+
+    private static ExprNodeDesc call(GenericUDF udf, ExprNodeDesc... children) throws Exception {
+        return ExprNodeGenericFuncDesc.newInstance(udf, Arrays.asList(children));
+    }
+
+    private static ExprNodeDesc day(GenericUDF udf, String value) throws Exception {
+        return call(udf, column("day", TypeInfoFactory.stringTypeInfo), new ExprNodeConstantDesc(value));
+    }
+
+    @Test
+    public void testWildcard() {
+        assertEquals("logs-*", new IndexPruner("logs-{day}").wildcard());
+        assertEquals("logs-*.*", new IndexPruner("logs-{year}.{month}").wildcard());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoColumns() {
+        new IndexPruner("logs");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFormatNotSupported() {
+        new IndexPruner("logs-{day:yyyy.MM.dd}");
+    }
+
+    @Test
+    public void testEquality() throws Exception {
+        List<String> indices = new IndexPruner("logs-{day}").prune(INDICES, day(new GenericUDFOPEqual(), "2013.06.02"));
+        assertEquals(Arrays.asList("logs-2013.06.02"), indices);
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        List<String> indices = new IndexPruner("logs-{day}").prune(INDICES, day(new GenericUDFOPEqualOrGreaterThan(), "2013.06.02"));
+        assertEquals(Arrays.asList("logs-2013.06.02", "logs-2013.06.03"), indices);
+    }
+
+    @Test
+    public void testOtherColumnsAreIgnored() throws Exception {
+        ExprNodeDesc level = call(new GenericUDFOPEqual(), column("level", TypeInfoFactory.stringTypeInfo), new ExprNodeConstantDesc("error"));
+        ExprNodeDesc predicate = call(new GenericUDFOPAnd(), level, day(new GenericUDFOPEqual(), "2013.06.01"));
+
+        IndexPruner pruner = new IndexPruner("logs-{DAY}");
+        assertEquals("(day = '2013.06.01')", pruner.partitionPredicate(predicate).getExprString());
+        assertEquals(Arrays.asList("logs-2013.06.01"), pruner.prune(INDICES, predicate));
+
+        // a disjunction involving other columns cannot be used
+        predicate = call(new GenericUDFOPOr(), level, day(new GenericUDFOPEqual(), "2013.06.01"));
+        assertNull(pruner.partitionPredicate(predicate));
+        assertEquals(INDICES.subList(0, 3), pruner.prune(INDICES, predicate));
+    }
+
+    @Test
+    public void testTypedColumns() throws Exception {
+        ExprNodeDesc predicate = call(new GenericUDFOPEqual(), column("month", TypeInfoFactory.intTypeInfo), new ExprNodeConstantDesc(6));
+        List<String> indices = new IndexPruner("logs-{year}.{month}").prune(Arrays.asList("logs-2013.05", "logs-2013.06", "logs-2013.xx"), predicate);
+        // values that cannot be converted are kept
+        assertEquals(Arrays.asList("logs-2013.06", "logs-2013.xx"), indices);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.integration.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
+
+/**
+ * Records the throughput (docs/s, bytes/s) and peak heap of each benchmark and saves them as JSON
+ * (<tt>build/bench/results-&lt;timestamp&gt;.json</tt> or the file given by the <tt>bench.results</tt> system property)
+ * for run-to-run comparison.
+ */
+public abstract class BenchmarkResults {
+
+    /** Operation being measured. */
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private static final List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+
+    /**
+     * Runs and measures the given task.
+     *
+     * @param integration integration name (such as mr or pig)
+     * @param operation operation name (such as write or read)
+     * @param task task to measure
+     * @return the task duration (in ms)
+     */
+    public static long measure(String integration, String operation, Task task) throws Exception {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        task.run();
+        long millis = Math.max(System.currentTimeMillis() - start, 1);
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        long docs = Dataset.DOCS;
+        long bytes = Dataset.bytes();
+
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("integration", integration);
+        result.put("operation", operation);
+        result.put("docs", docs);
+        result.put("bytes", bytes);
+        result.put("millis", millis);
+        result.put("docsPerSecond", docs * 1000 / millis);
+        result.put("bytesPerSecond", bytes * 1000 / millis);
+        result.put("peakHeapBytes", peakHeap);
+
+        synchronized (results) {
+            results.add(result);
+        }
+        System.out.println(String.format("[bench] %s %s: %d docs in %d ms -> %d docs/s, %d bytes/s, peak heap %d MB",
+                integration, operation, docs, millis, docs * 1000 / millis, bytes * 1000 / millis, peakHeap / (1024 * 1024)));
+        return millis;
+    }
+
+    /**
+     * Saves the results recorded so far.
+     */
+    public static File save() throws IOException {
+        Date now = new Date();
+        String path = System.getProperty("bench.results");
+        File file = (path != null ? new File(path) : new File("build/bench/results-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(now) + ".json"));
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        Map<String, Object> run = new LinkedHashMap<String, Object>();
+        run.put("timestamp", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(now));
+        run.put("java", System.getProperty("java.version"));
+        run.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        run.put("datasetDocs", Dataset.DOCS);
+        run.put("datasetBytes", Dataset.bytes());
+        synchronized (results) {
+            run.put("results", new ArrayList<Map<String, Object>>(results));
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(SerializationConfig.Feature.INDENT_OUTPUT, true);
+        mapper.writeValue(file, run);
+        System.out.println("[bench] results saved to " + file.getAbsolutePath());
+        return file;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.integration.bench;
+
+import org.elasticsearch.hadoop.integration.LocalES;
+import org.elasticsearch.hadoop.integration.cascading.CascadingHadoopBenchmark;
+import org.elasticsearch.hadoop.integration.crunch.CrunchBenchmark;
+import org.elasticsearch.hadoop.integration.hive.HiveBenchmark;
+import org.elasticsearch.hadoop.integration.mr.MRBenchmark;
+import org.elasticsearch.hadoop.integration.pig.PigBenchmark;
+import org.junit.ClassRule;
+import org.junit.rules.ChainedExternalResource;
+import org.junit.rules.ExternalResource;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * End-to-end throughput benchmarks - each integration writes the synthetic {@link Dataset} to the embedded node
+ * and reads it back. Results are saved through {@link BenchmarkResults} once the suite completes.
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({ MRBenchmark.class, PigBenchmark.class, HiveBenchmark.class, CascadingHadoopBenchmark.class, CrunchBenchmark.class })
+public class BenchmarkSuite {
+
+    public static ExternalResource results = new ExternalResource() {
+        @Override
+        protected void after() {
+            try {
+                BenchmarkResults.save();
+            } catch (Exception ex) {
+                throw new IllegalStateException("Cannot save benchmark results", ex);
+            }
+        }
+    };
+
+    @ClassRule
+    public static ExternalResource resource = new ChainedExternalResource(new LocalES(), results);
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.integration.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import org.elasticsearch.hadoop.integration.TestSettings;
+import org.elasticsearch.hadoop.rest.RestClient;
+import org.elasticsearch.hadoop.util.StringUtils;
+
+/**
+ * Synthetic, tab-delimited dataset used by the throughput benchmarks. Each line has the format
+ * <tt>id name url picture description</tt> (same as <tt>artists.dat</tt> plus a description of configurable size).
+ *
+ * <p/>The size is controlled through the <tt>bench.docs</tt> (number of lines) and <tt>bench.payload</tt>
+ * (description length) system properties.
+ */
+public abstract class Dataset {
+
+    public static final long DOCS = Long.getLong("bench.docs", 100000);
+    public static final int PAYLOAD = Integer.getInteger("bench.payload", 128);
+    public static final String FIELDS = "id, name, url, picture, description";
+
+    private static final String[] WORDS = { "elasticsearch", "hadoop", "hive", "pig", "cascading", "crunch", "index",
+            "shard", "node", "cluster", "query", "scroll", "bulk", "mapping", "document", "field" };
+
+    private static File file;
+
+    /**
+     * Returns the dataset file, generating it (once per JVM) if needed.
+     */
+    public static synchronized File file() throws IOException {
+        if (file == null) {
+            File dir = new File("build/bench");
+            dir.mkdirs();
+            File data = new File(dir, "dataset-" + DOCS + "-" + PAYLOAD + ".dat");
+            if (!data.exists()) {
+                generate(data);
+            }
+            file = data;
+        }
+        return file;
+    }
+
+    public static long bytes() throws IOException {
+        return file().length();
+    }
+
+    private static void generate(File data) throws IOException {
+        Random random = new Random(DOCS);
+        File tmp = new File(data.getPath() + ".tmp");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StringUtils.UTF_8));
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (long i = 0; i < DOCS; i++) {
+                sb.setLength(0);
+                String name = word(random) + " " + word(random);
+                sb.append(i).append("\t");
+                sb.append(name).append("\t");
+                sb.append("http://www.last.fm/music/").append(name.replace(' ', '+')).append("\t");
+                sb.append("http://userserve-ak.last.fm/serve/252/").append(random.nextInt(100000000)).append(".jpg\t");
+                while (sb.length() < PAYLOAD + 128) {
+                    sb.append(word(random)).append(" ");
+                }
+                sb.append("\n");
+                writer.write(sb.toString());
+            }
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(data)) {
+            throw new IOException("Cannot create dataset " + data);
+        }
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    /**
+     * Removes the given index so that each run starts from scratch.
+     */
+    public static void clean(String index) {
+        RestClient client = new RestClient(new TestSettings());
+        try {
+            client.deleteIndex(index);
+        } catch (Exception ex) {
+            // ignore (index missing)
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Refreshes the given index and returns the number of documents of the given resource (<tt>index/type</tt>).
+     */
+    public static long count(String resource) throws IOException {
+        RestClient client = new RestClient(new TestSettings());
+        try {
+            client.refresh(resource);
+            return client.count(resource + "/_count");
+        } finally {
+            client.close();
+        }
+    }
+}
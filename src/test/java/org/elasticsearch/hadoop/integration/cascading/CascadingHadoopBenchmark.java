@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.integration.cascading;
+
+import org.elasticsearch.hadoop.cascading.ESTap;
+import org.elasticsearch.hadoop.integration.Stream;
+import org.elasticsearch.hadoop.integration.TestSettings;
+import org.elasticsearch.hadoop.integration.bench.BenchmarkResults;
+import org.elasticsearch.hadoop.integration.bench.Dataset;
+import org.junit.Test;
+
+import cascading.flow.hadoop.HadoopFlowConnector;
+import cascading.pipe.Pipe;
+import cascading.scheme.hadoop.TextDelimited;
+import cascading.tap.Tap;
+import cascading.tap.hadoop.Lfs;
+import cascading.tuple.Fields;
+
+import static org.junit.Assert.*;
+
+public class CascadingHadoopBenchmark {
+
+    private static final String RESOURCE = "bench-cascading/data";
+
+    @Test
+    public void testThroughput() throws Exception {
+        Dataset.clean("bench-cascading");
+
+        final Fields fields = new Fields("id", "name", "url", "picture", "description");
+        final Tap in = new Lfs(new TextDelimited(fields), Dataset.file().getAbsolutePath());
+        final Tap out = new ESTap(RESOURCE, fields);
+
+        BenchmarkResults.measure("cascading", "write", new BenchmarkResults.Task() {
+            @Override
+            public void run() throws Exception {
+                new HadoopFlowConnector(TestSettings.TESTING_PROPS).connect(in, out, new Pipe("write")).complete();
+            }
+        });
+        assertEquals(Dataset.DOCS, Dataset.count(RESOURCE));
+
+        final Tap source = new ESTap(RESOURCE + "/_search?q=*");
+        final Tap sink = new HadoopPrintStreamTap(Stream.NULL);
+
+        BenchmarkResults.measure("cascading", "read", new BenchmarkResults.Task() {
+            @Override
+            public void run() throws Exception {
+                new HadoopFlowConnector(TestSettings.TESTING_PROPS).connect(source, sink, new Pipe("read")).complete();
+            }
+        });
+    }
+}
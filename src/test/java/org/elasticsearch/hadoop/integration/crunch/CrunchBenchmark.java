@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.integration.crunch;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.impl.mr.MRPipeline;
+import org.apache.crunch.io.From;
+import org.apache.crunch.io.To;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.io.MapWritable;
+import org.elasticsearch.hadoop.crunch.ESSource;
+import org.elasticsearch.hadoop.crunch.ESTarget;
+import org.elasticsearch.hadoop.integration.bench.BenchmarkResults;
+import org.elasticsearch.hadoop.integration.bench.Dataset;
+import org.elasticsearch.hadoop.util.TestUtils;
+import org.elasticsearch.hadoop.util.WritableUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CrunchBenchmark {
+
+    private static final String RESOURCE = "bench-crunch/data";
+
+    // static (not anonymous) functions so they can be serialized without their enclosing instance
+    static class LineToDoc extends MapFn<String, MapWritable> {
+        @Override
+        public MapWritable map(String line) {
+            String[] tokens = line.split("\t");
+            Map<String, Object> entry = new LinkedHashMap<String, Object>();
+            entry.put("id", Long.valueOf(tokens[0]));
+            entry.put("name", tokens[1]);
+            entry.put("url", tokens[2]);
+            entry.put("picture", tokens[3]);
+            entry.put("description", tokens[4]);
+            return (MapWritable) WritableUtils.toWritable(entry);
+        }
+    }
+
+    static class DocToString extends MapFn<MapWritable, String> {
+        @Override
+        public String map(MapWritable input) {
+            return String.valueOf(input.size());
+        }
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        Dataset.clean("bench-crunch");
+
+        final String input = Dataset.file().getAbsolutePath();
+
+        BenchmarkResults.measure("crunch", "write", new BenchmarkResults.Task() {
+            @Override
+            public void run() throws Exception {
+                MRPipeline pipeline = new MRPipeline(CrunchBenchmark.class);
+                PCollection<MapWritable> docs = pipeline.read(From.textFile(input)).parallelDo(new LineToDoc(),
+                        Writables.writables(MapWritable.class));
+
+                pipeline.write(docs, new ESTarget.Builder(RESOURCE).setPort(9500).build());
+                assertTrue(pipeline.done().succeeded());
+            }
+        });
+        assertEquals(Dataset.DOCS, Dataset.count(RESOURCE));
+
+        final File output = new File("build/bench/crunch-read");
+        TestUtils.delete(output);
+
+        BenchmarkResults.measure("crunch", "read", new BenchmarkResults.Task() {
+            @Override
+            public void run() throws Exception {
+                MRPipeline pipeline = new MRPipeline(CrunchBenchmark.class);
+                PCollection<String> ids = pipeline.read(
+                        new ESSource.Builder<MapWritable>(RESOURCE + "/_search?q=*", MapWritable.class).setPort(9500).build())
+                        .parallelDo(new DocToString(), Writables.strings());
+
+                pipeline.write(ids, To.textFile(output.getAbsolutePath()));
+                assertTrue(pipeline.done().succeeded());
+            }
+        });
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.integration.hive;
+
+import org.elasticsearch.hadoop.integration.TestSettings;
+import org.elasticsearch.hadoop.integration.bench.BenchmarkResults;
+import org.elasticsearch.hadoop.integration.bench.Dataset;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HiveBenchmark {
+
+    private static final String RESOURCE = "bench-hive/data";
+
+    static HiveEmbeddedServer server;
+
+    @BeforeClass
+    public static void startup() throws Exception {
+        server = new HiveEmbeddedServer(TestSettings.TESTING_PROPS);
+        server.start();
+
+        server.execute("DROP DATABASE IF EXISTS bench CASCADE");
+        server.execute("CREATE DATABASE bench");
+        server.execute("USE bench");
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        try {
+            server.execute("DROP DATABASE IF EXISTS bench CASCADE");
+        } catch (Exception ex) {
+        }
+        server.stop();
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        Dataset.clean("bench-hive");
+
+        server.execute("CREATE TABLE source ("
+                + "id          BIGINT, "
+                + "name        STRING, "
+                + "url         STRING, "
+                + "picture     STRING, "
+                + "description STRING) "
+                + "ROW FORMAT DELIMITED FIELDS TERMINATED BY '\t' LINES TERMINATED BY '\n'");
+        // use LOCAL to copy (not move) the dataset
+        server.execute("LOAD DATA LOCAL INPATH '" + Dataset.file().getAbsolutePath() + "' OVERWRITE INTO TABLE source");
+
+        server.execute("CREATE EXTERNAL TABLE datasave ("
+                + "id          BIGINT, "
+                + "name        STRING, "
+                + "url         STRING, "
+                + "picture     STRING, "
+                + "description STRING) "
+                + "STORED BY 'org.elasticsearch.hadoop.hive.ESStorageHandler' "
+                + "TBLPROPERTIES('es.resource' = '" + RESOURCE + "') ");
+
+        BenchmarkResults.measure("hive", "write", new BenchmarkResults.Task() {
+            @Override
+            public void run() throws Exception {
+                server.execute("INSERT OVERWRITE TABLE datasave SELECT s.id, s.name, s.url, s.picture, s.description FROM source s");
+            }
+        });
+        assertEquals(Dataset.DOCS, Dataset.count(RESOURCE));
+
+        server.refreshConfig();
+        server.execute("CREATE EXTERNAL TABLE dataload ("
+                + "id          BIGINT, "
+                + "name        STRING, "
+                + "url         STRING, "
+                + "picture     STRING, "
+                + "description STRING) "
+                + "STORED BY 'org.elasticsearch.hadoop.hive.ESStorageHandler' "
+                + "TBLPROPERTIES('es.resource' = '" + RESOURCE + "/_search?q=*') ");
+
+        BenchmarkResults.measure("hive", "read", new BenchmarkResults.Task() {
+            @Override
+            public void run() throws Exception {
+                server.execute("SELECT count(*) FROM dataload");
+            }
+        });
+    }
+}
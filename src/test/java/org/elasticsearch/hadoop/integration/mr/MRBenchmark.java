@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.integration.mr;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.TextInputFormat;
+import org.elasticsearch.hadoop.integration.TestSettings;
+import org.elasticsearch.hadoop.integration.bench.BenchmarkResults;
+import org.elasticsearch.hadoop.integration.bench.Dataset;
+import org.elasticsearch.hadoop.mr.ESInputFormat;
+import org.elasticsearch.hadoop.mr.ESOutputFormat;
+import org.elasticsearch.hadoop.util.TestUtils;
+import org.elasticsearch.hadoop.util.WritableUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MRBenchmark {
+
+    private static final String RESOURCE = "bench-mr/data";
+
+    public static class DatasetMapper extends MapReduceBase implements Mapper<LongWritable, Text, LongWritable, MapWritable> {
+
+        @Override
+        public void map(LongWritable key, Text value, OutputCollector<LongWritable, MapWritable> output, Reporter reporter) throws IOException {
+            String[] tokens = value.toString().split("\t");
+            Map<String, Object> entry = new LinkedHashMap<String, Object>();
+            entry.put("id", Long.valueOf(tokens[0]));
+            entry.put("name", tokens[1]);
+            entry.put("url", tokens[2]);
+            entry.put("picture", tokens[3]);
+            entry.put("description", tokens[4]);
+            output.collect(key, (MapWritable) WritableUtils.toWritable(entry));
+        }
+    }
+
+    private JobConf conf() {
+        JobConf conf = new JobConf();
+        TestUtils.addProperties(conf, TestSettings.TESTING_PROPS);
+        conf.setBoolean("mapred.used.genericoptionsparser", true);
+        conf.set("mapred.job.tracker", "local");
+        return conf;
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        Dataset.clean("bench-mr");
+
+        final JobConf write = conf();
+        write.setInputFormat(TextInputFormat.class);
+        write.setOutputFormat(ESOutputFormat.class);
+        write.setMapOutputValueClass(MapWritable.class);
+        write.setMapperClass(DatasetMapper.class);
+        write.setNumReduceTasks(0);
+        FileInputFormat.setInputPaths(write, new Path(Dataset.file().getAbsolutePath()));
+        write.set("es.resource", RESOURCE);
+
+        BenchmarkResults.measure("mr", "write", new BenchmarkResults.Task() {
+            @Override
+            public void run() throws Exception {
+                JobClient.runJob(write);
+            }
+        });
+        assertEquals(Dataset.DOCS, Dataset.count(RESOURCE));
+
+        final JobConf read = conf();
+        read.setInputFormat(ESInputFormat.class);
+        read.setOutputFormat(PrintStreamOutputFormat.class);
+        read.setOutputKeyClass(Text.class);
+        read.setOutputValueClass(MapWritable.class);
+        read.setNumReduceTasks(0);
+        read.set("es.resource", RESOURCE + "/_search?q=*");
+
+        BenchmarkResults.measure("mr", "read", new BenchmarkResults.Task() {
+            @Override
+            public void run() throws Exception {
+                JobClient.runJob(read);
+            }
+        });
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.integration.pig;
+
+import java.io.File;
+
+import org.elasticsearch.hadoop.integration.bench.BenchmarkResults;
+import org.elasticsearch.hadoop.integration.bench.Dataset;
+import org.elasticsearch.hadoop.pig.Pig;
+import org.elasticsearch.hadoop.util.TestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PigBenchmark {
+
+    private static final String RESOURCE = "bench-pig/data";
+
+    static Pig pig;
+
+    @BeforeClass
+    public static void startup() throws Exception {
+        pig = new Pig();
+        pig.start();
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        pig.stop();
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        Dataset.clean("bench-pig");
+
+        final String write =
+                "A = LOAD '" + Dataset.file().getAbsolutePath() + "' USING PigStorage() AS (id:long, name:chararray, url:chararray, picture:chararray, description:chararray);" +
+                "STORE A INTO '" + RESOURCE + "' USING org.elasticsearch.hadoop.pig.ESStorage();";
+
+        BenchmarkResults.measure("pig", "write", new BenchmarkResults.Task() {
+            @Override
+            public void run() throws Exception {
+                pig.executeScript(write);
+            }
+        });
+        assertEquals(Dataset.DOCS, Dataset.count(RESOURCE));
+
+        // count the documents so that all of them are read (and converted) without storing them
+        File output = new File("build/bench/pig-count");
+        TestUtils.delete(output);
+
+        final String read =
+                "A = LOAD '" + RESOURCE + "/_search?q=*' USING org.elasticsearch.hadoop.pig.ESStorage();" +
+                "B = GROUP A ALL;" +
+                "C = FOREACH B GENERATE COUNT_STAR(A);" +
+                "STORE C INTO '" + output.getAbsolutePath() + "';";
+
+        BenchmarkResults.measure("pig", "read", new BenchmarkResults.Task() {
+            @Override
+            public void run() throws Exception {
+                pig.executeScript(read);
+            }
+        });
+    }
+}
@@ -0,0 +1,933 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.integration.stub;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.elasticsearch.hadoop.util.StringUtils;
+
+/**
+ * Lightweight, in-process stand-in for an ElasticSearch node. Implements just enough of the REST API
+ * (<tt>_nodes</tt> (including the bulk thread pool), <tt>_search_shards</tt>, scan/scroll, <tt>_bulk</tt>, <tt>_refresh</tt>, <tt>_optimize</tt>, index
+ * creation/settings, aliases and versioned document get/create/update/delete) to drive the connector
+ * without a cluster, network access or any disk I/O.
+ *
+ * <p/>Supports configurable latency, generated payloads and fault injection (HTTP 429/503 responses and partial
+ * bulk failures) so the client behavior and its throughput can be measured in isolation.
+ *
+ * <p/>Uses a minimal HTTP/1.1 implementation (keep-alive, fixed length bodies) since the client sends relative
+ * request URIs which the JDK server does not accept.
+ */
+public class StubESServer {
+
+    private static final String NODE_ID = "stub-node";
+    private static final byte[] EMPTY = new byte[0];
+
+    private ServerSocket server;
+    private ExecutorService executor;
+    private final Random random = new Random(42);
+    private final AtomicLong scans = new AtomicLong();
+    private final Map<String, AtomicLong> scrolls = new ConcurrentHashMap<String, AtomicLong>();
+
+    // configuration
+    private volatile long latency = 0;
+    private volatile long docs = 10000;
+    private volatile int shards = 5;
+    private volatile int payloadSize = 256;
+    private volatile double tooManyRequestsRate = 0;
+    private volatile double unavailableRate = 0;
+    private volatile double itemRejectionRate = 0;
+    private volatile double itemFailureRate = 0;
+    private volatile int bulkQueue = 0;
+    private volatile int bulkQueueSize = 50;
+
+    // statistics
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong docsIndexed = new AtomicLong();
+    private final AtomicLong docsRejected = new AtomicLong();
+    private final AtomicLong docsFailed = new AtomicLong();
+    private final AtomicLong docsServed = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong errorResponses = new AtomicLong();
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong threadPoolRequests = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong optimizes = new AtomicLong();
+    private final AtomicLong peakScrolls = new AtomicLong();
+
+    // existing indices and their settings
+    private final Map<String, Map<String, Object>> indices = new ConcurrentHashMap<String, Map<String, Object>>();
+    // alias -> index
+    private final Map<String, String> aliases = new ConcurrentHashMap<String, String>();
+    // alias -> filter
+    private final Map<String, Map<String, Object>> aliasFilters = new ConcurrentHashMap<String, Map<String, Object>>();
+    // path and parameters of the scan requests
+    private final List<String> scanRequests = Collections.synchronizedList(new ArrayList<String>());
+    private final ConcurrentHashMap<String, AtomicLong> docsPerIndex = new ConcurrentHashMap<String, AtomicLong>();
+    // index/type/id -> [version, source]
+    private final Map<String, Object[]> documents = new LinkedHashMap<String, Object[]>();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public StubESServer start() throws IOException {
+        // bind to an ephemeral port on the loopback interface
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        executor = Executors.newCachedThreadPool();
+        final ServerSocket socket = server;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept(socket);
+            }
+        });
+        return this;
+    }
+
+    public void stop() {
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    private void accept(ServerSocket server) {
+        while (!server.isClosed()) {
+            try {
+                final Socket socket = server.accept();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (IOException ex) {
+                // server closed
+            }
+        }
+    }
+
+    // serves the requests of one (keep-alive) connection
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            Request request;
+            while ((request = Request.read(in)) != null) {
+                dispatch(request);
+                request.writeTo(out);
+                if (request.close) {
+                    break;
+                }
+            }
+        } catch (SocketException ex) {
+            // connection closed
+        } catch (IOException ex) {
+            // connection closed
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    // HTTP request
+    private static class Request {
+        String method;
+        String path;
+        String query = "";
+        byte[] body;
+        boolean close;
+
+        int status = 200;
+        byte[] response = EMPTY;
+
+        static Request read(DataInputStream in) throws IOException {
+            String line = line(in);
+            if (line == null || line.length() == 0) {
+                return null;
+            }
+
+            Request request = new Request();
+            String[] tokens = line.split(" ");
+            request.method = tokens[0];
+            String uri = tokens[1];
+            // the client sends relative URIs
+            if (!uri.startsWith("/")) {
+                uri = "/" + uri;
+            }
+            int params = uri.indexOf("?");
+            if (params >= 0) {
+                request.query = URLDecoder.decode(uri.substring(params + 1), "UTF-8");
+                uri = uri.substring(0, params);
+            }
+            request.path = uri;
+            request.close = tokens.length > 2 && "HTTP/1.0".equals(tokens[2]);
+
+            int length = 0;
+            boolean chunked = false;
+            while ((line = line(in)) != null && line.length() > 0) {
+                int colon = line.indexOf(":");
+                String name = line.substring(0, colon).trim().toLowerCase();
+                String value = line.substring(colon + 1).trim();
+                if ("content-length".equals(name)) {
+                    length = Integer.parseInt(value);
+                }
+                else if ("transfer-encoding".equals(name)) {
+                    chunked = "chunked".equalsIgnoreCase(value);
+                }
+                else if ("connection".equals(name)) {
+                    request.close = "close".equalsIgnoreCase(value);
+                }
+            }
+
+            if (chunked) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                int size;
+                while ((size = Integer.parseInt(line(in).trim(), 16)) > 0) {
+                    byte[] chunk = new byte[size];
+                    in.readFully(chunk);
+                    body.write(chunk);
+                    line(in);
+                }
+                line(in);
+                request.body = body.toByteArray();
+            }
+            else {
+                request.body = new byte[length];
+                in.readFully(request.body);
+            }
+            return request;
+        }
+
+        private static String line(InputStream in) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b == '\n') {
+                    int length = sb.length();
+                    if (length > 0 && sb.charAt(length - 1) == '\r') {
+                        sb.setLength(length - 1);
+                    }
+                    return sb.toString();
+                }
+                sb.append((char) b);
+            }
+            return (sb.length() > 0 ? sb.toString() : null);
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            String headers = "HTTP/1.1 " + status + " " + (status == 200 ? "OK" : "Error") + "\r\n"
+                    + "Content-Type: application/json; charset=UTF-8\r\n"
+                    + "Content-Length: " + response.length + "\r\n"
+                    + (close ? "Connection: close\r\n" : "") + "\r\n";
+            out.write(headers.getBytes(StringUtils.UTF_8));
+            if (!"HEAD".equals(method)) {
+                out.write(response);
+            }
+            out.flush();
+        }
+    }
+
+    public StubESServer latency(long millis) {
+        this.latency = millis;
+        return this;
+    }
+
+    /** Number of documents returned by a scan (over all shards). */
+    public StubESServer docs(long docs) {
+        this.docs = docs;
+        return this;
+    }
+
+    public StubESServer shards(int shards) {
+        this.shards = shards;
+        return this;
+    }
+
+    /** Approximate size (in bytes) of the generated documents. */
+    public StubESServer payloadSize(int bytes) {
+        this.payloadSize = bytes;
+        return this;
+    }
+
+    /** Bulk thread pool queue (current size and capacity) reported by the node stats. */
+    public StubESServer bulkQueue(int queue, int capacity) {
+        this.bulkQueue = queue;
+        this.bulkQueueSize = capacity;
+        return this;
+    }
+
+    /** Ratio (0-1) of bulk requests rejected as a whole with HTTP 429. */
+    public StubESServer tooManyRequests(double rate) {
+        this.tooManyRequestsRate = rate;
+        return this;
+    }
+
+    /** Ratio (0-1) of requests (of any kind) answered with HTTP 503. */
+    public StubESServer unavailable(double rate) {
+        this.unavailableRate = rate;
+        return this;
+    }
+
+    /** Ratio (0-1) of bulk entries rejected (EsRejectedExecutionException) - these can be retried. */
+    public StubESServer itemRejections(double rate) {
+        this.itemRejectionRate = rate;
+        return this;
+    }
+
+    /** Ratio (0-1) of bulk entries failing permanently (MapperParsingException). */
+    public StubESServer itemFailures(double rate) {
+        this.itemFailureRate = rate;
+        return this;
+    }
+
+    public void reset() {
+        requests.set(0);
+        docsIndexed.set(0);
+        docsPerIndex.clear();
+        docsRejected.set(0);
+        docsFailed.set(0);
+        docsServed.set(0);
+        bytesReceived.set(0);
+        bytesServed.set(0);
+        errorResponses.set(0);
+        bulkRequests.set(0);
+        threadPoolRequests.set(0);
+        refreshes.set(0);
+        optimizes.set(0);
+        peakScrolls.set(scrolls.size());
+        scanRequests.clear();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getDocsIndexed() {
+        return docsIndexed.get();
+    }
+
+    public long getDocsRejected() {
+        return docsRejected.get();
+    }
+
+    public long getDocsFailed() {
+        return docsFailed.get();
+    }
+
+    public long getDocsServed() {
+        return docsServed.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    public long getErrorResponses() {
+        return errorResponses.get();
+    }
+
+    public long getBulkRequests() {
+        return bulkRequests.get();
+    }
+
+    public long getThreadPoolRequests() {
+        return threadPoolRequests.get();
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    public long getOptimizes() {
+        return optimizes.get();
+    }
+
+    /**
+     * Returns the highest number of scrolls open at the same time (since the last reset).
+     */
+    public long getPeakScrolls() {
+        return peakScrolls.get();
+    }
+
+    /**
+     * Returns the number of documents (created through the document API) in the given index.
+     */
+    public int getDocuments(String index) {
+        synchronized (documents) {
+            int count = 0;
+            for (String path : documents.keySet()) {
+                if (path.startsWith(index + "/")) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Returns the settings of the given index (with the <tt>index.</tt> prefix) or null if the index does not exist.
+     */
+    public Map<String, Object> getIndexSettings(String index) {
+        return indices.get(resolve(index));
+    }
+
+    /**
+     * Returns the number of documents indexed in the given index.
+     */
+    public long getDocsIndexed(String index) {
+        AtomicLong counter = docsPerIndex.get(resolve(index));
+        return (counter != null ? counter.get() : 0);
+    }
+
+    /**
+     * Returns the index the given alias points to or null if there is no such alias.
+     */
+    public String getAlias(String alias) {
+        return aliases.get(alias);
+    }
+
+    public StubESServer index(String index) {
+        createIndex(index, null);
+        return this;
+    }
+
+    public StubESServer alias(String alias, String index) {
+        aliases.put(alias, index);
+        return this;
+    }
+
+    /** Filtered alias - the filter is not applied by the stub, only reported through <tt>_aliases</tt>. */
+    public StubESServer alias(String alias, String index, Map<String, Object> filter) {
+        aliasFilters.put(alias, filter);
+        return alias(alias, index);
+    }
+
+    /**
+     * Returns the scan requests (path and parameters) received since the last reset.
+     */
+    public List<String> getScanRequests() {
+        synchronized (scanRequests) {
+            return new ArrayList<String>(scanRequests);
+        }
+    }
+
+    private String resolve(String name) {
+        String index = aliases.get(name);
+        return (index != null ? index : name);
+    }
+
+    // resolves a comma-separated list of indices, aliases and wildcards (matching the existing indices)
+    private Set<String> resolveAll(String expression) {
+        Set<String> resolved = new LinkedHashSet<String>();
+        for (String name : expression.split(",")) {
+            if (name.contains("*")) {
+                String regex = ("\\Q" + name + "\\E").replace("*", "\\E.*\\Q");
+                for (String index : new TreeSet<String>(indices.keySet())) {
+                    if (index.matches(regex)) {
+                        resolved.add(index);
+                    }
+                }
+            }
+            else {
+                resolved.add(resolve(name));
+            }
+        }
+        return resolved;
+    }
+
+    private void dispatch(Request request) throws IOException {
+        requests.incrementAndGet();
+        byte[] body = request.body;
+        bytesReceived.addAndGet(body.length);
+
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        String path = request.path;
+        String query = request.query;
+
+        if (chance(unavailableRate)) {
+            error(request, 503, "UnavailableShardsException[stub]");
+            return;
+        }
+
+        String name = (path.length() > 1 ? path.substring(1).split("/")[0] : "");
+        String index = resolve(name);
+
+        if (path.endsWith("/_bulk")) {
+            bulkRequests.incrementAndGet();
+            if (chance(tooManyRequestsRate)) {
+                error(request, 429, "EsRejectedExecutionException[rejected execution (queue capacity 50)]");
+                return;
+            }
+            if (!name.startsWith("_") && !indices.containsKey(index)) {
+                createIndex(index, null);
+            }
+            bulk(request, index, body);
+        }
+        else if (path.startsWith("/_nodes") && path.endsWith("/thread_pool")) {
+            threadPoolRequests.incrementAndGet();
+            String pool = (path.contains("/stats/") ? "{\"threads\":1,\"queue\":" + bulkQueue + ",\"active\":1,\"rejected\":0}"
+                    : "{\"type\":\"fixed\",\"min\":1,\"max\":1,\"queue_size\":\"" + bulkQueueSize + "\"}");
+            respond(request, 200, "{\"cluster_name\":\"stub\",\"nodes\":{\"" + NODE_ID + "\":{\"name\":\"Stub\",\"thread_pool\":{\"bulk\":" + pool + "}}}}");
+        }
+        else if (path.startsWith("/_nodes")) {
+            respond(request, 200, nodes());
+        }
+        else if (path.endsWith("/_search_shards")) {
+            respond(request, 200, searchShards(path));
+        }
+        else if (path.endsWith("/_search/scroll")) {
+            scroll(request, new String(body, StringUtils.UTF_8).trim());
+        }
+        else if (path.endsWith("/_search") && query.contains("search_type=scan")) {
+            scanRequests.add(path + "?" + query);
+            scan(request, query);
+        }
+        else if (path.endsWith("/_refresh")) {
+            refreshes.incrementAndGet();
+            respond(request, 200, "{\"ok\":true,\"_shards\":{\"total\":" + shards + ",\"successful\":" + shards + ",\"failed\":0}}");
+        }
+        else if (path.endsWith("/_optimize")) {
+            optimizes.incrementAndGet();
+            respond(request, 200, "{\"ok\":true}");
+        }
+        else if (path.endsWith("/_aliases")) {
+            aliases(request, name, body);
+        }
+        else if (path.endsWith("/_settings")) {
+            settings(request, index, body);
+        }
+        else if (path.equals("/" + name) || path.equals("/" + name + "/")) {
+            index(request, index, body);
+        }
+        else if (path.split("/").length == 4 && !path.substring(path.lastIndexOf('/') + 1).startsWith("_")) {
+            versionedDocument(request, index + path.substring(name.length() + 1), query, body);
+        }
+        else {
+            error(request, 404, "No handler found for uri [" + path + "]");
+        }
+    }
+
+    // index existence (HEAD) and creation (POST/PUT)
+    @SuppressWarnings("unchecked")
+    private void index(Request request, String index, byte[] body) throws IOException {
+        if ("HEAD".equals(request.method)) {
+            respond(request, indices.containsKey(index) ? 200 : 404, "");
+            return;
+        }
+        if ("DELETE".equals(request.method)) {
+            indices.remove(index);
+            aliases.values().remove(index);
+            respond(request, 200, "{\"ok\":true,\"acknowledged\":true}");
+            return;
+        }
+        if (indices.containsKey(index)) {
+            error(request, 400, "IndexAlreadyExistsException[[" + index + "] already exists]");
+            return;
+        }
+        Map<String, Object> settings = null;
+        if (body.length > 0) {
+            settings = (Map<String, Object>) mapper.readValue(body, Map.class).get("settings");
+        }
+        createIndex(index, settings);
+        respond(request, 200, "{\"ok\":true,\"acknowledged\":true}");
+    }
+
+    // versioned document operations (only the ones used by the connector)
+    private void versionedDocument(Request request, String path, String query, byte[] body) throws IOException {
+        String[] tokens = path.split("/");
+        String location = "\"_index\":\"" + tokens[0] + "\",\"_type\":\"" + tokens[1] + "\",\"_id\":\"" + tokens[2] + "\"";
+        long expected = Long.parseLong(param(query, "version=", "-1"));
+
+        synchronized (documents) {
+            Object[] existing = documents.get(path);
+            long version = (existing != null ? (Long) existing[0] : 0);
+
+            if ("GET".equals(request.method)) {
+                if (existing == null) {
+                    respond(request, 404, "{" + location + ",\"exists\":false}");
+                }
+                else {
+                    respond(request, 200, "{" + location + ",\"_version\":" + version + ",\"exists\":true,\"_source\":"
+                            + new String((byte[]) existing[1], StringUtils.UTF_8) + "}");
+                }
+                return;
+            }
+            if (existing == null && (expected >= 0 || "DELETE".equals(request.method))) {
+                respond(request, 404, "{" + location + ",\"found\":false}");
+                return;
+            }
+            if (expected >= 0 && expected != version) {
+                error(request, 409, "VersionConflictEngineException[[" + path + "]: version conflict, current [" + version + "], provided [" + expected + "]]");
+                return;
+            }
+            if ("DELETE".equals(request.method)) {
+                documents.remove(path);
+                respond(request, 200, "{\"ok\":true,\"found\":true," + location + ",\"_version\":" + (version + 1) + "}");
+                return;
+            }
+            if (existing != null && query.contains("op_type=create")) {
+                error(request, 409, "DocumentAlreadyExistsException[[" + path + "]: document already exists]");
+                return;
+            }
+            documents.put(path, new Object[] { version + 1, body });
+            respond(request, existing == null ? 201 : 200, "{\"ok\":true," + location + ",\"_version\":" + (version + 1) + "}");
+        }
+    }
+
+    private void createIndex(String index, Map<String, Object> settings) {
+        Map<String, Object> actual = new ConcurrentHashMap<String, Object>();
+        actual.put("index.number_of_shards", String.valueOf(shards));
+        actual.put("index.number_of_replicas", "1");
+        if (settings != null) {
+            putSettings(actual, settings);
+        }
+        indices.put(index, actual);
+    }
+
+    private static void putSettings(Map<String, Object> actual, Map<String, Object> settings) {
+        for (Map.Entry<String, Object> entry : settings.entrySet()) {
+            String key = entry.getKey();
+            actual.put(key.startsWith("index.") ? key : "index." + key, entry.getValue().toString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void aliases(Request request, String name, byte[] body) throws IOException {
+        if ("GET".equals(request.method)) {
+            Map<String, Object> response = new LinkedHashMap<String, Object>();
+            for (String index : resolveAll(name)) {
+                if (!indices.containsKey(index)) {
+                    continue;
+                }
+                Map<String, Object> indexAliases = new LinkedHashMap<String, Object>();
+                for (Map.Entry<String, String> entry : aliases.entrySet()) {
+                    if (entry.getValue().equals(index)) {
+                        Map<String, Object> filter = aliasFilters.get(entry.getKey());
+                        indexAliases.put(entry.getKey(), filter != null ? Collections.singletonMap("filter", filter) : Collections.emptyMap());
+                    }
+                }
+                response.put(index, Collections.singletonMap("aliases", indexAliases));
+            }
+            if (response.isEmpty()) {
+                error(request, 404, "IndexMissingException[[" + name + "] missing]");
+                return;
+            }
+            respond(request, 200, mapper.writeValueAsString(response));
+            return;
+        }
+        // actions are applied in order (which makes them atomic for the single-threaded clients used in tests)
+        List<Map<String, Map<String, String>>> actions = (List<Map<String, Map<String, String>>>) mapper.readValue(body, Map.class).get("actions");
+        for (Map<String, Map<String, String>> action : actions) {
+            Map<String, String> add = action.get("add");
+            if (add != null) {
+                aliases.put(add.get("alias"), add.get("index"));
+            }
+            Map<String, String> remove = action.get("remove");
+            if (remove != null && remove.get("index").equals(aliases.get(remove.get("alias")))) {
+                aliases.remove(remove.get("alias"));
+            }
+        }
+        respond(request, 200, "{\"ok\":true,\"acknowledged\":true}");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void settings(Request request, String index, byte[] body) throws IOException {
+        Map<String, Object> actual = indices.get(index);
+        if (actual == null) {
+            error(request, 404, "IndexMissingException[[" + index + "] missing]");
+            return;
+        }
+        if ("GET".equals(request.method)) {
+            Map<String, Object> response = Collections.<String, Object> singletonMap(index, Collections.singletonMap("settings", actual));
+            respond(request, 200, mapper.writeValueAsString(response));
+            return;
+        }
+        Map<String, Object> update = mapper.readValue(body, Map.class);
+        if (update.get("index") instanceof Map) {
+            update = (Map<String, Object>) update.get("index");
+        }
+        putSettings(actual, update);
+        respond(request, 200, "{\"ok\":true}");
+    }
+
+    private String nodes() {
+        return "{\"ok\":true,\"cluster_name\":\"stub\",\"nodes\":{\"" + NODE_ID + "\":{\"name\":\"Stub\","
+                + "\"transport_address\":\"inet[/127.0.0.1:9300]\",\"hostname\":\"localhost\",\"version\":\"0.90.0\","
+                + "\"http_address\":\"inet[/127.0.0.1:" + getPort() + "]\"}}}";
+    }
+
+    private String searchShards(String path) {
+        StringBuilder sb = new StringBuilder("{\"nodes\":{\"" + NODE_ID + "\":{\"name\":\"Stub\",\"transport_address\":\"inet[/127.0.0.1:9300]\"}},\"shards\":[");
+        boolean first = true;
+        for (String index : resolveAll(path.substring(1, path.indexOf("/", 1)))) {
+            for (int i = 0; i < shards; i++) {
+                if (!first) {
+                    sb.append(",");
+                }
+                first = false;
+                sb.append("[{\"state\":\"STARTED\",\"primary\":true,\"node\":\"").append(NODE_ID)
+                  .append("\",\"relocating_node\":null,\"shard\":").append(i).append(",\"index\":\"").append(index).append("\"}]");
+            }
+        }
+        return sb.append("]}").toString();
+    }
+
+    // scroll ids have the format <scan id>;<shard>;<page size> - like ES, the id does not change between scroll calls
+    private void scan(Request request, String query) throws IOException {
+        int shard = Integer.parseInt(param(query, "_shards:", "0"));
+        int size = Integer.parseInt(param(query, "size=", "10"));
+        String scrollId = scans.incrementAndGet() + ";" + shard + ";" + size;
+        scrolls.put(scrollId, new AtomicLong());
+        int open = scrolls.size();
+        long peak;
+        do {
+            peak = peakScrolls.get();
+        } while (open > peak && !peakScrolls.compareAndSet(peak, open));
+        respond(request, 200, "{\"_scroll_id\":\"" + scrollId + "\",\"took\":1,\"timed_out\":false,\"hits\":{\"total\":"
+                + docsInShard(shard) + ",\"max_score\":0.0,\"hits\":[]}}");
+    }
+
+    private void scroll(Request request, String scrollId) throws IOException {
+        AtomicLong position = scrolls.get(scrollId);
+        if (position == null) {
+            error(request, 404, "SearchContextMissingException[No search context found for id [" + scrollId + "]]");
+            return;
+        }
+
+        String[] tokens = scrollId.split(";");
+        int shard = Integer.parseInt(tokens[1]);
+        int size = Integer.parseInt(tokens[2]);
+
+        // scan returns size hits per shard
+        long total = docsInShard(shard);
+        long offset = position.getAndAdd(size);
+        long end = Math.min(offset + size, total);
+        offset = Math.min(offset, end);
+        if (end >= total) {
+            scrolls.remove(scrollId);
+        }
+
+        StringBuilder sb = new StringBuilder(256 + (int) (end - offset) * (payloadSize + 128));
+        sb.append("{\"_scroll_id\":\"").append(scrollId)
+          .append("\",\"took\":1,\"timed_out\":false,\"hits\":{\"total\":").append(docsInShard(shard)).append(",\"max_score\":0.0,\"hits\":[");
+        for (long i = offset; i < end; i++) {
+            if (i > offset) {
+                sb.append(",");
+            }
+            String id = shard + "-" + i;
+            sb.append("{\"_index\":\"stub\",\"_type\":\"doc\",\"_id\":\"").append(id).append("\",\"_score\":0.0,\"_source\":");
+            document(sb, id);
+            sb.append("}");
+        }
+        sb.append("]}}");
+
+        docsServed.addAndGet(end - offset);
+        respond(request, 200, sb.toString());
+    }
+
+    private long docsInShard(int shard) {
+        long perShard = docs / shards;
+        return (shard == 0 ? perShard + docs % shards : perShard);
+    }
+
+    /**
+     * Generates a document of roughly {@link #payloadSize(int)} bytes.
+     */
+    void document(StringBuilder sb, String id) {
+        sb.append("{\"id\":\"").append(id).append("\",\"number\":").append(id.length()).append(",\"active\":true,\"payload\":\"");
+        for (int i = 0; i < payloadSize; i++) {
+            sb.append((char) ('a' + (i % 26)));
+        }
+        sb.append("\"}");
+    }
+
+    private void bulk(Request request, String defaultIndex, byte[] body) throws IOException {
+        long start = System.currentTimeMillis();
+        StringBuilder items = new StringBuilder();
+        boolean errors = false;
+        int entry = 0;
+
+        // every action line is followed by a source line (except for deletes)
+        int lineStart = 0;
+        boolean expectSource = false;
+        for (int i = 0; i < body.length; i++) {
+            if (body[i] != '\n') {
+                continue;
+            }
+            if (i == lineStart) {
+                lineStart = i + 1;
+                continue;
+            }
+            if (expectSource) {
+                expectSource = false;
+            }
+            else {
+                String action = action(body, lineStart);
+                expectSource = !"delete".equals(action);
+
+                if (entry++ > 0) {
+                    items.append(",");
+                }
+                items.append("{\"").append(action).append("\":{\"_index\":\"stub\",\"_type\":\"doc\",\"_id\":\"").append(entry).append("\"");
+                if (chance(itemRejectionRate)) {
+                    docsRejected.incrementAndGet();
+                    errors = true;
+                    items.append(",\"error\":\"EsRejectedExecutionException[rejected execution (queue capacity 50) on stub]\"}}");
+                }
+                else if (chance(itemFailureRate)) {
+                    docsFailed.incrementAndGet();
+                    errors = true;
+                    items.append(",\"error\":\"MapperParsingException[failed to parse]\"}}");
+                }
+                else {
+                    docsIndexed.incrementAndGet();
+                    indexed(targetIndex(body, lineStart, defaultIndex));
+                    items.append(",\"_version\":1,\"ok\":true}}");
+                }
+            }
+            lineStart = i + 1;
+        }
+
+        // mimic ES - add the items only when there are errors (the connector ignores them otherwise)
+        respond(request, 200, "{\"took\":" + (System.currentTimeMillis() - start) + ",\"items\":[" + (errors ? items : "") + "]}");
+    }
+
+    // extracts the action name (such as index or create) from {"<action>":{...}}
+    private void indexed(String index) {
+        if (!indices.containsKey(index)) {
+            createIndex(index, null);
+        }
+        AtomicLong counter = docsPerIndex.get(index);
+        if (counter == null) {
+            docsPerIndex.putIfAbsent(index, new AtomicLong());
+            counter = docsPerIndex.get(index);
+        }
+        counter.incrementAndGet();
+    }
+
+    // the _index of the action line (if any)
+    private String targetIndex(byte[] body, int lineStart, String defaultIndex) {
+        int end = lineStart;
+        while (end < body.length && body[end] != '\n') {
+            end++;
+        }
+        String line = new String(body, lineStart, end - lineStart, StringUtils.UTF_8);
+        int start = line.indexOf("\"_index\":\"");
+        if (start < 0) {
+            return resolve(defaultIndex);
+        }
+        start += "\"_index\":\"".length();
+        return resolve(line.substring(start, line.indexOf('"', start)));
+    }
+
+    private static String action(byte[] body, int lineStart) {
+        int start = -1;
+        for (int i = lineStart; i < body.length; i++) {
+            if (body[i] == '"') {
+                if (start < 0) {
+                    start = i + 1;
+                }
+                else {
+                    return new String(body, start, i - start, StringUtils.UTF_8);
+                }
+            }
+        }
+        return "index";
+    }
+
+    private static String param(String query, String name, String defaultValue) {
+        int index = query.indexOf(name);
+        if (index < 0) {
+            return defaultValue;
+        }
+        int start = index + name.length();
+        int end = start;
+        while (end < query.length() && Character.isDigit(query.charAt(end))) {
+            end++;
+        }
+        return (end > start ? query.substring(start, end) : defaultValue);
+    }
+
+    private boolean chance(double rate) {
+        if (rate <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < rate;
+        }
+    }
+
+    private void error(Request request, int status, String message) throws IOException {
+        errorResponses.incrementAndGet();
+        respond(request, status, "{\"error\":\"" + message + "\",\"status\":" + status + "}");
+    }
+
+    private void respond(Request request, int status, String content) {
+        request.status = status;
+        request.response = content.getBytes(StringUtils.UTF_8);
+        bytesServed.addAndGet(request.response.length);
+    }
+}
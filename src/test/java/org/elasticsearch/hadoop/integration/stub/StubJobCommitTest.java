@@ -0,0 +1,258 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.integration.stub;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.hadoop.hive.ql.exec.FileSinkOperator;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.JobStatus.State;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.SettingsManager;
+import org.elasticsearch.hadoop.hive.ESHiveInputFormat;
+import org.elasticsearch.hadoop.hive.ESHiveOutputFormat;
+import org.elasticsearch.hadoop.hive.ESSerDe;
+import org.elasticsearch.hadoop.hive.ESStorageHandler;
+import org.elasticsearch.hadoop.mr.ESOutputFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StubJobCommitTest {
+
+    private StubESServer server;
+    private JobConf conf;
+
+    @Before
+    public void start() throws Exception {
+        server = new StubESServer().shards(3).start();
+        conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "stub/doc");
+    }
+
+    @After
+    public void stop() {
+        server.stop();
+    }
+
+    private void runJob(int tasks, int docs) throws Exception {
+        ESOutputFormat format = new ESOutputFormat();
+        // job submission
+        format.checkOutputSpecs(null, conf);
+
+        OutputCommitter committer = new ESOutputFormat.ESOutputCommitter();
+        JobContext job = new JobContext(conf, new JobID("stub", 1));
+        committer.setupJob(job);
+
+        MapWritable doc = new MapWritable();
+        doc.put(new Text("name"), new Text("stub"));
+
+        for (int task = 0; task < tasks; task++) {
+            RecordWriter<Object, Object> writer = format.getRecordWriter(null, conf, "stub", Reporter.NULL);
+            for (int i = 0; i < docs; i++) {
+                writer.write(null, doc);
+            }
+            writer.close(Reporter.NULL);
+        }
+
+        committer.commitJob(job);
+    }
+
+    @Test
+    public void testRefreshOncePerJob() throws Exception {
+        runJob(3, 10);
+        assertEquals(30, server.getDocsIndexed());
+        assertEquals(1, server.getRefreshes());
+        assertEquals(0, server.getOptimizes());
+    }
+
+    @Test
+    public void testRefreshPerTaskWithUserCommitter() throws Exception {
+        conf.set("mapred.output.committer.class", org.apache.hadoop.mapred.FileOutputCommitter.class.getName());
+        ESOutputFormat format = new ESOutputFormat();
+        format.checkOutputSpecs(null, conf);
+
+        MapWritable doc = new MapWritable();
+        doc.put(new Text("name"), new Text("stub"));
+        for (int task = 0; task < 2; task++) {
+            RecordWriter<Object, Object> writer = format.getRecordWriter(null, conf, "stub", Reporter.NULL);
+            writer.write(null, doc);
+            writer.close(Reporter.NULL);
+        }
+        // the ES committer does not run so each task refreshes the index
+        assertEquals(2, server.getRefreshes());
+    }
+
+    private void configureHiveOutput(Properties table) {
+        ESStorageHandler handler = new ESStorageHandler();
+        handler.setConf(conf);
+        table.setProperty(ConfigurationOptions.ES_RESOURCE, "stub/doc");
+        handler.configureOutputJobProperties(new TableDesc(ESSerDe.class, ESHiveInputFormat.class, ESHiveOutputFormat.class, table),
+                new HashMap<String, String>());
+    }
+
+    @Test
+    public void testHiveRefreshesPerTask() throws Exception {
+        Properties table = new Properties();
+        configureHiveOutput(table);
+        ESHiveOutputFormat format = new ESHiveOutputFormat();
+        format.checkOutputSpecs(null, conf);
+
+        MapWritable doc = new MapWritable();
+        doc.put(new Text("name"), new Text("stub"));
+        // Hive never runs the ES committer (it uses a no-op one instead)
+        for (int task = 0; task < 2; task++) {
+            FileSinkOperator.RecordWriter writer = format.getHiveRecordWriter(conf, null, MapWritable.class, false, table, Reporter.NULL);
+            for (int i = 0; i < 5; i++) {
+                writer.write(doc);
+            }
+            writer.close(false);
+        }
+        assertEquals(10, server.getDocsIndexed());
+        assertEquals(2, server.getRefreshes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHiveRejectsBulkLoad() throws Exception {
+        Properties table = new Properties();
+        table.setProperty(ConfigurationOptions.ES_BATCH_WRITE_BULK_LOAD, "true");
+        configureHiveOutput(table);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHiveRejectsRebuild() throws Exception {
+        Properties table = new Properties();
+        table.setProperty(ConfigurationOptions.ES_BATCH_WRITE_REBUILD, "true");
+        configureHiveOutput(table);
+    }
+
+    @Test
+    public void testBulkLoadRestoresOriginalSettings() throws Exception {
+        // existing index with custom settings
+        runJob(1, 1);
+        server.getIndexSettings("stub").put("index.refresh_interval", "30s");
+        server.getIndexSettings("stub").put("index.number_of_replicas", "2");
+        server.reset();
+
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_BULK_LOAD, "true");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_OPTIMIZE, "true");
+
+        ESOutputFormat format = new ESOutputFormat();
+        format.checkOutputSpecs(null, conf);
+        OutputCommitter committer = new ESOutputFormat.ESOutputCommitter();
+        JobContext job = new JobContext(conf, new JobID("stub", 2));
+        committer.setupJob(job);
+
+        Map<String, Object> settings = server.getIndexSettings("stub");
+        assertEquals("-1", settings.get("index.refresh_interval"));
+        assertEquals("0", settings.get("index.number_of_replicas"));
+
+        committer.commitJob(job);
+        assertEquals("30s", settings.get("index.refresh_interval"));
+        assertEquals("2", settings.get("index.number_of_replicas"));
+        assertEquals(1, server.getOptimizes());
+        assertEquals(1, server.getRefreshes());
+    }
+
+    @Test
+    public void testBulkLoadCreatesIndex() throws Exception {
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_BULK_LOAD, "true");
+        runJob(2, 5);
+
+        Map<String, Object> settings = server.getIndexSettings("stub");
+        assertNotNull(settings);
+        assertEquals(10, server.getDocsIndexed());
+        // ES defaults restored
+        assertEquals("1s", settings.get("index.refresh_interval"));
+        assertEquals("1", settings.get("index.number_of_replicas"));
+        assertEquals(1, server.getRefreshes());
+    }
+
+    @Test
+    public void testRebuildSwapsAlias() throws Exception {
+        server.index("stub-old").alias("stub", "stub-old");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_REBUILD, "true");
+        runJob(2, 5);
+
+        String index = server.getAlias("stub");
+        assertTrue(index.startsWith("stub-"));
+        assertFalse("stub-old".equals(index));
+        assertEquals(10, server.getDocsIndexed());
+        // old index removed
+        assertNull(server.getIndexSettings("stub-old"));
+        // settings restored
+        Map<String, Object> settings = server.getIndexSettings(index);
+        assertEquals("1s", settings.get("index.refresh_interval"));
+        assertEquals("1", settings.get("index.number_of_replicas"));
+        assertEquals("3", settings.get("index.number_of_shards"));
+    }
+
+    @Test
+    public void testRebuildKeepsOldIndex() throws Exception {
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_REBUILD, "true");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_REBUILD_DELETE_OLD, "false");
+        // no alias the first time around
+        runJob(1, 1);
+        String first = server.getAlias("stub");
+        assertNotNull(first);
+
+        Thread.sleep(1000);
+        runJob(1, 1);
+        String second = server.getAlias("stub");
+        assertFalse(first.equals(second));
+        assertNotNull(server.getIndexSettings(first));
+    }
+
+    @Test
+    public void testRebuildAbortDropsStagingIndex() throws Exception {
+        server.index("stub-old").alias("stub", "stub-old");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_REBUILD, "true");
+
+        new ESOutputFormat().checkOutputSpecs(null, conf);
+        OutputCommitter committer = new ESOutputFormat.ESOutputCommitter();
+        JobContext job = new JobContext(conf, new JobID("stub", 3));
+        committer.setupJob(job);
+
+        String staging = SettingsManager.loadFrom(conf).getStagingIndex();
+        assertNotNull(server.getIndexSettings(staging));
+        assertEquals("-1", server.getIndexSettings(staging).get("index.refresh_interval"));
+
+        committer.abortJob(job, State.FAILED);
+        assertNull(server.getIndexSettings(staging));
+        assertEquals("stub-old", server.getAlias("stub"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRebuildRequiresAlias() throws Exception {
+        server.index("stub");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_REBUILD, "true");
+        new ESOutputFormat().checkOutputSpecs(null, conf);
+    }
+}
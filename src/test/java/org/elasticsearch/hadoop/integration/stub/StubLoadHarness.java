@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.integration.stub;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.mr.ESInputFormat;
+import org.elasticsearch.hadoop.mr.ESOutputFormat;
+import org.elasticsearch.hadoop.util.TestUtils;
+import org.elasticsearch.hadoop.util.WritableUtils;
+
+/**
+ * Drives {@link ESOutputFormat} and {@link ESInputFormat} against a {@link StubESServer} and reports the client-side
+ * throughput. Runs fully offline.
+ *
+ * <p/>Can be used from tests or standalone through {@link #main(String[])}, configured through system properties:
+ * <tt>stub.docs</tt>, <tt>stub.payload</tt>, <tt>stub.shards</tt>, <tt>stub.latency</tt>, <tt>stub.429</tt>,
+ * <tt>stub.503</tt>, <tt>stub.rejections</tt> and <tt>stub.failures</tt>.
+ */
+public class StubLoadHarness {
+
+    public static class Result {
+        public final String name;
+        public final long docs;
+        public final long bytes;
+        public final long millis;
+
+        Result(String name, long docs, long bytes, long millis) {
+            this.name = name;
+            this.docs = docs;
+            this.bytes = bytes;
+            // avoid division by zero for (very) small runs
+            this.millis = Math.max(millis, 1);
+        }
+
+        public double docsPerSecond() {
+            return docs * 1000d / millis;
+        }
+
+        public double mbPerSecond() {
+            return bytes * 1000d / millis / (1024 * 1024);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d docs, %d bytes in %d ms -> %.0f docs/s, %.2f MB/s", name, docs, bytes, millis,
+                    docsPerSecond(), mbPerSecond());
+        }
+    }
+
+    private final StubESServer server;
+    private final Properties settings = new Properties();
+
+    public StubLoadHarness(StubESServer server) {
+        this.server = server;
+    }
+
+    /** Additional connector settings (such as the batch size). */
+    public StubLoadHarness setting(String name, String value) {
+        settings.setProperty(name, value);
+        return this;
+    }
+
+    private JobConf jobConf(String resource) {
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, resource);
+        TestUtils.addProperties(conf, settings);
+        return conf;
+    }
+
+    /**
+     * Writes the given number of (generated) documents through the ESOutputFormat record writer.
+     */
+    @SuppressWarnings("unchecked")
+    public Result write(long docs) throws IOException {
+        JobConf conf = jobConf("stub/doc");
+        server.reset();
+
+        // generate the document once (the conversion cost is measured separately by the micro-benchmarks)
+        StringBuilder sb = new StringBuilder();
+        server.document(sb, "0");
+        Writable doc = WritableUtils.toWritable(new ObjectMapper().readValue(sb.toString(), Map.class));
+
+        long start = System.currentTimeMillis();
+        RecordWriter<Object, Object> writer = new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL);
+        try {
+            for (long i = 0; i < docs; i++) {
+                writer.write(null, doc);
+            }
+        } finally {
+            writer.close(Reporter.NULL);
+        }
+        long millis = System.currentTimeMillis() - start;
+
+        return new Result("write", server.getDocsIndexed(), server.getBytesReceived(), millis);
+    }
+
+    /**
+     * Reads all the documents served by the stub through the ESInputFormat record readers (one split at a time).
+     */
+    public Result read() throws IOException {
+        JobConf conf = jobConf("stub/doc/_search?q=*");
+        server.reset();
+
+        long docs = 0;
+        long start = System.currentTimeMillis();
+        ESInputFormat format = new ESInputFormat();
+        for (InputSplit split : format.getSplits(conf, 1)) {
+            RecordReader<Text, MapWritable> reader = format.getRecordReader(split, conf, Reporter.NULL);
+            Text key = reader.createKey();
+            MapWritable value = reader.createValue();
+            try {
+                while (reader.next(key, value)) {
+                    docs++;
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        long millis = System.currentTimeMillis() - start;
+
+        return new Result("read", docs, server.getBytesServed(), millis);
+    }
+
+    public static void main(String[] args) throws Exception {
+        long docs = Long.getLong("stub.docs", 100000);
+        StubESServer server = new StubESServer()
+                .docs(docs)
+                .payloadSize(Integer.getInteger("stub.payload", 256))
+                .shards(Integer.getInteger("stub.shards", 5))
+                .latency(Long.getLong("stub.latency", 0))
+                .tooManyRequests(Double.parseDouble(System.getProperty("stub.429", "0")))
+                .unavailable(Double.parseDouble(System.getProperty("stub.503", "0")))
+                .itemRejections(Double.parseDouble(System.getProperty("stub.rejections", "0")))
+                .itemFailures(Double.parseDouble(System.getProperty("stub.failures", "0")))
+                .start();
+
+        try {
+            StubLoadHarness harness = new StubLoadHarness(server).setting(ConfigurationOptions.ES_BATCH_WRITE_RETRY_WAIT, "100ms");
+            System.out.println(harness.write(docs));
+            System.out.println(harness.read());
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,741 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.integration.stub;
+
+import java.io.File;
+import java.util.List;
+import java.util.Collections;
+import java.util.ArrayList;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.SettingsManager;
+import org.elasticsearch.hadoop.hive.ESHiveInputFormat;
+import org.elasticsearch.hadoop.mr.ESInputFormat;
+import org.elasticsearch.hadoop.mr.ESOutputFormat;
+import org.elasticsearch.hadoop.rest.BufferedRestClient;
+import org.elasticsearch.hadoop.rest.RestClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StubLoadTest {
+
+    private StubESServer server;
+    private StubLoadHarness harness;
+
+    @Before
+    public void start() throws Exception {
+        server = new StubESServer().docs(5000).shards(3).payloadSize(128).start();
+        harness = new StubLoadHarness(server)
+                .setting(ConfigurationOptions.ES_BATCH_SIZE_BYTES, "64kb")
+                .setting(ConfigurationOptions.ES_BATCH_WRITE_RETRY_WAIT, "10ms");
+    }
+
+    @After
+    public void stop() {
+        server.stop();
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        StubLoadHarness.Result result = harness.write(5000);
+        System.out.println(result);
+        assertEquals(5000, result.docs);
+        assertEquals(0, server.getDocsRejected());
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        StubLoadHarness.Result result = harness.read();
+        System.out.println(result);
+        assertEquals(5000, result.docs);
+        assertEquals(5000, server.getDocsServed());
+    }
+
+    @Test
+    public void testWriteWithRejectedEntries() throws Exception {
+        server.itemRejections(0.1);
+        harness.setting(ConfigurationOptions.ES_BATCH_WRITE_RETRY_COUNT, "10");
+        StubLoadHarness.Result result = harness.write(5000);
+        System.out.println(result);
+        // rejected entries are retried
+        assertEquals(5000, result.docs);
+        assertTrue(server.getDocsRejected() > 0);
+    }
+
+    @Test
+    public void testWriteWithFailedEntries() throws Exception {
+        server.itemFailures(0.1);
+        StubLoadHarness.Result result = harness.write(5000);
+        System.out.println(result);
+        // failed entries are discarded
+        assertEquals(5000, result.docs + server.getDocsFailed());
+        assertTrue(server.getDocsFailed() > 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWriteWithUnavailableNode() throws Exception {
+        server.unavailable(1);
+        harness.write(100);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWriteWithTooManyRequests() throws Exception {
+        server.tooManyRequests(1);
+        harness.write(100);
+    }
+
+    @Test
+    public void testWriteDynamicResource() throws Exception {
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "logs-{@timestamp:yyyy.MM.dd}/{type}");
+
+        RecordWriter<Object, Object> writer = new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL);
+        for (int i = 0; i < 300; i++) {
+            MapWritable doc = new MapWritable();
+            doc.put(new Text("@timestamp"), new Text("2013-10-0" + (1 + i % 3) + "T10:00:00Z"));
+            doc.put(new Text("type"), new Text("event"));
+            writer.write(null, doc);
+        }
+        writer.close(Reporter.NULL);
+
+        assertEquals(100, server.getDocsIndexed("logs-2013.10.01"));
+        assertEquals(100, server.getDocsIndexed("logs-2013.10.02"));
+        assertEquals(100, server.getDocsIndexed("logs-2013.10.03"));
+    }
+
+    @Test
+    public void testWriteCoalesced() throws Exception {
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "stub/doc");
+        conf.set(ConfigurationOptions.ES_MAPPING_ID, "id");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_COALESCE, "true");
+
+        RecordWriter<Object, Object> writer = new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL);
+        for (int i = 0; i < 300; i++) {
+            MapWritable doc = new MapWritable();
+            doc.put(new Text("id"), new Text(String.valueOf(i % 10)));
+            writer.write(null, doc);
+        }
+        writer.close(Reporter.NULL);
+
+        assertEquals(10, server.getDocsIndexed());
+    }
+
+    @Test
+    public void testWriteJournaledWhileUnavailable() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "es-journal-stub-" + System.nanoTime());
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "stub/doc");
+        conf.set(ConfigurationOptions.ES_BATCH_SIZE_ENTRIES, "50");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_RETRY_WAIT, "50ms");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_JOURNAL, "true");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_JOURNAL_DIR, dir.getAbsolutePath());
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_JOURNAL_TIMEOUT, "10s");
+
+        server.unavailable(1);
+        RecordWriter<Object, Object> writer = new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL);
+        for (int i = 0; i < 500; i++) {
+            MapWritable doc = new MapWritable();
+            doc.put(new Text("number"), new Text(String.valueOf(i)));
+            writer.write(null, doc);
+            // the cluster comes back halfway through
+            if (i == 250) {
+                server.unavailable(0);
+            }
+        }
+        writer.close(Reporter.NULL);
+
+        assertEquals(500, server.getDocsIndexed());
+        assertFalse(dir.exists() && dir.list().length > 0);
+    }
+
+    @Test
+    public void testWriteJournaledByWritersOfSameTask() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "es-journal-stub-" + System.nanoTime());
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        // the index tells the writer each document came from
+        conf.set(ConfigurationOptions.ES_RESOURCE, "stub-{writer}/doc");
+        conf.set(ConfigurationOptions.ES_BATCH_SIZE_ENTRIES, "50");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_RETRY_WAIT, "50ms");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_JOURNAL, "true");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_JOURNAL_DIR, dir.getAbsolutePath());
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_JOURNAL_TIMEOUT, "10s");
+        // several writers inside the same task (such as Hive dynamic partitions)
+        conf.set("mapred.task.id", "attempt_stub_0001_m_000001_0");
+
+        server.unavailable(1);
+        List<RecordWriter<Object, Object>> writers = new ArrayList<RecordWriter<Object, Object>>();
+        for (int w = 0; w < 3; w++) {
+            writers.add(new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL));
+        }
+        for (int i = 0; i < 600; i++) {
+            MapWritable doc = new MapWritable();
+            doc.put(new Text("writer"), new Text(String.valueOf(i % writers.size())));
+            doc.put(new Text("number"), new Text(String.valueOf(i)));
+            writers.get(i % writers.size()).write(null, doc);
+        }
+        server.unavailable(0);
+        // closing a writer does not affect the journals of the others
+        for (RecordWriter<Object, Object> writer : writers) {
+            writer.close(Reporter.NULL);
+        }
+
+        assertEquals(600, server.getDocsIndexed());
+        for (int w = 0; w < writers.size(); w++) {
+            assertEquals(200, server.getDocsIndexed("stub-" + w));
+        }
+        assertFalse(dir.exists() && dir.list().length > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJournalNotSupportedWithSharedWrites() throws Exception {
+        JobConf conf = sharedConf();
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_JOURNAL, "true");
+        new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL);
+    }
+
+    @Test
+    public void testWriteStreaming() throws Exception {
+        harness.setting(ConfigurationOptions.ES_BATCH_WRITE_STREAMING, "true")
+               .setting(ConfigurationOptions.ES_BATCH_WRITE_STREAMING_CHUNK, "1kb")
+               .setting(ConfigurationOptions.ES_BATCH_WRITE_STREAMING_WINDOW, "4kb");
+        StubLoadHarness.Result result = harness.write(5000);
+        System.out.println(result);
+        assertEquals(5000, result.docs);
+        assertTrue(server.getRequests() > 1);
+    }
+
+    @Test
+    public void testWriteOversizedDocuments() throws Exception {
+        writeOversized(false);
+        writeOversized(true);
+        assertEquals(40, server.getDocsIndexed());
+    }
+
+    private void writeOversized(boolean streaming) throws Exception {
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "stub/doc");
+        conf.set(ConfigurationOptions.ES_BATCH_SIZE_BYTES, "1kb");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_STREAMING, String.valueOf(streaming));
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_STREAMING_CHUNK, "256b");
+
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 4096; i++) {
+            large.append((char) ('a' + i % 26));
+        }
+
+        RecordWriter<Object, Object> writer = new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL);
+        for (int i = 0; i < 20; i++) {
+            MapWritable doc = new MapWritable();
+            // every other document is larger than the whole batch
+            doc.put(new Text("payload"), new Text(i % 2 == 0 ? large.toString() : "small"));
+            writer.write(null, doc);
+        }
+        writer.close(Reporter.NULL);
+    }
+
+    private JobConf sharedConf() {
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "stub/doc");
+        conf.set(ConfigurationOptions.ES_BATCH_SIZE_ENTRIES, "0");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_SHARED, "true");
+        return conf;
+    }
+
+    @Test
+    public void testWriteSharedInterleaved() throws Exception {
+        // many writers inside the same task (such as Hive dynamic partitions)
+        JobConf conf = sharedConf();
+        List<RecordWriter<Object, Object>> writers = new ArrayList<RecordWriter<Object, Object>>();
+        for (int w = 0; w < 8; w++) {
+            writers.add(new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL));
+        }
+        for (int i = 0; i < 2000; i++) {
+            MapWritable doc = new MapWritable();
+            doc.put(new Text("number"), new Text(String.valueOf(i)));
+            writers.get(i % writers.size()).write(null, doc);
+        }
+        for (RecordWriter<Object, Object> writer : writers) {
+            writer.close(Reporter.NULL);
+        }
+
+        assertEquals(2000, server.getDocsIndexed());
+        // the writers share their bulk requests
+        assertTrue(server.getBulkRequests() < writers.size());
+    }
+
+    @Test(timeout = 60000)
+    public void testWriteSharedWithExhaustedBudget() throws Exception {
+        JobConf conf = sharedConf();
+        conf.set(ConfigurationOptions.ES_BATCH_SIZE_BYTES, "1kb");
+        // less than one buffer - only the first (forced) buffer can be used
+        conf.set(ConfigurationOptions.ES_MEMORY_BUDGET, "0.0000000001");
+        try {
+            List<RecordWriter<Object, Object>> writers = new ArrayList<RecordWriter<Object, Object>>();
+            for (int w = 0; w < 4; w++) {
+                writers.add(new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL));
+            }
+            for (int i = 0; i < 500; i++) {
+                MapWritable doc = new MapWritable();
+                doc.put(new Text("number"), new Text(String.valueOf(i)));
+                writers.get(i % writers.size()).write(null, doc);
+            }
+            for (RecordWriter<Object, Object> writer : writers) {
+                writer.close(Reporter.NULL);
+            }
+            assertEquals(500, server.getDocsIndexed());
+        } finally {
+            // the budget is JVM-wide - lift it for the other tests
+            conf.set(ConfigurationOptions.ES_MEMORY_BUDGET, "1");
+            new RestClient(SettingsManager.loadFrom(conf)).close();
+        }
+    }
+
+    @Test
+    public void testWriteSharedConcurrently() throws Exception {
+        final JobConf conf = sharedConf();
+        final int writers = 8;
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[writers];
+        for (int w = 0; w < writers; w++) {
+            threads[w] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        RecordWriter<Object, Object> writer = new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL);
+                        for (int i = 0; i < 250; i++) {
+                            MapWritable doc = new MapWritable();
+                            doc.put(new Text("number"), new Text(String.valueOf(i)));
+                            writer.write(null, doc);
+                        }
+                        writer.close(Reporter.NULL);
+                    } catch (Throwable th) {
+                        errors.add(th);
+                    }
+                }
+            };
+            threads[w].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(writers * 250, server.getDocsIndexed());
+    }
+
+    @Test
+    public void testWriteSharedCountsOnlyIndexedDocuments() throws Exception {
+        server.itemFailures(0.1);
+        JobConf conf = sharedConf();
+        conf.set(ConfigurationOptions.ES_BATCH_SIZE_ENTRIES, "50");
+        BufferedRestClient client = new BufferedRestClient(SettingsManager.loadFrom(conf));
+        for (int i = 0; i < 1000; i++) {
+            client.addToIndex(Collections.singletonMap("number", i));
+        }
+        client.close();
+
+        // failed entries are discarded and not reported as written
+        assertTrue(server.getDocsFailed() > 0);
+        assertEquals(server.getDocsIndexed(), client.stats().docsWritten.get());
+    }
+
+    @Test
+    public void testWriteSharedRateLimit() throws Exception {
+        JobConf conf = sharedConf();
+        conf.set(ConfigurationOptions.ES_BATCH_SIZE_ENTRIES, "50");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_SHARED_THREADS, "4");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_RATE_DOCS, "1000");
+        List<RecordWriter<Object, Object>> writers = new ArrayList<RecordWriter<Object, Object>>();
+        for (int w = 0; w < 4; w++) {
+            writers.add(new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL));
+        }
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            MapWritable doc = new MapWritable();
+            doc.put(new Text("number"), new Text(String.valueOf(i)));
+            writers.get(i % writers.size()).write(null, doc);
+        }
+        for (RecordWriter<Object, Object> writer : writers) {
+            writer.close(Reporter.NULL);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(1000, server.getDocsIndexed());
+        // the I/O threads share the limit - 1000 docs at 1000 docs/s
+        assertTrue(String.valueOf(elapsed), elapsed >= 800);
+    }
+
+    @Test
+    public void testWriteSharedOversizedDocuments() throws Exception {
+        JobConf conf = sharedConf();
+        conf.set(ConfigurationOptions.ES_BATCH_SIZE_BYTES, "1kb");
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 4096; i++) {
+            large.append((char) ('a' + i % 26));
+        }
+
+        BufferedRestClient client = new BufferedRestClient(SettingsManager.loadFrom(conf));
+        for (int i = 0; i < 20; i++) {
+            client.addToIndex(Collections.singletonMap("payload", (i % 2 == 0 ? large.toString() : "small")));
+        }
+        client.close();
+
+        // every other document is larger than the shared buffers
+        assertEquals(20, server.getDocsIndexed());
+        assertEquals(20, client.stats().docsWritten.get());
+    }
+
+    @Test
+    public void testWriteConcurrentThroughSameWriter() throws Exception {
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "stub/doc");
+        conf.set(ConfigurationOptions.ES_BATCH_WRITE_CONCURRENT, "true");
+
+        final RecordWriter<Object, Object> writer = new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 500; i++) {
+                            MapWritable doc = new MapWritable();
+                            doc.put(new Text("number"), new Text(String.valueOf(i)));
+                            writer.write(null, doc);
+                        }
+                    } catch (Throwable th) {
+                        errors.add(th);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.close(Reporter.NULL);
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(4000, server.getDocsIndexed());
+    }
+
+    @Test
+    public void testLingerAndPeriodicRefresh() throws Exception {
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "stub/doc");
+        conf.set(ConfigurationOptions.ES_BATCH_LINGER, "100ms");
+        conf.set(ConfigurationOptions.ES_BATCH_REFRESH_INTERVAL, "200ms");
+
+        RecordWriter<Object, Object> writer = new ESOutputFormat().getRecordWriter(null, conf, "stub", Reporter.NULL);
+        for (int i = 0; i < 10; i++) {
+            MapWritable doc = new MapWritable();
+            doc.put(new Text("number"), new Text(String.valueOf(i)));
+            writer.write(null, doc);
+        }
+
+        // the trickle is sent (and made visible) without the batch filling up or the writer being closed
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((server.getDocsIndexed() < 10 || server.getRefreshes() == 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(10, server.getDocsIndexed());
+        assertTrue(server.getRefreshes() > 0);
+
+        writer.close(Reporter.NULL);
+        assertEquals(10, server.getDocsIndexed());
+    }
+
+    @Test
+    public void testWriteRateLimit() throws Exception {
+        // 2000 docs/s for the job, split between 2 tasks
+        harness.setting(ConfigurationOptions.ES_BATCH_WRITE_RATE_DOCS, "2000")
+               .setting(ConfigurationOptions.ES_BATCH_WRITE_RATE_TASKS, "2")
+               .setting(ConfigurationOptions.ES_BATCH_SIZE_ENTRIES, "100");
+        long start = System.currentTimeMillis();
+        StubLoadHarness.Result result = harness.write(500);
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.println(result);
+        assertEquals(500, result.docs);
+        // 500 docs at 1000 docs/s
+        assertTrue(String.valueOf(elapsed), elapsed >= 400);
+    }
+
+    @Test
+    public void testWriteBackpressure() throws Exception {
+        server.bulkQueue(45, 50);
+        harness.setting(ConfigurationOptions.ES_BATCH_WRITE_BACKPRESSURE, "true")
+               .setting(ConfigurationOptions.ES_BATCH_WRITE_BACKPRESSURE_INTERVAL, "1ms")
+               .setting(ConfigurationOptions.ES_BATCH_SIZE_ENTRIES, "100");
+        StubLoadHarness.Result result = harness.write(1000);
+        System.out.println(result);
+        assertEquals(1000, result.docs);
+        // the bulk queues were checked
+        assertTrue(server.getThreadPoolRequests() > 0);
+    }
+
+    @Test
+    public void testReadWithNodeScrollLimit() throws Exception {
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "stub/doc/_search?q=*");
+        conf.set(ConfigurationOptions.ES_SCROLL_NODE_LIMIT, "1");
+        conf.set(ConfigurationOptions.ES_SCROLL_NODE_WAIT, "10ms");
+
+        final ESInputFormat format = new ESInputFormat();
+        final JobConf job = conf;
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final long[] read = new long[1];
+        InputSplit[] splits = format.getSplits(conf, 1);
+        Thread[] threads = new Thread[splits.length];
+        for (int t = 0; t < threads.length; t++) {
+            final InputSplit split = splits[t];
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        RecordReader<Text, MapWritable> reader = format.getRecordReader(split, job, Reporter.NULL);
+                        Text key = reader.createKey();
+                        MapWritable value = reader.createValue();
+                        long docs = 0;
+                        while (reader.next(key, value)) {
+                            docs++;
+                        }
+                        reader.close();
+                        synchronized (read) {
+                            read[0] += docs;
+                        }
+                    } catch (Throwable th) {
+                        errors.add(th);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(5000, read[0]);
+        // the shards are on the same node so they are scrolled one at a time
+        assertEquals(1, server.getPeakScrolls());
+        // and all the permits are released
+        assertEquals(0, server.getDocuments(".eshadoop-permits"));
+    }
+
+    @Test
+    public void testReadReacquiresLostNodeScrollPermit() throws Exception {
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "stub/doc/_search?q=*");
+        conf.set(ConfigurationOptions.ES_SCROLL_NODE_LIMIT, "1");
+        conf.set(ConfigurationOptions.ES_SCROLL_NODE_WAIT, "10ms");
+        conf.set(ConfigurationOptions.ES_SCROLL_NODE_LEASE, "200ms");
+
+        ESInputFormat format = new ESInputFormat();
+        RecordReader<Text, MapWritable> reader = format.getRecordReader(format.getSplits(conf, 1)[0], conf, Reporter.NULL);
+        Text key = reader.createKey();
+        MapWritable value = reader.createValue();
+        assertTrue(reader.next(key, value));
+        assertEquals(1, server.getDocuments(".eshadoop-permits"));
+
+        // the permit expires and is taken over (here simply removed) while reading
+        String permit = ".eshadoop-permits/permit/stub-node-0";
+        RestClient client = new RestClient(SettingsManager.loadFrom(conf));
+        client.deleteDocument(permit, ((Number) client.getDocument(permit).get("_version")).longValue());
+        client.close();
+        Thread.sleep(150);
+
+        // the reader gets a new permit before reading on
+        assertTrue(reader.next(key, value));
+        assertEquals(1, server.getDocuments(".eshadoop-permits"));
+        while (reader.next(key, value)) {
+        }
+        reader.close();
+        assertEquals(0, server.getDocuments(".eshadoop-permits"));
+    }
+
+    @Test
+    public void testReadCombined() throws Exception {
+        harness.setting(ConfigurationOptions.ES_INPUT_COMBINE, "true")
+               .setting(ConfigurationOptions.ES_INPUT_COMBINE_THREADS, "3");
+        StubLoadHarness.Result result = harness.read();
+        System.out.println(result);
+        assertEquals(5000, result.docs);
+        assertEquals(5000, server.getDocsServed());
+        // the 3 shards were scrolled at the same time
+        assertEquals(3, server.getPeakScrolls());
+    }
+
+    @Test
+    public void testReadCombinedSplit() throws Exception {
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "stub/doc/_search?q=*");
+        conf.set(ConfigurationOptions.ES_INPUT_COMBINE, "true");
+
+        InputSplit[] splits = new ESInputFormat().getSplits(conf, 1);
+        // all the shards are on the same node
+        assertEquals(1, splits.length);
+        assertTrue(splits[0].toString(), splits[0].toString().startsWith("CombinedInputSplit [shards=3"));
+    }
+
+    @Test
+    public void testReadMultipleIndices() throws Exception {
+        server.index("logs-2013.06.01").index("logs-2013.06.02").index("other");
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "logs-2013.06.*/doc/_search?q=*");
+
+        ESInputFormat format = new ESInputFormat();
+        InputSplit[] splits = format.getSplits(conf, 1);
+        // 3 shards per index
+        assertEquals(6, splits.length);
+
+        long docs = 0;
+        for (InputSplit split : splits) {
+            RecordReader<Text, MapWritable> reader = format.getRecordReader(split, conf, Reporter.NULL);
+            while (reader.next(reader.createKey(), reader.createValue())) {
+                docs++;
+            }
+            reader.close();
+        }
+        assertEquals(10000, docs);
+
+        // each shard is read through its own index
+        List<String> scans = server.getScanRequests();
+        assertEquals(6, scans.size());
+        int first = 0;
+        for (String scan : scans) {
+            assertTrue(scan, scan.startsWith("/logs-2013.06.01/doc/_search?") || scan.startsWith("/logs-2013.06.02/doc/_search?"));
+            if (scan.startsWith("/logs-2013.06.01/")) {
+                first++;
+            }
+        }
+        assertEquals(3, first);
+    }
+
+    @Test
+    public void testReadFilteredAlias() throws Exception {
+        server.index("logs-2013.06.01").index("logs-2013.06.02")
+              .alias("errors", "logs-2013.06.02", Collections.<String, Object> singletonMap("term", Collections.singletonMap("level", "error")));
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "errors/doc/_search?q=*");
+
+        ESInputFormat format = new ESInputFormat();
+        InputSplit[] splits = format.getSplits(conf, 1);
+        assertEquals(3, splits.length);
+        for (InputSplit split : splits) {
+            RecordReader<Text, MapWritable> reader = format.getRecordReader(split, conf, Reporter.NULL);
+            reader.next(reader.createKey(), reader.createValue());
+            reader.close();
+        }
+
+        // the concrete index is read with the alias filter
+        for (String scan : server.getScanRequests()) {
+            assertTrue(scan, scan.startsWith("/logs-2013.06.02/doc/_search?q=*&source="));
+            assertTrue(scan, scan.contains("source={\"filter\":{\"term\":{\"level\":\"error\"}}}"));
+        }
+    }
+
+    @Test
+    public void testReadPrunedIndices() throws Exception {
+        server.index("logs-2013.06.01").index("logs-2013.06.02");
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "logs-*/doc/_search?q=*");
+        conf.set(ConfigurationOptions.ES_RESOURCE_PARTITION, "logs-{day}");
+
+        // the predicate pushed by the storage handler for ... WHERE day = '2013.06.02'
+        conf.set(TableScanDesc.FILTER_EXPR_CONF_STR, Utilities.serializeExpression(dayEquals("2013.06.02")));
+
+        InputSplit[] splits = new ESHiveInputFormat().getSplits(conf, 1);
+        assertEquals(3, splits.length);
+        for (InputSplit split : splits) {
+            assertTrue(split.toString(), split.toString().contains("index=logs-2013.06.02,"));
+        }
+
+        // no matching index means nothing to read
+        conf.set(TableScanDesc.FILTER_EXPR_CONF_STR, Utilities.serializeExpression(dayEquals("2013.07.01")));
+        assertEquals(0, new ESHiveInputFormat().getSplits(conf, 1).length);
+    }
+
+    @Test
+    public void testHiveContentSummaryWithoutEstimate() throws Exception {
+        server.unavailable(1);
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+        conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+        conf.set(ConfigurationOptions.ES_RESOURCE, "unestimated/doc/_search?q=*");
+
+        // an unknown size must not make the table eligible for a map-join
+        long size = new ESHiveInputFormat().getContentSummary(new Path("unestimated"), conf).getLength();
+        assertTrue(String.valueOf(size), size > HiveConf.getLongVar(conf, HiveConf.ConfVars.HIVESMALLTABLESFILESIZE));
+    }
+
+    private static ExprNodeDesc dayEquals(String day) {
+        // Hive serializes the plan through XMLEncoder which needs a regular List
+        List<ExprNodeDesc> children = new ArrayList<ExprNodeDesc>();
+        children.add(new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, "day", "logs", false));
+        children.add(new ExprNodeConstantDesc(day));
+        return new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPEqual(), children);
+    }
+}
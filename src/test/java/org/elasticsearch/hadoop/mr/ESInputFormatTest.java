@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.mr;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapred.InputSplit;
+import org.elasticsearch.hadoop.mr.ESInputFormat.CombinedInputSplit;
+import org.elasticsearch.hadoop.mr.ESInputFormat.ShardInputSplit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ESInputFormatTest {
+
+    private static ShardInputSplit split(int node, int shard) {
+        return new ShardInputSplit("10.0.0." + node, 9200, "node-" + node, "Node " + node, shard, "index", null);
+    }
+
+    private static String nodes(ShardInputSplit[] splits) {
+        StringBuilder sb = new StringBuilder();
+        for (ShardInputSplit split : splits) {
+            sb.append(split.getLocations()[0].substring("10.0.0.".length()));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testInterleaveByNode() {
+        ShardInputSplit[] splits = { split(1, 0), split(1, 1), split(1, 2), split(2, 3), split(2, 4), split(3, 5) };
+        assertEquals("123121", nodes(ESInputFormat.interleave(splits)));
+    }
+
+    @Test
+    public void testInterleaveKeepsShardOrderPerNode() {
+        ShardInputSplit[] splits = { split(1, 0), split(2, 1), split(1, 2), split(2, 3) };
+        ShardInputSplit[] ordered = ESInputFormat.interleave(splits);
+        assertSame(splits[0], ordered[0]);
+        assertSame(splits[1], ordered[1]);
+        assertSame(splits[2], ordered[2]);
+        assertSame(splits[3], ordered[3]);
+    }
+
+    @Test
+    public void testInterleaveEmpty() {
+        assertEquals(0, ESInputFormat.interleave(new ShardInputSplit[0]).length);
+    }
+
+    @Test
+    public void testCombineByShardCount() throws Exception {
+        ShardInputSplit[] splits = { split(1, 0), split(1, 1), split(1, 2), split(2, 3), split(2, 4), split(3, 5) };
+        InputSplit[] combined = ESInputFormat.combine(splits, 2, Long.MAX_VALUE, 0);
+        // node 1: [0,1] [2], node 2: [3,4], node 3: [5] - alternating between nodes
+        assertEquals(4, combined.length);
+        assertArrayEquals(new String[] { "10.0.0.1" }, combined[0].getLocations());
+        assertEquals(2, ((CombinedInputSplit) combined[0]).getLength());
+        assertArrayEquals(new String[] { "10.0.0.2" }, combined[1].getLocations());
+        assertTrue(combined[1] instanceof CombinedInputSplit);
+        assertSame(splits[5], combined[2]);
+        assertSame(splits[2], combined[3]);
+    }
+
+    @Test
+    public void testCombineBySize() {
+        ShardInputSplit[] splits = { split(1, 0), split(1, 1), split(1, 2), split(1, 3), split(1, 4) };
+        InputSplit[] combined = ESInputFormat.combine(splits, 16, 300, 100);
+        assertEquals(2, combined.length);
+        assertEquals(300, ((CombinedInputSplit) combined[0]).getLength());
+        assertEquals(200, ((CombinedInputSplit) combined[1]).getLength());
+    }
+
+    @Test
+    public void testCombineOversizedShards() {
+        ShardInputSplit[] splits = { split(1, 0), split(1, 1) };
+        // shards bigger than the target are not combined
+        InputSplit[] combined = ESInputFormat.combine(splits, 16, 100, 1000);
+        assertSame(splits[0], combined[0]);
+        assertSame(splits[1], combined[1]);
+    }
+
+    @Test
+    public void testCombinedSplitSerialization() throws Exception {
+        CombinedInputSplit split = new CombinedInputSplit(new ShardInputSplit[] { split(1, 0), split(2, 1) }, 42);
+        DataOutputBuffer out = new DataOutputBuffer();
+        split.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        CombinedInputSplit copy = new CombinedInputSplit();
+        copy.readFields(in);
+
+        assertEquals(42, copy.getLength());
+        assertArrayEquals(new String[] { "10.0.0.1", "10.0.0.2" }, copy.getLocations());
+        assertEquals(split.toString(), copy.toString());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.mr;
+
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.SettingsManager;
+import org.elasticsearch.hadoop.integration.stub.StubESServer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ESShardPartitionerTest {
+
+    private static ESShardPartitioner partitioner(JobConf conf, int shards) {
+        SettingsManager.loadFrom(conf).setPartitionerShards(shards);
+        ESShardPartitioner partitioner = new ESShardPartitioner();
+        partitioner.configure(conf);
+        return partitioner;
+    }
+
+    @Test
+    public void testDjbHash() {
+        // djb2 of "1" is 5381 * 33 + '1' = 177622
+        assertEquals(177622 % 5, ESShardPartitioner.shard("1", 5));
+        for (int i = 0; i < 1000; i++) {
+            int shard = ESShardPartitioner.shard("doc-" + i, 7);
+            assertTrue(shard >= 0 && shard < 7);
+        }
+    }
+
+    @Test
+    public void testPartitionByKey() {
+        ESShardPartitioner partitioner = partitioner(new JobConf(), 5);
+        assertEquals(ESShardPartitioner.shard("42", 5), partitioner.getPartition(new Text("42"), new MapWritable(), 5));
+        // fewer reducers than shards
+        assertEquals(ESShardPartitioner.shard("42", 5) % 2, partitioner.getPartition(new Text("42"), new MapWritable(), 2));
+    }
+
+    @Test
+    public void testPartitionByRoutingField() {
+        JobConf conf = new JobConf();
+        conf.set(ConfigurationOptions.ES_MAPPING_ID, "id");
+        conf.set(ConfigurationOptions.ES_MAPPING_ROUTING, "user.name");
+        ESShardPartitioner partitioner = partitioner(conf, 3);
+
+        MapWritable user = new MapWritable();
+        user.put(new Text("name"), new Text("kimchy"));
+        MapWritable doc = new MapWritable();
+        doc.put(new Text("id"), new Text("1"));
+        doc.put(new Text("user"), user);
+
+        assertEquals(ESShardPartitioner.shard("kimchy", 3), partitioner.getPartition(new Text("ignored"), doc, 3));
+    }
+
+    @Test
+    public void testConfigureJob() throws Exception {
+        StubESServer server = new StubESServer().shards(3).start();
+        try {
+            server.index("stub");
+            JobConf conf = new JobConf();
+            conf.set(ConfigurationOptions.ES_HOST, "127.0.0.1");
+            conf.set(ConfigurationOptions.ES_PORT, String.valueOf(server.getPort()));
+            conf.set(ConfigurationOptions.ES_RESOURCE, "stub/doc");
+
+            assertEquals(3, ESShardPartitioner.configureJob(conf));
+            assertEquals(3, conf.getNumReduceTasks());
+            assertEquals(ESShardPartitioner.class, conf.getPartitionerClass());
+            assertEquals(3, SettingsManager.loadFrom(conf).getPartitionerShards());
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.pig;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.ResourceSchema.ResourceFieldSchema;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.elasticsearch.hadoop.util.JsonUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PigMappingTest {
+
+    @Test
+    public void testMappingToSchema() throws Exception {
+        ResourceSchema schema = PigTypeUtils.mappingToSchema(JsonUtils.mapFromJson("/org/elasticsearch/hadoop/pig/mapping.json"));
+        ResourceFieldSchema[] fields = schema.getFields();
+
+        assertEquals(10, fields.length);
+        assertField(fields[0], "name", DataType.CHARARRAY);
+        assertField(fields[1], "age", DataType.LONG);
+        assertField(fields[2], "rank", DataType.INTEGER);
+        assertField(fields[3], "score", DataType.DOUBLE);
+        assertField(fields[4], "active", DataType.BOOLEAN);
+        assertField(fields[5], "@timestamp", DataType.CHARARRAY);
+        assertField(fields[6], "location", DataType.BYTEARRAY);
+        assertField(fields[7], "address", DataType.TUPLE);
+        assertField(fields[8], "tags", DataType.MAP);
+        assertField(fields[9], "links", DataType.BAG);
+
+        ResourceFieldSchema[] address = fields[7].getSchema().getFields();
+        assertField(address[0], "street", DataType.CHARARRAY);
+        assertField(address[1], "number", DataType.INTEGER);
+    }
+
+    @Test
+    public void testMapToTuple() throws Exception {
+        ResourceSchema schema = PigTypeUtils.mappingToSchema(JsonUtils.mapFromJson("/org/elasticsearch/hadoop/pig/mapping.json"));
+
+        Map<Object, Object> address = new LinkedHashMap<Object, Object>();
+        address.put("number", 10);
+        address.put("street", "Main");
+
+        Map<Object, Object> doc = new LinkedHashMap<Object, Object>();
+        // different order than the mapping
+        doc.put("links", Arrays.asList(Collections.singletonMap("url", "http://foo")));
+        doc.put("address", address);
+        doc.put("age", 42);
+        doc.put("name", "John");
+
+        Tuple tuple = PigTypeUtils.mapToTuple(doc, schema.getFields());
+        assertEquals(10, tuple.size());
+        assertEquals("John", tuple.get(0));
+        // numbers are converted to the mapped type
+        assertEquals(Long.valueOf(42), tuple.get(1));
+        assertNull(tuple.get(2));
+
+        Tuple nested = (Tuple) tuple.get(7);
+        assertEquals("Main", nested.get(0));
+        assertEquals(Integer.valueOf(10), nested.get(1));
+
+        DataBag links = (DataBag) tuple.get(9);
+        assertEquals(1, links.size());
+        assertEquals("http://foo", links.iterator().next().get(0));
+    }
+
+    @Test
+    public void testMultiValuedFields() throws Exception {
+        ResourceSchema schema = PigTypeUtils.mappingToSchema(JsonUtils.mapFromJson("/org/elasticsearch/hadoop/pig/mapping.json"));
+
+        Map<Object, Object> address = new LinkedHashMap<Object, Object>();
+        address.put("street", "Main");
+        address.put("number", 10);
+
+        Map<Object, Object> doc = new LinkedHashMap<Object, Object>();
+        // the mapping is the same for single and multi-valued fields
+        doc.put("name", Arrays.asList("John", "Johnny"));
+        doc.put("age", Arrays.asList(42));
+        doc.put("rank", Arrays.asList(1, 2));
+        doc.put("address", Arrays.asList(address, Collections.singletonMap("street", "Side")));
+        doc.put("links", Collections.singletonMap("url", "http://foo"));
+
+        Tuple tuple = PigTypeUtils.mapToTuple(doc, schema.getFields());
+        // the values match the declared types
+        assertEquals("[\"John\",\"Johnny\"]", tuple.get(0));
+        assertEquals(Long.valueOf(42), tuple.get(1));
+        assertEquals(Integer.valueOf(1), tuple.get(2));
+        Tuple nested = (Tuple) tuple.get(7);
+        assertEquals("Main", nested.get(0));
+        assertEquals(Integer.valueOf(10), nested.get(1));
+        // a single value of a nested field is still a bag
+        DataBag links = (DataBag) tuple.get(9);
+        assertEquals(1, links.size());
+        assertEquals("http://foo", links.iterator().next().get(0));
+    }
+
+    private void assertField(ResourceFieldSchema field, String name, byte type) {
+        assertEquals(name, field.getName());
+        assertEquals(DataType.findTypeName(type), DataType.findTypeName(field.getType()));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AliasFiltersTest {
+
+    private static final Map<String, Object> ERRORS = Collections.<String, Object> singletonMap("term", Collections.singletonMap("level", "error"));
+    private static final Map<String, Object> WEB = Collections.<String, Object> singletonMap("term", Collections.singletonMap("source", "web"));
+
+    private static Map<String, Map<String, Map<String, Object>>> aliases() {
+        Map<String, Map<String, Object>> first = new LinkedHashMap<String, Map<String, Object>>();
+        first.put("errors", Collections.<String, Object> singletonMap("filter", ERRORS));
+        first.put("web", Collections.<String, Object> singletonMap("filter", WEB));
+        first.put("all", Collections.<String, Object> emptyMap());
+
+        Map<String, Map<String, Object>> second = new LinkedHashMap<String, Map<String, Object>>();
+        second.put("all", Collections.<String, Object> emptyMap());
+
+        Map<String, Map<String, Map<String, Object>>> aliases = new LinkedHashMap<String, Map<String, Map<String, Object>>>();
+        aliases.put("logs-2013.06.01", first);
+        aliases.put("logs-2013.06.02", second);
+        return aliases;
+    }
+
+    @Test
+    public void testFilteredAlias() {
+        assertEquals(Collections.singletonMap("logs-2013.06.01", ERRORS), AliasFilters.resolve("errors", aliases()));
+    }
+
+    @Test
+    public void testMultipleFilteredAliases() {
+        Map<String, Object> filters = AliasFilters.resolve("errors,web", aliases());
+        assertEquals(Collections.singletonMap("or", Arrays.asList(ERRORS, WEB)), filters.get("logs-2013.06.01"));
+    }
+
+    @Test
+    public void testDirectAccessWins() {
+        assertTrue(AliasFilters.resolve("errors,logs-2013.06.*", aliases()).isEmpty());
+        assertTrue(AliasFilters.resolve("errors,all", aliases()).isEmpty());
+        assertTrue(AliasFilters.resolve("errors,_all", aliases()).isEmpty());
+    }
+
+    @Test
+    public void testUnfilteredAndWildcards() {
+        assertTrue(AliasFilters.resolve("logs-*", aliases()).isEmpty());
+        assertTrue(AliasFilters.resolve("all", aliases()).isEmpty());
+        assertEquals(Collections.singletonMap("logs-2013.06.01", ERRORS), AliasFilters.resolve("err*", aliases()));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.cfg.SettingsManager;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BufferedRestClientTest {
+
+    private static Settings settings(String... props) {
+        Properties cfg = new Properties();
+        cfg.setProperty(ConfigurationOptions.ES_RESOURCE, "index/type");
+        for (int i = 0; i < props.length; i += 2) {
+            cfg.setProperty(props[i], props[i + 1]);
+        }
+        return SettingsManager.loadFrom(cfg);
+    }
+
+    private static void assertNoReservation(Settings settings) throws Exception {
+        MemoryBudget memory = MemoryBudget.of(settings);
+        long used = memory.used();
+        BufferedRestClient client = new BufferedRestClient(settings);
+        try {
+            // metadata-only clients (such as the ones used for computing the splits) do not write
+            assertEquals(used, memory.used());
+        } finally {
+            client.close();
+        }
+        assertEquals(used, memory.used());
+    }
+
+    @Test
+    public void testNoBufferUntilWritten() throws Exception {
+        assertNoReservation(settings());
+    }
+
+    @Test
+    public void testNoStreamingWindowUntilWritten() throws Exception {
+        assertNoReservation(settings(ConfigurationOptions.ES_BATCH_WRITE_STREAMING, "true"));
+    }
+
+    @Test
+    public void testCloseReleasesOnFailure() throws Exception {
+        Settings settings = settings();
+        MemoryBudget memory = MemoryBudget.of(settings);
+        long used = memory.used();
+        final boolean[] closed = new boolean[1];
+        RestClient failing = new RestClient(settings) {
+            @Override
+            public List<Map<String, Object>> bulk(String index, byte[] buffer, int bufferSize) throws IOException {
+                throw new IOException("bulk failed");
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        BufferedRestClient client = new BufferedRestClient(settings, failing);
+        client.addToIndex(Collections.singletonMap("field", "value"));
+        try {
+            client.close();
+            fail("the failed flush should be rethrown");
+        } catch (IOException ex) {
+            assertEquals("bulk failed", ex.getMessage());
+        }
+        assertTrue(closed[0]);
+        assertEquals(used, memory.used());
+    }
+}
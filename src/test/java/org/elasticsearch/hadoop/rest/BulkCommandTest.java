@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.SettingsManager;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BulkCommandTest {
+
+    private static BulkCommand command(String... settings) {
+        Properties props = new Properties();
+        for (int i = 0; i < settings.length; i += 2) {
+            props.setProperty(settings[i], settings[i + 1]);
+        }
+        return new BulkCommand(SettingsManager.loadFrom(props), new ObjectMapper());
+    }
+
+    private static Map<String, Object> document() {
+        Map<String, Object> doc = new LinkedHashMap<String, Object>();
+        doc.put("id", 1);
+        doc.put("counter", 5);
+        return doc;
+    }
+
+    @Test
+    public void testPlainIndex() throws Exception {
+        assertEquals("{\"index\":{}}\n{\"id\":1,\"counter\":5}\n", command().entry(document(), document()));
+    }
+
+    @Test
+    public void testPlainJson() throws Exception {
+        String json = "{\"id\":1}";
+        assertEquals("{\"index\":{}}\n{\"id\":1}\n", command().entry(json, json));
+        assertEquals("{\"create\":{\"_id\":\"1\"}}\n{\"id\":1}\n",
+                command(ConfigurationOptions.ES_WRITE_OPERATION, "create", ConfigurationOptions.ES_MAPPING_ID, "id").entry(json, json));
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        BulkCommand command = command(ConfigurationOptions.ES_WRITE_OPERATION, "update", ConfigurationOptions.ES_MAPPING_ID, "id",
+                ConfigurationOptions.ES_MAPPING_METADATA_REMOVE, "true");
+        assertEquals("{\"update\":{\"_id\":\"1\"}}\n{\"doc\":{\"counter\":5}}\n", command.entry(document(), document()));
+    }
+
+    @Test
+    public void testUpdateScript() throws Exception {
+        BulkCommand command = command(ConfigurationOptions.ES_WRITE_OPERATION, "update", ConfigurationOptions.ES_MAPPING_ID, "id",
+                ConfigurationOptions.ES_UPDATE_SCRIPT, "ctx._source.counter += count",
+                ConfigurationOptions.ES_UPDATE_SCRIPT_PARAMS, "count:counter",
+                ConfigurationOptions.ES_UPDATE_RETRY_ON_CONFLICT, "3");
+        assertEquals("{\"update\":{\"_id\":\"1\",\"_retry_on_conflict\":3}}\n"
+                + "{\"script\":\"ctx._source.counter += count\",\"params\":{\"count\":5}}\n", command.entry(document(), document()));
+    }
+
+    @Test
+    public void testUpsert() throws Exception {
+        BulkCommand command = command(ConfigurationOptions.ES_WRITE_OPERATION, "upsert", ConfigurationOptions.ES_MAPPING_ID, "id");
+        assertEquals("{\"update\":{\"_id\":\"1\"}}\n{\"doc\":{\"id\":1,\"counter\":5},\"doc_as_upsert\":true}\n",
+                command.entry(document(), document()));
+    }
+
+    @Test
+    public void testUpsertScript() throws Exception {
+        BulkCommand command = command(ConfigurationOptions.ES_WRITE_OPERATION, "upsert", ConfigurationOptions.ES_MAPPING_ID, "id",
+                ConfigurationOptions.ES_UPDATE_SCRIPT, "ctx._source.counter += 1", ConfigurationOptions.ES_UPDATE_SCRIPT_LANG, "mvel");
+        assertEquals("{\"update\":{\"_id\":\"1\"}}\n"
+                + "{\"script\":\"ctx._source.counter += 1\",\"lang\":\"mvel\",\"upsert\":{\"id\":1,\"counter\":5}}\n",
+                command.entry(document(), document()));
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        BulkCommand command = command(ConfigurationOptions.ES_WRITE_OPERATION, "Delete", ConfigurationOptions.ES_MAPPING_ID, "id");
+        assertEquals("{\"delete\":{\"_id\":\"1\"}}\n", command.entry(document(), document()));
+    }
+
+    @Test
+    public void testDynamicResource() throws Exception {
+        BulkCommand command = new BulkCommand(SettingsManager.loadFrom(new Properties()), new ObjectMapper(), new ResourcePattern("counters-{id}/{counter}"));
+        assertEquals("{\"index\":{\"_index\":\"counters-1\",\"_type\":\"5\"}}\n{\"id\":1,\"counter\":5}\n", command.entry(document(), document()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUpdateRequiresId() throws Exception {
+        command(ConfigurationOptions.ES_WRITE_OPERATION, "update");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOperation() throws Exception {
+        command(ConfigurationOptions.ES_WRITE_OPERATION, "merge");
+    }
+}
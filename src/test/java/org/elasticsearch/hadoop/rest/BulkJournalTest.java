@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.File;
+
+import org.elasticsearch.hadoop.util.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BulkJournalTest {
+
+    private File dir;
+    private BulkJournal journal;
+
+    @Before
+    public void before() {
+        dir = new File(System.getProperty("java.io.tmpdir"), "es-journal-test-" + System.nanoTime());
+        journal = new BulkJournal(dir, 64, 256);
+    }
+
+    @After
+    public void after() {
+        journal.close();
+    }
+
+    private boolean append(String... entries) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        int[] offsets = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            offsets[i] = sb.length();
+            sb.append(entries[i]);
+        }
+        byte[] data = sb.toString().getBytes(StringUtils.UTF_8);
+        return journal.append(data, data.length, offsets, entries.length);
+    }
+
+    @Test
+    public void testFifo() throws Exception {
+        assertTrue(journal.isEmpty());
+        assertTrue(append("a\n", "bb\n"));
+        assertTrue(append("ccc\n"));
+        assertEquals(2, journal.batches());
+
+        BulkJournal.Batch batch = journal.peek();
+        assertEquals("a\nbb\n", new String(batch.data, StringUtils.UTF_8));
+        assertArrayEquals(new int[] { 0, 2 }, batch.offsets);
+        journal.remove();
+
+        batch = journal.peek();
+        assertEquals("ccc\n", new String(batch.data, StringUtils.UTF_8));
+        assertArrayEquals(new int[] { 0 }, batch.offsets);
+        journal.remove();
+        assertTrue(journal.isEmpty());
+    }
+
+    @Test
+    public void testSpansSegments() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(append("entry-" + i + "-0123456789012345678901234567890123456789\n"));
+        }
+        assertTrue(dir.list().length > 1);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(new String(journal.peek().data, StringUtils.UTF_8).startsWith("entry-" + i));
+            journal.remove();
+        }
+        assertTrue(journal.isEmpty());
+        // consumed segments are deleted
+        assertTrue(dir.list().length <= 1);
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        int appended = 0;
+        while (append("0123456789012345678901234567890123456789\n")) {
+            appended++;
+        }
+        assertTrue(appended > 0);
+        assertTrue(journal.diskSize() <= 256);
+        assertEquals(appended, journal.batches());
+    }
+
+    @Test
+    public void testCloseDeletesFiles() throws Exception {
+        append("a\n");
+        assertTrue(dir.exists());
+        journal.close();
+        assertFalse(dir.exists());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.elasticsearch.hadoop.util.StringUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentAppenderTest {
+
+    private static class RecordingSink implements ConcurrentAppender.Sink {
+        // only used by the flushing thread
+        final List<String> entries = new ArrayList<String>();
+
+        @Override
+        public void append(byte[] data, int offset, int length) throws IOException {
+            entries.add(new String(data, offset, length, StringUtils.UTF_8));
+        }
+    }
+
+    @Test
+    public void testPerThreadOrder() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        final ConcurrentAppender appender = new ConcurrentAppender(sink, new MemoryBudget(Long.MAX_VALUE));
+
+        final int threads = 8;
+        final int entries = 5000;
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            writers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < entries; i++) {
+                            appender.add((id + ":" + i + "\n").getBytes(StringUtils.UTF_8));
+                        }
+                    } catch (IOException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+            };
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        appender.close();
+
+        assertEquals(threads * entries, sink.entries.size());
+        int[] next = new int[threads];
+        for (String entry : sink.entries) {
+            String[] split = entry.trim().split(":");
+            int thread = Integer.parseInt(split[0]);
+            assertEquals(next[thread]++, Integer.parseInt(split[1]));
+        }
+    }
+
+    @Test
+    public void testLargeEntriesKeepOrder() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        ConcurrentAppender appender = new ConcurrentAppender(sink, new MemoryBudget(Long.MAX_VALUE));
+
+        char[] chars = new char[100 * 1024];
+        Arrays.fill(chars, 'x');
+        String large = new String(chars);
+
+        appender.add("1".getBytes(StringUtils.UTF_8));
+        appender.add(large.getBytes(StringUtils.UTF_8));
+        appender.add("2".getBytes(StringUtils.UTF_8));
+        appender.close();
+
+        assertEquals(Arrays.asList("1", large, "2"), sink.entries);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailurePropagates() throws Exception {
+        ConcurrentAppender appender = new ConcurrentAppender(new ConcurrentAppender.Sink() {
+            @Override
+            public void append(byte[] data, int offset, int length) throws IOException {
+                throw new IllegalStateException("boom");
+            }
+        }, new MemoryBudget(Long.MAX_VALUE));
+
+        appender.add("1".getBytes(StringUtils.UTF_8));
+        appender.close();
+    }
+}
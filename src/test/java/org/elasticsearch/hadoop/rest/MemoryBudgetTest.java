@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MemoryBudgetTest {
+
+    @Test
+    public void testUnlimited() {
+        MemoryBudget budget = new MemoryBudget(1000);
+        assertEquals(5000, budget.grant(5000, 100));
+        assertTrue(budget.tryReserve(5000));
+        assertEquals(10000, budget.used());
+        assertEquals("memory[used=10000,peak=10000]", budget.summary());
+    }
+
+    @Test
+    public void testGrantShrinks() {
+        MemoryBudget budget = new MemoryBudget(1000);
+        budget.limit(0.5f);
+        assertEquals(500, budget.limit());
+
+        assertEquals(400, budget.grant(400, 100));
+        // only 100 left
+        assertEquals(100, budget.grant(400, 50));
+        // nothing left - the minimum is still granted
+        assertEquals(50, budget.grant(400, 50));
+        assertEquals(550, budget.used());
+    }
+
+    @Test
+    public void testTryReserve() {
+        MemoryBudget budget = new MemoryBudget(1000);
+        budget.limit(0.5f);
+        assertTrue(budget.tryReserve(300));
+        assertFalse(budget.tryReserve(300));
+        budget.release(300);
+        assertTrue(budget.tryReserve(300));
+    }
+
+    @Test
+    public void testHighWater() {
+        MemoryBudget budget = new MemoryBudget(1000);
+        budget.force(700);
+        budget.release(500);
+        budget.force(100);
+        assertEquals(300, budget.used());
+        assertEquals(700, budget.highWater());
+        budget.limit(1f);
+        assertEquals("memory[used=300,peak=700,limit=1000]", budget.summary());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.SettingsManager;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetadataExtractorTest {
+
+    private static MetadataExtractor extractor(String... settings) {
+        Properties props = new Properties();
+        for (int i = 0; i < settings.length; i += 2) {
+            props.setProperty(settings[i], settings[i + 1]);
+        }
+        return new MetadataExtractor(SettingsManager.loadFrom(props));
+    }
+
+    private static Map<String, Object> document() {
+        Map<String, Object> user = new LinkedHashMap<String, Object>();
+        user.put("id", 42);
+        user.put("name", "kimchy");
+
+        Map<String, Object> doc = new LinkedHashMap<String, Object>();
+        doc.put("key", "k1");
+        doc.put("ver", 3L);
+        doc.put("user", user);
+        return doc;
+    }
+
+    @Test
+    public void testNoMetadata() {
+        assertTrue(extractor().isEmpty());
+    }
+
+    @Test
+    public void testExtract() {
+        MetadataExtractor extractor = extractor(ConfigurationOptions.ES_MAPPING_ID, "key",
+                ConfigurationOptions.ES_MAPPING_ROUTING, "user.id", ConfigurationOptions.ES_MAPPING_VERSION, "ver");
+        Map<String, Object> metadata = extractor.extract(document());
+        assertEquals("k1", metadata.get("_id"));
+        assertEquals("42", metadata.get("_routing"));
+        assertEquals(3L, metadata.get("_version"));
+        assertEquals("external", metadata.get("_version_type"));
+        assertFalse(metadata.containsKey("_parent"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingField() {
+        extractor(ConfigurationOptions.ES_MAPPING_PARENT, "user.parent").extract(document());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRemove() {
+        MetadataExtractor extractor = extractor(ConfigurationOptions.ES_MAPPING_ID, "key",
+                ConfigurationOptions.ES_MAPPING_ROUTING, "user.id", ConfigurationOptions.ES_MAPPING_METADATA_REMOVE, "true");
+        assertTrue(extractor.removeFromSource());
+
+        Map<String, Object> doc = document();
+        Map<String, Object> source = extractor.remove(doc);
+        assertFalse(source.containsKey("key"));
+        assertEquals(3L, source.get("ver"));
+        assertFalse(((Map<String, Object>) source.get("user")).containsKey("id"));
+        assertTrue(((Map<String, Object>) source.get("user")).containsKey("name"));
+
+        // original untouched
+        assertEquals("k1", doc.get("key"));
+        assertEquals(42, ((Map<String, Object>) doc.get("user")).get("id"));
+    }
+}
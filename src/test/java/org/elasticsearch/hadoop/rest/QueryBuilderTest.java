@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QueryBuilderTest {
+
+    private static final String FILTER = "{\"term\":{\"level\":\"error\"}}";
+
+    @Test
+    public void testConcreteIndex() {
+        String query = QueryBuilder.query("logs-*/event/_search?q=*").index("logs-2013.06.01").shard("2").toString();
+        assertTrue(query, query.startsWith("QueryBuilder [logs-2013.06.01/event/_search?q=*&search_type=scan"));
+        assertTrue(query, query.contains("preference=_shards:2"));
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        String query = QueryBuilder.applyFilter("errors/event/_search?q=user:kimchy", FILTER);
+        assertTrue(query, query.startsWith("errors/event/_search?q=user:kimchy&source="));
+        assertEquals("{\"filter\":" + FILTER + "}", URLDecoder.decode(query.substring(query.indexOf("source=") + 7), "UTF-8"));
+    }
+
+    @Test
+    public void testFilterCombinedWithSource() throws Exception {
+        String source = "{\"query\":{\"match_all\":{}},\"filter\":{\"exists\":{\"field\":\"user\"}}}";
+        String query = QueryBuilder.applyFilter("errors/_search?source=" + URLEncoder.encode(source, "UTF-8") + "&size=10", FILTER);
+        assertTrue(query, query.startsWith("errors/_search?size=10&source="));
+        assertEquals("{\"query\":{\"match_all\":{}},\"filter\":{\"and\":[{\"exists\":{\"field\":\"user\"}}," + FILTER + "]}}",
+                URLDecoder.decode(query.substring(query.indexOf("source=") + 7), "UTF-8"));
+    }
+
+    @Test
+    public void testNoQueryParameters() throws Exception {
+        String query = QueryBuilder.applyFilter("errors/_search", FILTER);
+        assertEquals("errors/_search?source=" + URLEncoder.encode("{\"filter\":" + FILTER + "}", "UTF-8"), query);
+    }
+}
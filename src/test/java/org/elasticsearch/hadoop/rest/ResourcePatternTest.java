@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResourcePatternTest {
+
+    private static Map<String, Object> document(Object timestamp) {
+        Map<String, Object> doc = new LinkedHashMap<String, Object>();
+        doc.put("@timestamp", timestamp);
+        doc.put("type", "event");
+        doc.put("source", Collections.singletonMap("host", "web1"));
+        return doc;
+    }
+
+    @Test
+    public void testIsPattern() {
+        assertTrue(ResourcePattern.isPattern("logs-{@timestamp:yyyy.MM.dd}/{type}"));
+        assertFalse(ResourcePattern.isPattern("logs/event"));
+        assertFalse(ResourcePattern.isPattern("logs/event/_search?source={\"query\":{}}"));
+    }
+
+    @Test
+    public void testResolve() {
+        ResourcePattern pattern = new ResourcePattern("logs-{@timestamp:yyyy.MM.dd}/{type}");
+        assertArrayEquals(new String[] { "logs-2013.10.19", "event" }, pattern.resolve(document("2013-10-19T23:59:59Z")));
+        // time zones are converted to UTC
+        assertArrayEquals(new String[] { "logs-2013.10.20", "event" }, pattern.resolve(document("2013-10-19T23:59:59-02:00")));
+        assertArrayEquals(new String[] { "logs-1970.01.01", "event" }, pattern.resolve(document(1000L)));
+        assertArrayEquals(new String[] { "logs-1970.01.02", "event" }, pattern.resolve(document(new Date(24 * 3600 * 1000L))));
+    }
+
+    @Test
+    public void testNestedFieldAndLiteralType() {
+        ResourcePattern pattern = new ResourcePattern("{source.host}/log");
+        assertArrayEquals(new String[] { "web1", "log" }, pattern.resolve(document(0)));
+    }
+
+    @Test
+    public void testSlashInsideFormat() {
+        ResourcePattern pattern = new ResourcePattern("logs-{@timestamp:yyyy/MM}/{type}");
+        assertArrayEquals(new String[] { "logs-2013/10", "event" }, pattern.resolve(document("2013-10-19T10:00:00Z")));
+    }
+
+    @Test
+    public void testWildcard() {
+        assertEquals("logs-*/*", new ResourcePattern("logs-{@timestamp:yyyy.MM.dd}/{type}").wildcard());
+        assertEquals("logs-*/event", new ResourcePattern("logs-{@timestamp:yyyy.MM.dd}/event").wildcard());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingField() {
+        new ResourcePattern("logs-{date}/{type}").resolve(document(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingType() {
+        new ResourcePattern("logs-{@timestamp:yyyy.MM.dd}");
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResourceTest {
+
+    @Test
+    public void testIndexAndType() {
+        Resource resource = new Resource("twitter/tweet");
+        assertEquals("twitter", resource.index);
+        assertEquals("twitter/tweet/_search_shards", resource.targetShards());
+    }
+
+    @Test
+    public void testQuery() {
+        Resource resource = new Resource("twitter/tweet/_search?q=user:kimchy");
+        assertEquals("twitter", resource.index);
+        assertEquals("twitter/tweet/_search_shards", resource.targetShards());
+        assertEquals("twitter/tweet/_count?q=user:kimchy", resource.count());
+    }
+
+    @Test
+    public void testUnderscoreInNames() {
+        Resource resource = new Resource("my_index/my_type/_search?q=field_name:some_value");
+        assertEquals("my_index", resource.index);
+        assertEquals("my_index/my_type/_search_shards", resource.targetShards());
+        assertEquals("my_index/my_type/_bulk", new Resource("my_index/my_type").bulkIndexing());
+    }
+
+    @Test
+    public void testMultipleIndices() {
+        Resource resource = new Resource("logs-2013.06.*,archive/event/_search?q=*");
+        assertEquals("logs-2013.06.*,archive", resource.index);
+        assertEquals("logs-2013.06.*,archive/event/_search_shards", resource.targetShards());
+        assertEquals("logs-2013.06.*,archive/_aliases", resource.aliases());
+    }
+
+    @Test
+    public void testIndexOnly() {
+        Resource resource = new Resource("logs-*/_search?q=*");
+        assertEquals("logs-*", resource.index);
+        assertEquals("logs-*/_search_shards", resource.targetShards());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import org.elasticsearch.hadoop.rest.SizeEstimator.Estimate;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SizeEstimatorTest {
+
+    @Test
+    public void testQueryEstimate() {
+        Estimate estimate = new Estimate(250, 1000, 10000);
+        assertEquals(250, estimate.getDocCount());
+        assertEquals(10, estimate.getAverageDocSize());
+        assertEquals(2500, estimate.getSizeInBytes());
+    }
+
+    @Test
+    public void testWholeIndexEstimate() {
+        assertEquals(10000, new Estimate(1000, 1000, 10000).getSizeInBytes());
+    }
+
+    @Test
+    public void testEmptyIndex() {
+        Estimate estimate = new Estimate(0, 0, 0);
+        assertEquals(0, estimate.getAverageDocSize());
+        assertEquals(0, estimate.getSizeInBytes());
+    }
+
+    @Test
+    public void testCountResource() {
+        assertEquals("twitter/tweet/_count?q=kimchy", new Resource("twitter/tweet/_search?q=kimchy").count());
+        assertEquals("twitter/tweet/_count", new Resource("twitter/tweet").count());
+        assertEquals("twitter/_stats", new Resource("twitter/tweet/_search?q=kimchy").indexStats());
+    }
+
+    @Test
+    public void testCacheExpires() {
+        Estimate estimate = new Estimate(1, 1, 1);
+        SizeEstimator.cache("expires", estimate);
+        assertSame(estimate, SizeEstimator.cached("expires", System.currentTimeMillis()));
+        assertNull(SizeEstimator.cached("expires", System.currentTimeMillis() + SizeEstimator.CACHE_TTL));
+        assertNull(SizeEstimator.cached("expires", System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testCacheBounded() {
+        for (int i = 0; i < SizeEstimator.CACHE_SIZE * 2; i++) {
+            SizeEstimator.cache("bounded-" + i, new Estimate(i, i, i));
+        }
+        assertEquals(SizeEstimator.CACHE_SIZE, SizeEstimator.cacheSize());
+        // the least recently used entries are evicted
+        assertNull(SizeEstimator.cached("bounded-0", System.currentTimeMillis()));
+        assertNotNull(SizeEstimator.cached("bounded-" + (SizeEstimator.CACHE_SIZE * 2 - 1), System.currentTimeMillis()));
+    }
+}
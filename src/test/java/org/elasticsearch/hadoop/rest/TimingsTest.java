@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import org.elasticsearch.hadoop.rest.Timings.Phase;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TimingsTest {
+
+    @Test
+    public void testRetire() {
+        Timings timings = new Timings();
+        timings.record(Phase.HTTP, 1000);
+        long before = Timings.aggregate().get(Phase.HTTP).getCount();
+
+        Timings.register(timings);
+        assertEquals(before + 1, Timings.aggregate().get(Phase.HTTP).getCount());
+        // the closed timings are kept in the aggregate (but not twice)
+        Timings.retire(timings);
+        Timings.retire(timings);
+        assertEquals(before + 1, Timings.aggregate().get(Phase.HTTP).getCount());
+    }
+
+    @Test
+    public void testUnclosedNotRetained() throws Exception {
+        int live = Timings.live();
+        Timings.register(new Timings());
+        // a client that is never closed does not leak its timings
+        for (int i = 0; i < 50 && Timings.live() > live; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertTrue(Timings.live() <= live);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.elasticsearch.hadoop.cfg.ConfigurationOptions;
+import org.elasticsearch.hadoop.cfg.Settings;
+import org.elasticsearch.hadoop.cfg.SettingsManager;
+import org.elasticsearch.hadoop.util.StringUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WriteCoalescerTest {
+
+    public static class MaxMerger implements DocumentMerger {
+        @Override
+        public Map<String, Object> merge(Map<String, Object> previous, Map<String, Object> current) {
+            return ((Number) previous.get("count")).longValue() > ((Number) current.get("count")).longValue() ? previous : current;
+        }
+    }
+
+    private static WriteCoalescer coalescer(String... settings) {
+        Properties props = new Properties();
+        props.setProperty(ConfigurationOptions.ES_MAPPING_ID, "id");
+        for (int i = 0; i < settings.length; i += 2) {
+            props.setProperty(settings[i], settings[i + 1]);
+        }
+        Settings cfg = SettingsManager.loadFrom(props);
+        return new WriteCoalescer(cfg, new BulkCommand(cfg, new ObjectMapper()));
+    }
+
+    private static Map<String, Object> doc(Object id, long count) {
+        Map<String, Object> doc = new LinkedHashMap<String, Object>();
+        doc.put("id", id);
+        doc.put("count", count);
+        return doc;
+    }
+
+    private static String drain(WriteCoalescer coalescer) {
+        List<byte[]> entries = coalescer.drain();
+        StringBuilder sb = new StringBuilder();
+        for (byte[] entry : entries) {
+            sb.append(new String(entry, StringUtils.UTF_8));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testLastWriteWins() throws Exception {
+        WriteCoalescer coalescer = coalescer();
+        assertFalse(coalescer.add(doc(1, 1)));
+        assertFalse(coalescer.add(doc(2, 1)));
+        assertTrue(coalescer.add(doc(1, 5)));
+        assertEquals(2, coalescer.entries());
+        assertEquals("{\"index\":{\"_id\":\"1\"}}\n{\"id\":1,\"count\":5}\n{\"index\":{\"_id\":\"2\"}}\n{\"id\":2,\"count\":1}\n", drain(coalescer));
+        assertEquals(0, coalescer.entries());
+        assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void testReusedDocument() throws Exception {
+        WriteCoalescer coalescer = coalescer(ConfigurationOptions.ES_WRITE_OPERATION, "upsert",
+                ConfigurationOptions.ES_BATCH_WRITE_COALESCE_MERGER, "additive");
+        // same instance for every record
+        Map<String, Object> doc = doc(1, 1);
+        coalescer.add(doc);
+        doc.put("count", 2L);
+        coalescer.add(doc);
+        doc.put("id", 2);
+        doc.put("count", 4L);
+        coalescer.add(doc);
+        assertEquals("{\"update\":{\"_id\":\"1\"}}\n{\"doc\":{\"id\":1,\"count\":3},\"doc_as_upsert\":true}\n"
+                + "{\"update\":{\"_id\":\"2\"}}\n{\"doc\":{\"id\":2,\"count\":4},\"doc_as_upsert\":true}\n", drain(coalescer));
+    }
+
+    @Test
+    public void testAdditiveUpsert() throws Exception {
+        WriteCoalescer coalescer = coalescer(ConfigurationOptions.ES_WRITE_OPERATION, "upsert",
+                ConfigurationOptions.ES_BATCH_WRITE_COALESCE_MERGER, "additive");
+        coalescer.add(doc(7, 1));
+        coalescer.add(doc(7, 2));
+        coalescer.add(doc(7, 3));
+        // the id is not added up
+        assertEquals("{\"update\":{\"_id\":\"7\"}}\n{\"doc\":{\"id\":7,\"count\":6},\"doc_as_upsert\":true}\n", drain(coalescer));
+    }
+
+    @Test
+    public void testPartialUpdatesOverlay() throws Exception {
+        WriteCoalescer coalescer = coalescer(ConfigurationOptions.ES_WRITE_OPERATION, "update");
+        Map<String, Object> first = doc(1, 1);
+        first.put("name", "a");
+        Map<String, Object> second = new LinkedHashMap<String, Object>();
+        second.put("id", 1);
+        second.put("count", 2);
+        coalescer.add(first);
+        coalescer.add(second);
+        assertEquals("{\"update\":{\"_id\":\"1\"}}\n{\"doc\":{\"id\":1,\"count\":2,\"name\":\"a\"}}\n", drain(coalescer));
+    }
+
+    @Test
+    public void testRoutingIsPartOfTheKey() throws Exception {
+        WriteCoalescer coalescer = coalescer(ConfigurationOptions.ES_MAPPING_ROUTING, "count");
+        coalescer.add(doc(1, 1));
+        coalescer.add(doc(1, 2));
+        assertEquals(2, coalescer.entries());
+    }
+
+    @Test
+    public void testCustomMerger() throws Exception {
+        WriteCoalescer coalescer = coalescer(ConfigurationOptions.ES_BATCH_WRITE_COALESCE_MERGER, MaxMerger.class.getName());
+        coalescer.add(doc(1, 9));
+        coalescer.add(doc(1, 3));
+        assertEquals("{\"index\":{\"_id\":\"1\"}}\n{\"id\":1,\"count\":9}\n", drain(coalescer));
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        WriteCoalescer coalescer = coalescer(ConfigurationOptions.ES_WRITE_OPERATION, "delete");
+        coalescer.add(doc(1, 1));
+        coalescer.add(doc(1, 2));
+        assertEquals("{\"delete\":{\"_id\":\"1\"}}\n", drain(coalescer));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequiresId() throws Exception {
+        Settings cfg = SettingsManager.loadFrom(new Properties());
+        new WriteCoalescer(cfg, new BulkCommand(cfg, new ObjectMapper()));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.rest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WriteThrottleTest {
+
+    @Test
+    public void testUnlimited() {
+        WriteThrottle throttle = new WriteThrottle(0, 0);
+        assertEquals(0, throttle.delay(100000, 100 * 1024 * 1024));
+        assertEquals(0, throttle.docsRate(), 0);
+    }
+
+    @Test
+    public void testDocsRate() {
+        WriteThrottle throttle = new WriteThrottle(1000, 0);
+        long delay = throttle.delay(500, 0);
+        // half a second worth of documents
+        assertTrue(String.valueOf(delay), delay > TimeUnit.MILLISECONDS.toNanos(400) && delay <= TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    public void testBytesRate() {
+        WriteThrottle throttle = new WriteThrottle(0, 1024 * 1024);
+        long delay = throttle.delay(1, 2 * 1024 * 1024);
+        assertTrue(String.valueOf(delay), delay > TimeUnit.MILLISECONDS.toNanos(1900) && delay <= TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    public void testSlowDownAndRecover() {
+        WriteThrottle throttle = new WriteThrottle(1000, 0);
+        throttle.onBulk(10);
+        assertEquals(0.5, throttle.factor(), 0.0001);
+        assertEquals(500, throttle.docsRate(), 0.0001);
+        throttle.onBulk(10);
+        assertEquals(0.25, throttle.factor(), 0.0001);
+
+        for (int i = 0; i < 100; i++) {
+            throttle.onBulk(0);
+        }
+        assertEquals(1, throttle.factor(), 0.0001);
+    }
+
+    @Test
+    public void testMinFactor() {
+        WriteThrottle throttle = new WriteThrottle(1000, 0);
+        for (int i = 0; i < 100; i++) {
+            throttle.onBulk(1);
+        }
+        assertEquals(WriteThrottle.MIN_FACTOR, throttle.factor(), 0.0001);
+    }
+
+    @Test
+    public void testQueueThreshold() {
+        WriteThrottle throttle = new WriteThrottle(1000, 0);
+        throttle.onQueue(0.5, 0.75);
+        assertEquals(1, throttle.factor(), 0.0001);
+        throttle.onQueue(0.8, 0.75);
+        assertEquals(0.5, throttle.factor(), 0.0001);
+    }
+
+    @Test
+    public void testAdaptiveRate() throws Exception {
+        WriteThrottle throttle = new WriteThrottle(0, 0);
+        throttle.delay(1000, 0);
+        Thread.sleep(50);
+        // the observed throughput becomes the base rate
+        throttle.onBulk(1);
+        assertTrue(throttle.docsRate() > 0);
+        assertEquals(0.5, throttle.factor(), 0.0001);
+
+        for (int i = 0; i < 100; i++) {
+            throttle.onBulk(0);
+        }
+        // lifted once recovered
+        assertEquals(0, throttle.docsRate(), 0);
+    }
+
+    @Test
+    public void testParseQueueSize() {
+        assertEquals(50, WriteThrottle.parseQueueSize(50));
+        assertEquals(50, WriteThrottle.parseQueueSize("50"));
+        assertEquals(1000, WriteThrottle.parseQueueSize("1k"));
+        assertEquals(-1, WriteThrottle.parseQueueSize(null));
+        assertEquals(-1, WriteThrottle.parseQueueSize(-1));
+    }
+}
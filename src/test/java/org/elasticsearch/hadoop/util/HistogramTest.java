@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.hadoop.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long value : new long[] { 0, 1, 7, 8, 15, 16, 1000, 123456789, Long.MAX_VALUE / 2 }) {
+            int index = Histogram.index(value);
+            assertTrue(Histogram.lowerBound(index) <= value);
+            assertTrue(Histogram.lowerBound(index + 1) > value);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500500000, histogram.getSum());
+        // 12.5% precision
+        assertEquals(500000, histogram.percentile(50), 500000 * 0.125);
+        assertEquals(990000, histogram.percentile(99), 990000 * 0.125);
+        assertEquals(1000000, histogram.percentile(100));
+    }
+
+    @Test
+    public void testMerge() {
+        Histogram one = new Histogram();
+        one.record(10);
+        Histogram two = new Histogram();
+        two.record(100);
+
+        one.merge(two);
+        assertEquals(2, one.getCount());
+        assertEquals(100, one.getMax());
+        assertEquals(110, one.getSum());
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, new Histogram().percentile(99));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, histogram.getCount());
+        assertEquals(4L * 49995000, histogram.getSum());
+    }
+}